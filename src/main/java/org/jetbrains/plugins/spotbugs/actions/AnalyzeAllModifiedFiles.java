@@ -80,7 +80,7 @@ public final class AnalyzeAllModifiedFiles extends AbstractAnalyzeAction {
 
 			@Override
 			protected boolean configure(@NotNull final ProgressIndicator indicator, @NotNull final FindBugsProjects projects, final boolean justCompiled) {
-				return projects.addFiles(modifiedFiles, !justCompiled, hasTests(modifiedFiles));
+				return addFilesInChunks(indicator, projects, modifiedFiles, !justCompiled, hasTests(modifiedFiles));
 			}
 		}.start();
 	}
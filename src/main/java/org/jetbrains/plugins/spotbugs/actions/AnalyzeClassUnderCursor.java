@@ -88,14 +88,16 @@ public final class AnalyzeClassUnderCursor extends AbstractAnalyzeAction {
 
 			@Override
 			protected boolean configure(@NotNull final ProgressIndicator indicator, @NotNull final FindBugsProjects projects, final boolean justCompiled) {
-				final Module module = ModuleUtilCore.findModuleForFile(selectedFile, project);
-				if (module == null) {
-					throw new IllegalStateException("No module found for " + selectedFile);
-				}
-				final boolean isTest = ProjectRootManager.getInstance(project).getFileIndex().isInTestSourceContent(selectedFile);
-				final FindBugsProject findBugsProject = projects.get(module, isTest);
-				findBugsProject.addOutputFile(selectedFile, psiClass);
-				return true;
+				return readAction(indicator, () -> {
+					final Module module = ModuleUtilCore.findModuleForFile(selectedFile, project);
+					if (module == null) {
+						throw new IllegalStateException("No module found for " + selectedFile);
+					}
+					final boolean isTest = ProjectRootManager.getInstance(project).getFileIndex().isInTestSourceContent(selectedFile);
+					final FindBugsProject findBugsProject = projects.get(module, isTest);
+					findBugsProject.addOutputFile(selectedFile, psiClass);
+					return true;
+				});
 			}
 		}.start();
 	}
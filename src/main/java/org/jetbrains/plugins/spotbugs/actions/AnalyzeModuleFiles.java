@@ -31,7 +31,7 @@ import com.intellij.openapi.wm.ToolWindow;
 import com.intellij.util.Consumer;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import org.jetbrains.annotations.*;
-import org.jetbrains.plugins.spotbugs.collectors.RecurseFileCollector;
+import org.jetbrains.plugins.spotbugs.collectors.ClassFileCollector;
 import org.jetbrains.plugins.spotbugs.core.*;
 import org.jetbrains.plugins.spotbugs.resources.ResourcesLoader;
 
@@ -87,29 +87,37 @@ public abstract class AnalyzeModuleFiles extends AbstractAnalyzeAction {
 
 			@Override
 			protected boolean configure(@NotNull final ProgressIndicator indicator, @NotNull final FindBugsProjects projects, final boolean justCompiled) {
-				final CompilerModuleExtension extension = CompilerModuleExtension.getInstance(module);
-				if (extension == null) {
-					throw new IllegalStateException("No compiler extension for module " + module.getName());
-				}
+				final ClassFileCollector collector = new ClassFileCollector(project, indicator);
+				final boolean configured = readAction(indicator, () -> {
+					final CompilerModuleExtension extension = CompilerModuleExtension.getInstance(module);
+					if (extension == null) {
+						throw new IllegalStateException("No compiler extension for module " + module.getName());
+					}
+
+					final VirtualFile compilerOutputPath = extension.getCompilerOutputPath();
+					if (compilerOutputPath == null) {
+						showWarning(ResourcesLoader.getString("analysis.moduleNotCompiled", module.getName()));
+						return false;
+					}
+					VirtualFile compilerOutputPathForTests = null;
+					if (includeTests) {
+						compilerOutputPathForTests = extension.getCompilerOutputPathForTests();
+					}
 
-				final VirtualFile compilerOutputPath = extension.getCompilerOutputPath();
-				if (compilerOutputPath == null) {
-					showWarning(ResourcesLoader.getString("analysis.moduleNotCompiled", module.getName()));
+					final FindBugsProject findBugsProject = projects.get(module, includeTests && compilerOutputPathForTests != null);
+					collector.add(findBugsProject, new File(compilerOutputPath.getCanonicalPath()));
+					if (compilerOutputPathForTests != null) {
+						collector.add(findBugsProject, new File(compilerOutputPathForTests.getCanonicalPath()));
+					}
+					return true;
+				});
+				if (!configured) {
 					return false;
 				}
-				VirtualFile compilerOutputPathForTests = null;
-				if (includeTests) {
-					compilerOutputPathForTests = extension.getCompilerOutputPathForTests();
-				}
 
+				// the class files are listed without read access
 				indicator.setText("Collecting files for analysis...");
-				final FindBugsProject findBugsProject = projects.get(module, includeTests && compilerOutputPathForTests != null);
-				final int[] count = new int[1];
-				RecurseFileCollector.addFiles(project, indicator, findBugsProject, new File(compilerOutputPath.getCanonicalPath()), count);
-
-				if (compilerOutputPathForTests != null) {
-					RecurseFileCollector.addFiles(project, indicator, findBugsProject, new File(compilerOutputPathForTests.getCanonicalPath()), count);
-				}
+				collector.collect();
 				return true;
 			}
 		}.start();
@@ -40,7 +40,7 @@ import com.intellij.util.Consumer;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import org.jetbrains.plugins.spotbugs.collectors.RecurseFileCollector;
+import org.jetbrains.plugins.spotbugs.collectors.ClassFileCollector;
 import org.jetbrains.plugins.spotbugs.common.util.IdeaUtilImpl;
 import org.jetbrains.plugins.spotbugs.core.FindBugsProject;
 import org.jetbrains.plugins.spotbugs.core.FindBugsProjects;
@@ -101,24 +101,31 @@ public final class AnalyzePackageFiles extends AbstractAnalyzeAction {
 
         @Override
         protected boolean configure(@NotNull final ProgressIndicator indicator, @NotNull final FindBugsProjects projects, final boolean justCompiled) {
-          final CompilerModuleExtension extension = CompilerModuleExtension.getInstance(module);
-          if (extension == null) {
-            throw new IllegalStateException("No compiler extension for module " + module.getName());
-          }
-          final VirtualFile compilerOutputPath = isTest ? extension.getCompilerOutputPathForTests() : extension.getCompilerOutputPath();
-          if (compilerOutputPath == null) {
-            showWarning("Source is not compiled.");
-            return false;
-          }
-          final File outputPath = new File(compilerOutputPath.getCanonicalPath(), packageName.replace(".", File.separator));
-          if (!outputPath.exists()) {
-            showWarning("Source is not compiled (" + outputPath + ").");
+          final ClassFileCollector collector = new ClassFileCollector(project, indicator);
+          final boolean configured = readAction(indicator, () -> {
+            final CompilerModuleExtension extension = CompilerModuleExtension.getInstance(module);
+            if (extension == null) {
+              throw new IllegalStateException("No compiler extension for module " + module.getName());
+            }
+            final VirtualFile compilerOutputPath = isTest ? extension.getCompilerOutputPathForTests() : extension.getCompilerOutputPath();
+            if (compilerOutputPath == null) {
+              showWarning("Source is not compiled.");
+              return false;
+            }
+            final File outputPath = new File(compilerOutputPath.getCanonicalPath(), packageName.replace(".", File.separator));
+            if (!outputPath.exists()) {
+              showWarning("Source is not compiled (" + outputPath + ").");
+              return false;
+            }
+            final FindBugsProject findBugsProject = projects.get(module, isTest);
+            collector.add(findBugsProject, outputPath);
+            return true;
+          });
+          if (!configured) {
             return false;
           }
           indicator.setText("Collecting files for analysis...");
-          final FindBugsProject findBugsProject = projects.get(module, isTest);
-          final int[] count = new int[1];
-          RecurseFileCollector.addFiles(project, indicator, findBugsProject, outputPath, count);
+          collector.collect();
           return true;
         }
       }.start();
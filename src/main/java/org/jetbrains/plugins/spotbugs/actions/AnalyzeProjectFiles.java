@@ -33,7 +33,7 @@ import com.intellij.openapi.wm.ToolWindow;
 import com.intellij.util.Consumer;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import org.jetbrains.annotations.NotNull;
-import org.jetbrains.plugins.spotbugs.collectors.RecurseFileCollector;
+import org.jetbrains.plugins.spotbugs.collectors.ClassFileCollector;
 import org.jetbrains.plugins.spotbugs.core.FindBugsProject;
 import org.jetbrains.plugins.spotbugs.core.FindBugsProjects;
 import org.jetbrains.plugins.spotbugs.core.FindBugsStarter;
@@ -80,9 +80,52 @@ public abstract class AnalyzeProjectFiles extends AbstractAnalyzeAction {
 				consumer.consume(compilerManager.createProjectCompileScope(project));
 			}
 
+			@Override
+			protected boolean isMergeResult() {
+				return false;
+			}
+
 			@Override
 			protected boolean configure(@NotNull final ProgressIndicator indicator, @NotNull final FindBugsProjects projects, final boolean justCompiled) {
-				final Module[] modules = ModuleManager.getInstance(project).getModules();
+				final ClassFileCollector collector = new ClassFileCollector(project, indicator);
+				final boolean configured = readAction(indicator, () -> addOutputPaths(projects, collector, ModuleManager.getInstance(project).getModules()));
+				if (!configured) {
+					showWarning(ResourcesLoader.getString("analysis.noOutputPaths"));
+					return false;
+				}
+
+				// the class files are listed without read access
+				indicator.setText("Collecting files for analysis...");
+				collector.collect();
+				return true;
+			}
+
+			@Override
+			protected ModulePipeline createPipeline() {
+				final Module[] modules = ModuleManager.getInstance(project).getSortedModules();
+				return new ModulePipeline() {
+					@NotNull
+					@Override
+					public Module[] getModules() {
+						return modules;
+					}
+
+					@Override
+					public void configure(@NotNull final ProgressIndicator indicator, @NotNull final FindBugsProjects projects, @NotNull final Module[] batch) {
+						final ClassFileCollector collector = new ClassFileCollector(project, indicator);
+						// a batch without output paths is ignored like the modules without output paths in configure()
+						if (readAction(indicator, () -> addOutputPaths(projects, collector, batch))) {
+							collector.collect();
+						}
+					}
+				};
+			}
+
+			private boolean addOutputPaths(
+					@NotNull final FindBugsProjects projects,
+					@NotNull final ClassFileCollector collector,
+					@NotNull final Module[] modules
+			) {
         final List<Pair.NonNull<Module, VirtualFile>> compilerOutputPaths = new ArrayList<>();
 				for (final Module module : modules) {
 					final CompilerModuleExtension extension = CompilerModuleExtension.getInstance(module);
@@ -106,15 +149,12 @@ public abstract class AnalyzeProjectFiles extends AbstractAnalyzeAction {
 				}
 
 				if (compilerOutputPaths.isEmpty()) {
-					showWarning(ResourcesLoader.getString("analysis.noOutputPaths"));
 					return false;
 				}
 
-				indicator.setText("Collecting files for analysis...");
-				final int[] count = new int[1];
 				for (final Pair.NonNull<Module, VirtualFile> compilerOutputPath : compilerOutputPaths) {
 					final FindBugsProject findBugsProject = projects.get(compilerOutputPath.getFirst(), includeTests);
-					RecurseFileCollector.addFiles(project, indicator, findBugsProject, new File(compilerOutputPath.getSecond().getCanonicalPath()), count);
+					collector.add(findBugsProject, new File(compilerOutputPath.getSecond().getCanonicalPath()));
 				}
 				return true;
 			}
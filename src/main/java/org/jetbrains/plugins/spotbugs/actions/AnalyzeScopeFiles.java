@@ -35,7 +35,6 @@ import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.help.HelpManager;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.module.ModuleManager;
-import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.roots.ProjectFileIndex;
@@ -49,7 +48,6 @@ import com.intellij.psi.PsiDirectory;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiManager;
-import com.intellij.psi.PsiRecursiveElementVisitor;
 import com.intellij.util.Consumer;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import org.jetbrains.annotations.NonNls;
@@ -62,6 +60,7 @@ import org.jetbrains.plugins.spotbugs.core.FindBugsState;
 import org.jetbrains.plugins.spotbugs.resources.ResourcesLoader;
 
 import javax.swing.Action;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.List;
@@ -145,39 +144,35 @@ public final class AnalyzeScopeFiles extends AbstractAnalyzeAction {
 
 			@Override
 			protected boolean configure(@NotNull final ProgressIndicator indicator, @NotNull final FindBugsProjects projects, final boolean justCompiled) {
-				addClasses(indicator, project, scope, projects, includeTests);
-				return true;
+				final List<VirtualFile> files = readAction(indicator, () -> collectFiles(indicator, project, scope));
+				return addFilesInChunks(indicator, projects, files, false, includeTests);
 			}
 		}.start();
 	}
 
-	@SuppressFBWarnings("SIC_INNER_SHOULD_BE_STATIC_ANON")
-	private void addClasses(
+	/**
+	 * Enumerates the scope by {@link VirtualFile} (file index only) instead of visiting the PSI
+	 * of every file in it. The class files of the sources are resolved in chunks afterwards.
+	 */
+	@NotNull
+	private static List<VirtualFile> collectFiles(
 			@NotNull final ProgressIndicator indicator,
 			@NotNull final Project project,
-			@NotNull final AnalysisScope scope,
-			@NotNull final FindBugsProjects projects,
-			final boolean includeTests
+			@NotNull final AnalysisScope scope
 	) {
 
-		final PsiManager psiManager = PsiManager.getInstance(project);
-		psiManager.runInBatchFilesMode(() -> {
-			final int[] count = new int[1];
-			scope.accept(new PsiRecursiveElementVisitor() {
-				@Override
-				public void visitFile(final @NotNull PsiFile file) {
-					if (indicator.isCanceled() || FindBugsState.get(project).isAborting()) {
-						throw new ProcessCanceledException();
-					}
-					if (IdeaUtilImpl.SUPPORTED_FILE_TYPES.contains(file.getFileType())) {
-						final VirtualFile vf = file.getVirtualFile();
-						projects.addFile(vf, false, includeTests); // LATER: profile this
-						indicator.setText2("Files collected: " + ++count[0]);
-					}
-				}
-			});
-			return null;
+		final List<VirtualFile> ret = new ArrayList<>();
+		scope.accept(file -> {
+			if (FindBugsState.get(project).isAborting()) {
+				indicator.cancel(); // a plain ProcessCanceledException would restart the non blocking read action
+			}
+			indicator.checkCanceled();
+			if (!file.isDirectory() && IdeaUtilImpl.isValidFileType(file.getFileType())) {
+				ret.add(file);
+			}
+			return true;
 		});
+		return ret;
 	}
 
 	@NonNls
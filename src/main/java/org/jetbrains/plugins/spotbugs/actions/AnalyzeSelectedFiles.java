@@ -87,7 +87,7 @@ public final class AnalyzeSelectedFiles extends AbstractAnalyzeAction {
 
 			@Override
 			protected boolean configure(@NotNull final ProgressIndicator indicator, @NotNull final FindBugsProjects projects, final boolean justCompiled) {
-				return projects.addFiles(selectedFiles, !justCompiled, hasTests(selectedFiles));
+				return addFilesInChunks(indicator, projects, selectedFiles, !justCompiled, hasTests(selectedFiles));
 			}
 		}.start();
 	}
@@ -24,6 +24,7 @@ import com.intellij.openapi.project.Project;
 import com.intellij.openapi.wm.ToolWindow;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.plugins.spotbugs.core.FindBugsState;
+import org.jetbrains.plugins.spotbugs.core.ResultSnapshot;
 import org.jetbrains.plugins.spotbugs.messages.MessageBusManager;
 
 public final class ClearAndCloseToolWindow extends AbstractAction {
@@ -50,5 +51,6 @@ public final class ClearAndCloseToolWindow extends AbstractAction {
 
 		toolWindow.hide(null);
 		MessageBusManager.publishClear(project);
+		ResultSnapshot.delete(project);
 	}
 }
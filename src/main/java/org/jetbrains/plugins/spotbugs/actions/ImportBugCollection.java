@@ -21,6 +21,7 @@ package org.jetbrains.plugins.spotbugs.actions;
 
 import com.intellij.openapi.actionSystem.AnActionEvent;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.*;
@@ -38,14 +39,23 @@ import org.jetbrains.plugins.spotbugs.gui.toolwindow.view.ToolWindowPanel;
 import org.jetbrains.plugins.spotbugs.messages.MessageBusManager;
 import org.jetbrains.plugins.spotbugs.tasks.BackgroundableTask;
 
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.HashSet;
 import java.util.Set;
 import java.util.concurrent.atomic.*;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
 
 public final class ImportBugCollection extends AbstractAction {
 
 	private static final Logger LOGGER = Logger.getInstance(ImportBugCollection.class);
+	private static final int MAX_PENDING_CHUNKS = 4;
+	private static final long PROGRESS_INTERVAL_MS = 100;
 
 	@Override
 	void updateImpl(
@@ -114,58 +124,48 @@ public final class ImportBugCollection extends AbstractAction {
 			private ProgressIndicator _indicator;
 
 
-			@SuppressWarnings({"IOResourceOpenedButNotSafelyClosed"})
 			@Override
 			public void run(@NotNull final ProgressIndicator indicator) {
 
-				MessageBusManager.publishAnalysisStartedToEDT(project);
+				MessageBusManager.publishAnalysisStartedToEDT(project, false);
 				setProgressIndicator(indicator);
 				indicator.setFraction(0.0);
 				indicator.setIndeterminate(false);
 				indicator.setText(fileToImport);
-				SortedBugCollection importBugCollection = null;
-				edu.umd.cs.findbugs.Project importProject = null;
+				final File file = new File(fileToImport);
+				final long fileSize = Math.max(1, file.length());
+				final edu.umd.cs.findbugs.Project importProject = new edu.umd.cs.findbugs.Project();
+				for (final Plugin plugin : Plugin.getAllPlugins()) {
+					importProject.setPluginStatusTrinary(plugin.getPluginId(), plugin.isCorePlugin() || enabledPluginIds.contains(plugin.getPluginId()));
+				}
+				final StreamingBugCollection importBugCollection = new StreamingBugCollection(importProject);
+				final NewBugBatcher newBugBatcher = new NewBugBatcher(project, null, importBugCollection, transferToEDTQueue);
 				boolean success = false;
-				try {
-					final SortedBugCollection bugCollection = new SortedBugCollection();
-					importBugCollection = bugCollection.createEmptyCollectionWithMetadata();
-					importProject = importBugCollection.getProject();
-					for (final Plugin plugin : Plugin.getAllPlugins()) {
-						importProject.setPluginStatusTrinary(plugin.getPluginId(), plugin.isCorePlugin() || enabledPluginIds.contains(plugin.getPluginId()));
-					}
-					importBugCollection.readXML(fileToImport);
-
-					final ProjectStats projectStats = importBugCollection.getProjectStats();
-					int bugCount = 0;
-					for (final BugInstance bugInstance : importBugCollection) {
+				try (CountingInputStream in = new CountingInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+					final AtomicInteger bugCount = new AtomicInteger();
+					final AtomicLong lastProgress = new AtomicLong();
+					// Invoked by the parser for each parsed bug, so the tree is filled while the file is read.
+					importBugCollection.setListener(bugInstance -> {
 						if (indicator.isCanceled()) {
 							taskCanceled.set(true);
-							MessageBusManager.publishAnalysisAbortedToEDT(project);
-							Thread.currentThread().interrupt();
-							return;
+							throw new ProcessCanceledException();
 						}
-						final int bugCounter = bugCount++;
-						final double fraction = (double) bugCounter / projectStats.getTotalBugs();
-						indicator.setFraction(fraction);
-						indicator.setText2("Importing bug '" + bugCount + "' of '" + projectStats.getTotalBugs() + "' - " + bugInstance.getMessageWithoutPrefix());
-						/*
-						 * Guarantee thread visibility *one* time.
-						 */
-						final AtomicReference<BugInstance> bugInstanceRef = new AtomicReference<>(bugInstance);
-						final AtomicReference<SortedBugCollection> importBugCollectionRef =
-								new AtomicReference<>(importBugCollection);
-						final int analyzedClassCount = projectStats.getNumClasses();
-						transferToEDTQueue.offer(new Runnable() {
-							/**
-							 * Invoked by EDT.
-							 */
-							@Override
-							public void run() {
-								final Bug bug = new Bug(null, importBugCollectionRef.get(), bugInstanceRef.get());
-								MessageBusManager.publishNewBug(project, bug, analyzedClassCount);
-							}
-						});
-					}
+						bugCount.incrementAndGet();
+						// the class count is part of the summary behind the bugs, it is shown when the import finished
+						newBugBatcher.add(bugInstance, -1);
+						newBugBatcher.awaitPendingChunks(MAX_PENDING_CHUNKS, () -> indicator.isCanceled() || project.isDisposed());
+						final long now = System.currentTimeMillis();
+						if (now - lastProgress.get() >= PROGRESS_INTERVAL_MS) {
+							lastProgress.set(now);
+							indicator.setFraction((double) in.getCount() / fileSize);
+							indicator.setText2("Imported bugs: " + bugCount.get());
+						}
+					});
+					final InputStream xml = file.getName().endsWith(".gz") ? new GZIPInputStream(in) : in;
+					importBugCollection.readXML(xml, file);
+					newBugBatcher.flush();
+					indicator.setFraction(1.0);
+					indicator.setText2("Imported bugs: " + bugCount.get());
 
 					EventDispatchThreadHelper.invokeLater(() -> {
 						transferToEDTQueue.drain();
@@ -174,6 +174,8 @@ public final class ImportBugCollection extends AbstractAction {
 
 					importBugCollection.setTimestamp(System.currentTimeMillis());
 					success = true;
+				} catch (final ProcessCanceledException ignore) {
+					taskCanceled.set(true);
 				} catch (final IOException | DocumentException e1) {
 					final String message = "Import failed";
 					showToolWindowErrorNotifier(project, message);
@@ -212,4 +214,77 @@ public final class ImportBugCollection extends AbstractAction {
 	private static void showToolWindowErrorNotifier(@NotNull final Project project, final String message) {
 		EventDispatchThreadHelper.invokeLater(() -> BalloonTipFactory.showToolWindowErrorNotifier(project, message));
 	}
+
+
+	/**
+	 * Passes each bug to a listener as soon as the SAX parser has read it, instead of after the whole file.
+	 */
+	private static final class StreamingBugCollection extends SortedBugCollection {
+
+		private Consumer<BugInstance> _listener;
+
+
+		private StreamingBugCollection(@NotNull final edu.umd.cs.findbugs.Project project) {
+			super(project);
+		}
+
+
+		void setListener(@NotNull final Consumer<BugInstance> listener) {
+			_listener = listener;
+		}
+
+
+		@Override
+		public boolean add(@NotNull final BugInstance bugInstance, final boolean updateActiveTime) {
+			final boolean added = super.add(bugInstance, updateActiveTime);
+			if (added && _listener != null) {
+				_listener.accept(bugInstance);
+			}
+			return added;
+		}
+	}
+
+
+	private static final class CountingInputStream extends FilterInputStream {
+
+		private volatile long _count;
+
+
+		private CountingInputStream(@NotNull final InputStream in) {
+			super(in);
+		}
+
+
+		long getCount() {
+			return _count;
+		}
+
+
+		@Override
+		public int read() throws IOException {
+			final int ret = super.read();
+			if (ret != -1) {
+				_count++;
+			}
+			return ret;
+		}
+
+
+		@Override
+		public int read(@NotNull final byte[] b, final int off, final int len) throws IOException {
+			final int ret = super.read(b, off, len);
+			if (ret > 0) {
+				_count += ret;
+			}
+			return ret;
+		}
+
+
+		@Override
+		public long skip(final long n) throws IOException {
+			final long ret = super.skip(n);
+			_count += ret;
+			return ret;
+		}
+	}
 }
@@ -27,22 +27,35 @@ import com.intellij.openapi.roots.CompilerModuleExtension;
 import com.intellij.openapi.roots.ProjectFileIndex;
 import com.intellij.openapi.roots.ProjectRootManager;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.PsiAnonymousClass;
 import com.intellij.psi.PsiClass;
 import com.intellij.psi.PsiClassOwner;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
 import com.intellij.psi.PsiManager;
-import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.psi.PsiTypeParameter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.plugins.spotbugs.common.FindBugsPluginConstants;
+import org.jetbrains.plugins.spotbugs.common.util.ClassFileUtil;
 import org.jetbrains.plugins.spotbugs.common.util.IdeaUtilImpl;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
 public abstract class AbstractClassAdder {
 
 	private static final Logger LOGGER = Logger.getInstance(AbstractClassAdder.class.getName());
 	public static final String CLASS_FILE_SUFFIX = ".class";
-	private static final String ANONYMOUS_CLASS_DELIMITER = "$";
+	static final String ANONYMOUS_CLASS_DELIMITER = "$";
 
 	private final Project _project;
 	private final PsiManager _psiManager;
@@ -58,23 +71,49 @@ public abstract class AbstractClassAdder {
 
 	abstract void put(@NotNull final String fqp, @NotNull final PsiElement element);
 
+	/**
+	 * Adds all inner, local and anonymous classes of the top level class {@code fqp} if the implementation knows
+	 * them without walking the PSI (f. e. from the compiler output).
+	 *
+	 * @param fqp      full qualified path of the top level class (without class file suffix)
+	 * @param psiClass the top level class
+	 * @return true if the nested classes were added, false to fall back to the PSI walk
+	 */
+	boolean putNestedClasses(@NotNull final String fqp, @NotNull final PsiClass psiClass) {
+		return false;
+	}
+
+	/**
+	 * The top level classes and the package are taken from {@link PsiClassOwner#getClasses()} and
+	 * {@link PsiClassOwner#getPackageName()} which are served by the stubs, so the AST of {@code virtualFile}
+	 * is only loaded if the implementation can not {@link #putNestedClasses(String, PsiClass) put the nested classes}.
+	 */
 	public final void addContainingClasses(@NotNull final VirtualFile virtualFile) {
 
+		final VirtualFile compilerOutputPath = getCompilerOutputPath(virtualFile);
+		if (compilerOutputPath == null) {
+			return;
+		}
+
 		final PsiFile psiFile = _psiManager.findFile(virtualFile);
 
 		if (psiFile instanceof PsiClassOwner) {
 			final PsiClassOwner psiClassOwner = (PsiClassOwner) psiFile;
 			final PsiClass[] psiClasses = psiClassOwner.getClasses();
+			if (psiClasses.length == 0) {
+				return;
+			}
 
+			final String compileOutputDir = compilerOutputPath.getPresentableUrl();
+			final String packageUrl = psiClassOwner.getPackageName().replace('.', '/');
 			for (final PsiClass psiClass : psiClasses) {
-				final VirtualFile compilerOutputPath = getCompilerOutputPath(virtualFile);
-				if (compilerOutputPath == null) {
-					continue;
-				}
-				final String fqp = buildFullQualifiedPath(compilerOutputPath.getPresentableUrl(), psiClass);
+				final String fqp = buildFullQualifiedPath(compileOutputDir, packageUrl, psiClass);
 				put(fqp, psiClass);
-				addAnonymousClasses(psiClass, fqp);
-				addInnerClasses(psiClass, fqp);
+				if (!putNestedClasses(fqp, psiClass)) {
+					for (final Map.Entry<String, PsiElement> nested : collectNestedClasses(psiClass, fqp).entrySet()) {
+						put(nested.getKey(), nested.getValue());
+					}
+				}
 			}
 		}
 	}
@@ -89,9 +128,6 @@ public abstract class AbstractClassAdder {
 
 			for (final PsiClass psiClass : psiClasses) {
 
-				final String s = selectedPsiClass.getName();
-				final String s1 = psiClass.getName();
-
 				final VirtualFile compilerOutputPath = getCompilerOutputPath(virtualFile);
 				if (compilerOutputPath == null) {
 					LOGGER.warn("No output path specified for " + virtualFile + " in " + _project);
@@ -99,108 +135,116 @@ public abstract class AbstractClassAdder {
 				}
 
 				final String fqp = buildFullQualifiedPath(compilerOutputPath.getPresentableUrl(), psiClass);
-				if (s.equals(s1)) {
+				if (psiClass.equals(selectedPsiClass)) {
 					put(fqp, psiClass);
-				} else {
-					addAnonymousClasses(psiClass, fqp, s);
-					addInnerClasses(psiClass, fqp, s);
+					return;
+				}
+				for (final Map.Entry<String, PsiElement> nested : collectNestedClasses(psiClass, fqp).entrySet()) {
+					if (nested.getValue().equals(selectedPsiClass)) {
+						put(nested.getKey(), nested.getValue());
+						return;
+					}
 				}
 			}
 		}
 	}
 
-	private void addInnerClasses(final PsiClass psiClass, final String fullQualifiedPath) {
-		addInnerClasses(psiClass, fullQualifiedPath, null);
-	}
-
-	private void addInnerClasses(final PsiClass psiClass, final String fullQualifiedPath, @Nullable final String findClass) {
-		final PsiClass[] psiClasses = psiClass.getInnerClasses();
-
-		for (final PsiClass innerPsiClass : psiClasses) {
-			final String innerClassName = innerPsiClass.getName();
-			final String fqp = fullQualifiedPath + ANONYMOUS_CLASS_DELIMITER + innerClassName;
-
-			assert innerClassName != null;
-			if (innerClassName.equals(findClass)) {
-				put(fqp, innerPsiClass);
-				return;
-
-			} else if (findClass != null) {
-				addAnonymousClasses(innerPsiClass, fqp, findClass);
-				addInnerClasses(innerPsiClass, fqp, findClass);
-			} else { // default branch: no analyze class under cursor
-				put(fqp, innerPsiClass);
-				addAnonymousClasses(innerPsiClass, fqp);
-				addInnerClasses(innerPsiClass, fqp);
+	/**
+	 * Reads the nested classes of the top level class {@code fqp} from its class file, see
+	 * {@link ClassFileUtil#readNestedClassNames(byte[])}. Unlike a directory listing of {@code Outer$*.class} this
+	 * does not pick up stale class files of removed nested classes.
+	 *
+	 * @param fqp full qualified path of the top level class (without class file suffix)
+	 * @return full qualified paths (without class file suffix) of all existing nested class files or {@code null}
+	 * if the class file of {@code fqp} does not exist or can not be read
+	 */
+	@Nullable
+	static Set<String> findNestedClassFiles(@NotNull final String fqp) {
+		final File classFile = new File(fqp + CLASS_FILE_SUFFIX);
+		final File directory = classFile.getParentFile();
+		if (directory == null || !classFile.isFile()) {
+			return null;
+		}
+		final String directoryPath = fqp.substring(0, fqp.length() - new File(fqp).getName().length());
+		final Set<String> ret = new LinkedHashSet<>();
+		final Deque<File> queue = new ArrayDeque<>();
+		queue.add(classFile);
+		try {
+			while (!queue.isEmpty()) {
+				// class files older than Java 11 only list their direct members, so read the nested class files too
+				for (final String nestedClassName : ClassFileUtil.readNestedClassNames(Files.readAllBytes(queue.remove().toPath()))) {
+					final String simpleName = nestedClassName.substring(nestedClassName.lastIndexOf('/') + 1);
+					final File nestedClassFile = new File(directory, simpleName + CLASS_FILE_SUFFIX);
+					final String nestedFqp = directoryPath + simpleName;
+					if (!ret.contains(nestedFqp) && nestedClassFile.isFile()) {
+						ret.add(nestedFqp);
+						queue.add(nestedClassFile);
+					}
+				}
 			}
+		} catch (final IOException e) {
+			LOGGER.debug("Could not read nested classes of " + classFile, e);
+			return null;
 		}
+		return ret;
 	}
 
-	private void addInnerClasses(final PsiElement psiElement, final String fullQualifiedPath, final int anonymousClassPrefix) {
-		addInnerClasses(psiElement, fullQualifiedPath, anonymousClassPrefix, null);
+	/**
+	 * Names the inner, local and anonymous classes of {@code psiClass} like javac does ({@code Outer$Inner},
+	 * {@code Outer$1Local}, {@code Outer$1}) in a single walk over the PSI tree.
+	 *
+	 * @param fqp full qualified path of {@code psiClass} (without class file suffix)
+	 * @return the nested classes by full qualified path in source order
+	 */
+	@NotNull
+	static Map<String, PsiElement> collectNestedClasses(@NotNull final PsiClass psiClass, @NotNull final String fqp) {
+		final Map<String, PsiElement> ret = new LinkedHashMap<>();
+		collectNestedClasses(psiClass, fqp, new HashMap<>(), ret);
+		return ret;
 	}
 
-	private void addInnerClasses(final PsiElement psiElement, final String fullQualifiedPath, final int anonymousClassPrefix, @Nullable final String findClass) {
-
-		final PsiElement[] classes = PsiTreeUtil.collectElements(psiElement, new InnerClassPsiElementFilter(psiElement));
-
-		for (final PsiElement element : classes) {
-			final PsiClass psiClass = (PsiClass) element;
-			final String className = psiClass.getName();
-
-			if (!"null".equals(className)) {
-				final String fqp = fullQualifiedPath + ANONYMOUS_CLASS_DELIMITER + anonymousClassPrefix + className;
-
-				if (String.valueOf(anonymousClassPrefix).equals(findClass)) {
-					put(fqp, element);
-					return;
-
-				} else if (findClass != null) {
-					addAnonymousClasses(psiElement, fqp, findClass);
-					addInnerClasses(psiClass, fqp, anonymousClassPrefix, findClass);
-				} else { // default branch: no analyze class under cursor
-					put(fqp, element);
-					// add nested inner/anonymous classes of current anonymous psiClass/Element
-					addAnonymousClasses(psiElement, fqp);
-					addInnerClasses(psiClass, fqp);
+	private static void collectNestedClasses(
+			@NotNull final PsiElement element,
+			@NotNull final String enclosingFqp,
+			@NotNull final Map<String, Integer> localClassIndex,
+			@NotNull final Map<String, PsiElement> classes
+	) {
+		for (PsiElement child = element.getFirstChild(); child != null; child = child.getNextSibling()) {
+			if (child instanceof PsiClass && !(child instanceof PsiTypeParameter)) {
+				final PsiClass nestedClass = (PsiClass) child;
+				final String fqp;
+				if (nestedClass instanceof PsiAnonymousClass) {
+					fqp = getLocalClassPath(enclosingFqp, "", localClassIndex);
+				} else if (nestedClass.getContainingClass() != null) {
+					fqp = enclosingFqp + ANONYMOUS_CLASS_DELIMITER + nestedClass.getName();
+				} else {
+					fqp = getLocalClassPath(enclosingFqp, String.valueOf(nestedClass.getName()), localClassIndex);
 				}
+				classes.put(fqp, nestedClass);
+				collectNestedClasses(nestedClass, fqp, localClassIndex, classes);
+			} else {
+				collectNestedClasses(child, enclosingFqp, localClassIndex, classes);
 			}
 		}
 	}
 
-	private void addAnonymousClasses(final PsiElement psiElement, final String fullQualifiedPath) {
-		addAnonymousClasses(psiElement, fullQualifiedPath, null);
+	/**
+	 * javac numbers anonymous ({@code name} is empty) and local classes per enclosing class and name.
+	 */
+	@NotNull
+	private static String getLocalClassPath(@NotNull final String enclosingFqp, @NotNull final String name, @NotNull final Map<String, Integer> localClassIndex) {
+		final String prefix = enclosingFqp + ANONYMOUS_CLASS_DELIMITER;
+		final int index = localClassIndex.merge(prefix + name, 1, Integer::sum);
+		return prefix + index + name;
 	}
 
-	private void addAnonymousClasses(final PsiElement psiElement, final String fullQualifiedPath, @Nullable final String findClass) {
-
-		final PsiElement[] classes = PsiTreeUtil.collectElements(psiElement, new AnonymousClassPsiElementFilter(psiElement));
-
-		final int length = classes.length;
-		for (int i = 0; i < length; i++) {
-
-			final int anonymousClassPrefix = i + 1;
-			final String fqp = fullQualifiedPath + ANONYMOUS_CLASS_DELIMITER + anonymousClassPrefix;
-
-			if (String.valueOf(anonymousClassPrefix).equals(findClass)) {
-				put(fqp, classes[i]);
-				return;
-
-			} else if (findClass != null) {
-				addAnonymousClasses(classes[i], fqp, findClass);
-				addInnerClasses(classes[i], fqp, anonymousClassPrefix, findClass);
-			} else { // default branch: no analyze class under cursor
-				put(fqp, classes[i]);
-				// add nested inner/anonymous classes of current anonymous psiClass/Element
-				addAnonymousClasses(classes[i], fqp);
-				addInnerClasses(classes[i], fqp, anonymousClassPrefix);
-			}
-		}
+	@NotNull
+	private static String buildFullQualifiedPath(@NotNull final String compileOutputDir, @NotNull final PsiClass psiClass) {
+		return buildFullQualifiedPath(compileOutputDir, IdeaUtilImpl.getPackageUrl(psiClass), psiClass);
 	}
 
 	@NotNull
-	private static String buildFullQualifiedPath(@NotNull final String compileOutputDir, @NotNull final PsiClass psiClass) {
-		final String packageUrl = IdeaUtilImpl.getPackageUrl(psiClass);
+	private static String buildFullQualifiedPath(@NotNull final String compileOutputDir, @NotNull final String packageUrl, @NotNull final PsiClass psiClass) {
 		final StringBuilder fqn = new StringBuilder();
 
 		fqn.append(compileOutputDir);
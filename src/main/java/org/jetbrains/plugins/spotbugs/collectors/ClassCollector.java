@@ -21,11 +21,13 @@ package org.jetbrains.plugins.spotbugs.collectors;
 
 
 import com.intellij.openapi.project.Project;
+import com.intellij.psi.PsiClass;
 import com.intellij.psi.PsiElement;
 import org.jetbrains.annotations.NotNull;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 
 /**
@@ -50,6 +52,30 @@ public final class ClassCollector extends AbstractClassAdder {
 	}
 
 
+	/**
+	 * Takes the exact set of nested classes from the bytecode and maps them to the PSI by their javac names.
+	 * A class without a matching PSI element (f. e. a synthetic class) is mapped to its nearest enclosing class.
+	 */
+	@Override
+	boolean putNestedClasses(@NotNull final String fqp, @NotNull final PsiClass psiClass) {
+		final Set<String> nestedClassFiles = findNestedClassFiles(fqp);
+		if (nestedClassFiles == null) {
+			return false;
+		}
+		final Map<String, PsiElement> nestedClasses = collectNestedClasses(psiClass, fqp);
+		for (final String nestedClassFile : nestedClassFiles) {
+			PsiElement element = null;
+			String enclosing = nestedClassFile;
+			while (element == null && enclosing.length() > fqp.length()) {
+				element = nestedClasses.get(enclosing);
+				enclosing = enclosing.substring(0, enclosing.lastIndexOf(ANONYMOUS_CLASS_DELIMITER));
+			}
+			put(nestedClassFile, element != null ? element : psiClass);
+		}
+		return true;
+	}
+
+
 	@NotNull
 	public Map<String, PsiElement> getClasses() {
 		return _classes;
@@ -0,0 +1,234 @@
+/*
+ * Copyright 2020 SpotBugs plugin contributors
+ *
+ * This file is part of IntelliJ SpotBugs plugin.
+ *
+ * IntelliJ SpotBugs plugin is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ *
+ * IntelliJ SpotBugs plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with IntelliJ SpotBugs plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jetbrains.plugins.spotbugs.collectors;
+
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.project.Project;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.plugins.spotbugs.core.FindBugsProject;
+import org.jetbrains.plugins.spotbugs.core.FindBugsState;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+
+/**
+ * Collects the class files of compiler output directories and adds them to their {@link FindBugsProject}.
+ * <p>
+ * Directories are listed with NIO {@link DirectoryStream}s on a bounded pool, so the fan-out of all added output
+ * directories is walked in parallel. Files are matched on the {@code .class} extension directly (no file type lookup
+ * and no stat call per class file). The calling thread only waits, polls for cancellation and updates the progress.
+ */
+public final class ClassFileCollector {
+
+	private static final Logger LOGGER = Logger.getInstance(ClassFileCollector.class.getName());
+	private static final String CLASS_FILE_EXTENSION = ".class";
+	private static final long PROGRESS_INTERVAL_MS = 100;
+
+	private final Project _project;
+	private final ProgressIndicator _indicator;
+	/**
+	 * Modules may share an output directory (f. e. the project output fallback), its class files are added to all
+	 * of them like before but it is walked only once.
+	 */
+	private final Map<File, List<FindBugsProject>> _roots;
+
+
+	public ClassFileCollector(@NotNull final Project project, @NotNull final ProgressIndicator indicator) {
+		_project = project;
+		_indicator = indicator;
+		_roots = new LinkedHashMap<>();
+	}
+
+
+	/**
+	 * Adds an output directory whose class files should be added to {@code findBugsProject} by {@link #collect()}.
+	 * Non existing directories are ignored.
+	 */
+	public void add(@NotNull final FindBugsProject findBugsProject, @NotNull final File classesDir) {
+		if (classesDir.isDirectory()) {
+			final List<FindBugsProject> projects = _roots.computeIfAbsent(classesDir, k -> new ArrayList<>());
+			if (!projects.contains(findBugsProject)) {
+				projects.add(findBugsProject);
+			}
+		}
+	}
+
+
+	/**
+	 * @return number of collected class files
+	 * @throws ProcessCanceledException if the indicator was canceled or the analysis is aborting
+	 */
+	public int collect() {
+		if (_roots.isEmpty()) {
+			return 0;
+		}
+		final Walker walker = new Walker(Math.min(Runtime.getRuntime().availableProcessors(), 8));
+		final Map<File, Queue<String>> filesByRoot = new LinkedHashMap<>();
+		try {
+			for (final File root : _roots.keySet()) {
+				final Queue<String> files = new ConcurrentLinkedQueue<>();
+				filesByRoot.put(root, files);
+				walker.submit(root.toPath(), files);
+			}
+			walker.release();
+			walker.await();
+		} finally {
+			walker.shutdown();
+		}
+
+		int count = 0;
+		for (final Map.Entry<File, Queue<String>> entry : filesByRoot.entrySet()) {
+			final List<String> files = new ArrayList<>(entry.getValue());
+			Collections.sort(files);
+			for (final FindBugsProject findBugsProject : _roots.get(entry.getKey())) {
+				for (final String file : files) {
+					findBugsProject.addFile(file);
+				}
+				count += files.size();
+			}
+		}
+		_indicator.setText2("Files collected: " + count);
+		return count;
+	}
+
+
+	private boolean isCanceled() {
+		return _indicator.isCanceled() || FindBugsState.get(_project).isAborting();
+	}
+
+
+	private final class Walker {
+
+		private final ExecutorService _executor;
+		private final AtomicInteger _pending;
+		private final AtomicInteger _collected;
+		private final CountDownLatch _done;
+		private final AtomicReference<Throwable> _error;
+		private volatile boolean _canceled;
+
+
+		private Walker(final int parallelism) {
+			_executor = AppExecutorUtil.createBoundedApplicationPoolExecutor("SpotBugs File Collector", parallelism);
+			// one pending unit for the submitting thread, see release()
+			_pending = new AtomicInteger(1);
+			_collected = new AtomicInteger();
+			_done = new CountDownLatch(1);
+			_error = new AtomicReference<>();
+		}
+
+
+		private void submit(@NotNull final Path directory, @NotNull final Queue<String> files) {
+			_pending.incrementAndGet();
+			_executor.execute(() -> {
+				try {
+					if (!_canceled) {
+						scan(directory, files);
+					}
+				} catch (final Throwable e) {
+					_error.compareAndSet(null, e);
+					_canceled = true;
+				} finally {
+					release();
+				}
+			});
+		}
+
+
+		/**
+		 * Completes one pending unit, either a directory scan or the submission of the roots.
+		 */
+		private void release() {
+			if (_pending.decrementAndGet() == 0) {
+				_done.countDown();
+			}
+		}
+
+
+		private void scan(@NotNull final Path directory, @NotNull final Queue<String> files) {
+			try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+				for (final Path path : stream) {
+					if (_canceled) {
+						return;
+					}
+					final Path fileName = path.getFileName();
+					if (fileName != null && fileName.toString().endsWith(CLASS_FILE_EXTENSION)) {
+						files.add(path.toAbsolutePath().toString());
+						_collected.incrementAndGet();
+					} else if (Files.isDirectory(path)) {
+						submit(path, files);
+					}
+				}
+			} catch (final IOException e) {
+				// same as File.listFiles returning null: skip unreadable directories
+				LOGGER.debug("Could not list " + directory, e);
+			}
+		}
+
+
+		private void await() {
+			try {
+				while (!_done.await(PROGRESS_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+					if (isCanceled()) {
+						_canceled = true;
+						throw new ProcessCanceledException();
+					}
+					_indicator.setText2("Files collected: " + _collected.get());
+				}
+			} catch (final InterruptedException e) {
+				Thread.currentThread().interrupt();
+				_canceled = true;
+				throw new ProcessCanceledException(e);
+			}
+			if (isCanceled()) {
+				throw new ProcessCanceledException();
+			}
+			final Throwable error = _error.get();
+			if (error != null) {
+				throw new IllegalStateException("Could not collect class files", error);
+			}
+		}
+
+
+		private void shutdown() {
+			_canceled = true;
+			_executor.shutdownNow();
+		}
+	}
+}
@@ -22,11 +22,19 @@ package org.jetbrains.plugins.spotbugs.collectors;
 
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
+import com.intellij.psi.PsiClass;
 import com.intellij.psi.PsiElement;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.plugins.spotbugs.core.FindBugsProject;
 
 import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
 
 
 /**
@@ -39,21 +47,74 @@ public final class StatelessClassAdder extends AbstractClassAdder {
 	private static final Logger LOGGER = Logger.getInstance(StatelessClassAdder.class.getName());
 	private final FindBugsProject _findBugsProject;
 
+	/**
+	 * File names by output (package) directory; each directory is listed once instead of probing every class file.
+	 */
+	private final Map<String, Set<String>> _listings;
+	private final Set<String> _added;
+
 
 	public StatelessClassAdder(@NotNull final FindBugsProject findBugsProject, @NotNull final Project project) {
 		super(project);
 		_findBugsProject = findBugsProject;
+		_listings = new HashMap<>();
+		_added = new HashSet<>();
 	}
 
 
 	@Override
 	void put(@NotNull final String fqp, @NotNull final PsiElement element) {
 		final String fqn = fqp + CLASS_FILE_SUFFIX;
-		if (new File(fqn).exists()) {
-			_findBugsProject.addFile(fqn);
-			LOGGER.debug("adding class file: " + fqn);
+		final File file = new File(fqn);
+		if (getListing(file.getParentFile()).contains(file.getName())) {
+			addFile(fqn);
 		} else {
 			LOGGER.debug("class file: " + fqn + " does not exists. maybe an inner/anonymous class? try to recompile your sources.");
 		}
 	}
-}
\ No newline at end of file
+
+
+	/**
+	 * Adds the real {@code $Inner}/{@code $1} class files as listed in the bytecode of the top level class
+	 * or, if it can not be read, found in the directory listing.
+	 */
+	@Override
+	boolean putNestedClasses(@NotNull final String fqp, @NotNull final PsiClass psiClass) {
+		final Set<String> nestedClassFiles = findNestedClassFiles(fqp);
+		if (nestedClassFiles != null) {
+			for (final String nestedClassFile : nestedClassFiles) {
+				addFile(nestedClassFile + CLASS_FILE_SUFFIX);
+			}
+			return true;
+		}
+		final File file = new File(fqp);
+		final String prefix = file.getName() + ANONYMOUS_CLASS_DELIMITER;
+		final String directory = fqp.substring(0, fqp.length() - file.getName().length());
+		for (final String name : getListing(file.getParentFile())) {
+			if (name.startsWith(prefix) && name.endsWith(CLASS_FILE_SUFFIX)) {
+				addFile(directory + name);
+			}
+		}
+		return true;
+	}
+
+
+	private void addFile(@NotNull final String fqn) {
+		if (_added.add(fqn)) {
+			_findBugsProject.addFile(fqn);
+			LOGGER.debug("adding class file: " + fqn);
+		}
+	}
+
+
+	@NotNull
+	private Set<String> getListing(@Nullable final File directory) {
+		if (directory == null) {
+			return Collections.emptySet();
+		}
+		return _listings.computeIfAbsent(directory.getPath(), path -> {
+			final String[] names = directory.list();
+			return names != null ? new HashSet<>(Arrays.asList(names)) : Collections.emptySet();
+		});
+	}
+}
@@ -107,7 +107,7 @@ public class ExtendedProblemDescriptor implements ProblemDescriptor, ProblemGrou
 
 	@Override
 	public PsiElement getPsiElement() {
-		if (psiElement != null) {
+		if (psiElement != null && psiElement.isValid()) {
 			return psiElement;
 		}
 		if (lineStart < 0 || lineStart == 0 && lineEnd == 1) {
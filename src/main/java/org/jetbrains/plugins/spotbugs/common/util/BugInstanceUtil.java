@@ -31,12 +31,8 @@ import edu.umd.cs.findbugs.SourceLineAnnotation;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
-import org.jetbrains.plugins.spotbugs.core.Bug;
-import org.jetbrains.plugins.spotbugs.gui.tree.GroupBy;
 import org.jetbrains.plugins.spotbugs.gui.tree.model.BugInstanceNode;
 
-import java.util.ArrayList;
-import java.util.List;
 
 @SuppressWarnings({"AnonymousInnerClass"})
 public class BugInstanceUtil {
@@ -160,33 +156,4 @@ public class BugInstanceUtil {
 		return IdeaUtilImpl.getPsiFile(psiClass);
 	}
 
-
-	private static List<String> getBugInstanceGroupPath(final Bug bug, final GroupBy[] groupBy) {
-		final List<String> result = new ArrayList<String>();
-		for (final GroupBy group : groupBy) {
-			result.add(GroupBy.getGroupName(group, bug));
-		}
-
-		//Collections.reverse(result);
-		return result;
-	}
-
-
-	public static String[] getGroupPath(final Bug bug, final int depth, final GroupBy[] groupBy) {
-		final List<String> path = getBugInstanceGroupPath(bug, groupBy);
-		final String[] result = new String[depth];
-
-		for (int i = 0; i < depth; i++) {
-			final String str = path.get(i);
-			result[i] = str;
-		}
-
-		return result;
-	}
-
-
-	public static String[] getFullGroupPath(final Bug bug, final GroupBy[] groupBy) {
-		final List<String> path = getBugInstanceGroupPath(bug, groupBy);
-		return getGroupPath(bug, path.size(), groupBy);
-	}
 }
@@ -0,0 +1,286 @@
+/*
+ * Copyright 2020 SpotBugs plugin contributors
+ *
+ * This file is part of IntelliJ SpotBugs plugin.
+ *
+ * IntelliJ SpotBugs plugin is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ *
+ * IntelliJ SpotBugs plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with IntelliJ SpotBugs plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jetbrains.plugins.spotbugs.common.util;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Minimal class file reader which only looks at the constant pool and the class attributes. This is much cheaper
+ * than a full BCEL/ASM parse and good enough to find the name of a class, the classes it references and the
+ * classes nested in it.
+ */
+public final class ClassFileUtil {
+
+	private static final int MAGIC = 0xCAFEBABE;
+
+	private static final int CONSTANT_UTF8 = 1;
+	private static final int CONSTANT_INTEGER = 3;
+	private static final int CONSTANT_FLOAT = 4;
+	private static final int CONSTANT_LONG = 5;
+	private static final int CONSTANT_DOUBLE = 6;
+	private static final int CONSTANT_CLASS = 7;
+	private static final int CONSTANT_STRING = 8;
+	private static final int CONSTANT_FIELD_REF = 9;
+	private static final int CONSTANT_METHOD_REF = 10;
+	private static final int CONSTANT_INTERFACE_METHOD_REF = 11;
+	private static final int CONSTANT_NAME_AND_TYPE = 12;
+	private static final int CONSTANT_METHOD_HANDLE = 15;
+	private static final int CONSTANT_METHOD_TYPE = 16;
+	private static final int CONSTANT_DYNAMIC = 17;
+	private static final int CONSTANT_INVOKE_DYNAMIC = 18;
+	private static final int CONSTANT_MODULE = 19;
+	private static final int CONSTANT_PACKAGE = 20;
+
+	private static final String ATTRIBUTE_INNER_CLASSES = "InnerClasses";
+	private static final String ATTRIBUTE_NEST_MEMBERS = "NestMembers";
+
+	private ClassFileUtil() {
+	}
+
+	@NotNull
+	public static ClassFileInfo read(@NotNull final byte[] bytes) throws IOException {
+		final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+		final ConstantPool pool = readHeader(in);
+
+		in.readUnsignedShort(); // access flags
+		final String className = toDottedName(pool.getClassName(in.readUnsignedShort()));
+
+		final Set<String> references = new HashSet<>();
+		for (int i = 1; i < pool.utf8.length; i++) {
+			if (pool.classNameIndex[i] != 0) {
+				addReference(pool.utf8[pool.classNameIndex[i]], references);
+			} else if (pool.utf8[i] != null && isSignature(pool.utf8[i])) {
+				addSignatureReferences(pool.utf8[i], references);
+			}
+		}
+		references.remove(className);
+		return new ClassFileInfo(className, references);
+	}
+
+	/**
+	 * Reads the {@code NestMembers} (Java 11+) and {@code InnerClasses} attributes of a class file.
+	 * Note that the {@code InnerClasses} attribute of a class compiled for Java 10 or older only lists the direct
+	 * members (and all referenced nested classes), so the nested classes of nested classes must be read from
+	 * their own class files.
+	 *
+	 * @return internal names (f. e. {@code com/example/Outer$1}) of all classes nested in the class of {@code bytes}
+	 */
+	@NotNull
+	public static Set<String> readNestedClassNames(@NotNull final byte[] bytes) throws IOException {
+		final DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+		final ConstantPool pool = readHeader(in);
+
+		in.readUnsignedShort(); // access flags
+		final String className = pool.getClassName(in.readUnsignedShort());
+		in.readUnsignedShort(); // super class
+		in.skipBytes(2 * in.readUnsignedShort()); // interfaces
+		skipMembers(in); // fields
+		skipMembers(in); // methods
+
+		final String prefix = className + '$';
+		final Set<String> ret = new HashSet<>();
+		final int attributeCount = in.readUnsignedShort();
+		for (int i = 0; i < attributeCount; i++) {
+			final String name = pool.utf8[in.readUnsignedShort()];
+			final int length = in.readInt();
+			if (ATTRIBUTE_NEST_MEMBERS.equals(name)) {
+				final int count = in.readUnsignedShort();
+				for (int j = 0; j < count; j++) {
+					addNestedClassName(pool.getClassName(in.readUnsignedShort()), prefix, ret);
+				}
+			} else if (ATTRIBUTE_INNER_CLASSES.equals(name)) {
+				final int count = in.readUnsignedShort();
+				for (int j = 0; j < count; j++) {
+					addNestedClassName(pool.getClassName(in.readUnsignedShort()), prefix, ret);
+					in.skipBytes(6); // outer class, inner name and access flags
+				}
+			} else {
+				in.skipBytes(length);
+			}
+		}
+		return ret;
+	}
+
+	private static void addNestedClassName(@NotNull final String name, @NotNull final String prefix, @NotNull final Set<String> nested) {
+		// InnerClasses also lists referenced nested classes of other classes (f. e. java/util/Map$Entry)
+		if (name.startsWith(prefix)) {
+			nested.add(name);
+		}
+	}
+
+	private static void skipMembers(@NotNull final DataInputStream in) throws IOException {
+		final int count = in.readUnsignedShort();
+		for (int i = 0; i < count; i++) {
+			in.skipBytes(6); // access flags, name and descriptor
+			skipAttributes(in);
+		}
+	}
+
+	private static void skipAttributes(@NotNull final DataInputStream in) throws IOException {
+		final int count = in.readUnsignedShort();
+		for (int i = 0; i < count; i++) {
+			in.skipBytes(2); // name
+			in.skipBytes(in.readInt());
+		}
+	}
+
+	@NotNull
+	private static ConstantPool readHeader(@NotNull final DataInputStream in) throws IOException {
+		if (in.readInt() != MAGIC) {
+			throw new IOException("Not a class file");
+		}
+		in.readUnsignedShort(); // minor version
+		in.readUnsignedShort(); // major version
+
+		final int count = in.readUnsignedShort();
+		final String[] utf8 = new String[count];
+		final int[] classNameIndex = new int[count];
+		for (int i = 1; i < count; i++) {
+			final int tag = in.readUnsignedByte();
+			switch (tag) {
+				case CONSTANT_UTF8:
+					utf8[i] = in.readUTF();
+					break;
+				case CONSTANT_CLASS:
+					classNameIndex[i] = in.readUnsignedShort();
+					break;
+				case CONSTANT_STRING:
+				case CONSTANT_METHOD_TYPE:
+				case CONSTANT_MODULE:
+				case CONSTANT_PACKAGE:
+					in.skipBytes(2);
+					break;
+				case CONSTANT_METHOD_HANDLE:
+					in.skipBytes(3);
+					break;
+				case CONSTANT_INTEGER:
+				case CONSTANT_FLOAT:
+				case CONSTANT_FIELD_REF:
+				case CONSTANT_METHOD_REF:
+				case CONSTANT_INTERFACE_METHOD_REF:
+				case CONSTANT_NAME_AND_TYPE:
+				case CONSTANT_DYNAMIC:
+				case CONSTANT_INVOKE_DYNAMIC:
+					in.skipBytes(4);
+					break;
+				case CONSTANT_LONG:
+				case CONSTANT_DOUBLE:
+					in.skipBytes(8);
+					i++; // takes two constant pool entries
+					break;
+				default:
+					throw new IOException("Unknown constant pool tag " + tag);
+			}
+		}
+		return new ConstantPool(utf8, classNameIndex);
+	}
+
+	@NotNull
+	public static String toDottedName(@NotNull final String internalName) {
+		return internalName.replace('/', '.');
+	}
+
+	private static boolean isSignature(@NotNull final String value) {
+		if (value.isEmpty()) {
+			return false;
+		}
+		final char first = value.charAt(0);
+		return (first == '(' || first == 'L' || first == '[' || first == '<') && value.indexOf(';') != -1;
+	}
+
+	private static void addReference(@NotNull final String internalName, @NotNull final Set<String> references) {
+		if (internalName.startsWith("[")) {
+			addSignatureReferences(internalName, references); // array class
+		} else {
+			references.add(toDottedName(internalName));
+		}
+	}
+
+	private static void addSignatureReferences(@NotNull final String signature, @NotNull final Set<String> references) {
+		int start = signature.indexOf('L');
+		while (start != -1) {
+			int end = start + 1;
+			while (end < signature.length() && signature.charAt(end) != ';' && signature.charAt(end) != '<') {
+				end++;
+			}
+			if (end > start + 1 && end < signature.length()) {
+				references.add(toDottedName(signature.substring(start + 1, end)));
+			}
+			start = signature.indexOf('L', end);
+		}
+	}
+
+	private static final class ConstantPool {
+		@NotNull
+		private final String[] utf8;
+
+		@NotNull
+		private final int[] classNameIndex;
+
+		private ConstantPool(@NotNull final String[] utf8, @NotNull final int[] classNameIndex) {
+			this.utf8 = utf8;
+			this.classNameIndex = classNameIndex;
+		}
+
+		@NotNull
+		String getClassName(final int classIndex) throws IOException {
+			if (classIndex <= 0 || classIndex >= classNameIndex.length || classNameIndex[classIndex] == 0) {
+				throw new IOException("Invalid class constant " + classIndex);
+			}
+			return utf8[classNameIndex[classIndex]];
+		}
+	}
+
+	public static final class ClassFileInfo {
+		@NotNull
+		private final String className;
+
+		@NotNull
+		private final Set<String> referencedClassNames;
+
+		private ClassFileInfo(@NotNull final String className, @NotNull final Set<String> referencedClassNames) {
+			this.className = className;
+			this.referencedClassNames = Collections.unmodifiableSet(referencedClassNames);
+		}
+
+		/**
+		 * @return dotted class name, e.g. {@code com.example.Outer$Inner}
+		 */
+		@NotNull
+		public String getClassName() {
+			return className;
+		}
+
+		/**
+		 * @return dotted names of all classes referenced from the constant pool, excluding the class itself
+		 */
+		@NotNull
+		public Set<String> getReferencedClassNames() {
+			return referencedClassNames;
+		}
+	}
+}
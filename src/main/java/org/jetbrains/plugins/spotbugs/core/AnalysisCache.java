@@ -0,0 +1,472 @@
+/*
+ * Copyright 2020 SpotBugs plugin contributors
+ *
+ * This file is part of IntelliJ SpotBugs plugin.
+ *
+ * IntelliJ SpotBugs plugin is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ *
+ * IntelliJ SpotBugs plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with IntelliJ SpotBugs plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jetbrains.plugins.spotbugs.core;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Throwable2Computable;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.ClassAnnotation;
+import edu.umd.cs.findbugs.Plugin;
+import edu.umd.cs.findbugs.SortedBugCollection;
+import org.dom4j.DocumentException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.plugins.spotbugs.common.util.ClassFileUtil;
+import org.jetbrains.plugins.spotbugs.common.util.FileUtilFb;
+import org.jetbrains.plugins.spotbugs.common.util.FindBugsUtil;
+import org.jetbrains.plugins.spotbugs.common.util.WithPluginClassloader;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * On-disk analysis result store of one module, located in the IDE system directory.
+ * <p>
+ * The store remembers the content hash and the referenced classes of every analyzed class file together with
+ * the reported bugs. A class file is analyzed again if its content changed or if it references a changed class,
+ * directly or transitively, the bugs of all other class files are replayed from the store. The whole store is
+ * discarded if the configuration key (settings, filter files, SpotBugs and plugin versions, runtime and the aux
+ * classpath) changes. The aux classpath contains the output directories of the dependency modules, so a change in
+ * another module discards the store of all modules which depend on it.
+ */
+final class AnalysisCache {
+
+	private static final Logger LOGGER = Logger.getInstance(AnalysisCache.class);
+
+	private static final int FORMAT_VERSION = 2;
+	private static final String INDEX_FILE_NAME = "index.bin";
+	private static final String BUGS_FILE_NAME = "bugs.xml";
+
+	@NotNull
+	private final File directory;
+
+	@NotNull
+	private final String configurationKey;
+
+	/**
+	 * Key = class file path.
+	 */
+	@NotNull
+	private final Map<String, ClassEntry> entries;
+
+	@Nullable
+	private final SortedBugCollection cachedBugs;
+
+	/**
+	 * Entries of the class files of the current analysis, key = class file path.
+	 */
+	@NotNull
+	private final Map<String, ClassEntry> scope;
+
+	@NotNull
+	private final Set<String> dirtyClassNames;
+
+	private AnalysisCache(
+			@NotNull final File directory,
+			@NotNull final String configurationKey,
+			@NotNull final Map<String, ClassEntry> entries,
+			@Nullable final SortedBugCollection cachedBugs
+	) {
+		this.directory = directory;
+		this.configurationKey = configurationKey;
+		this.entries = entries;
+		this.cachedBugs = cachedBugs;
+		this.scope = new HashMap<>();
+		this.dirtyClassNames = new HashSet<>();
+	}
+
+	@NotNull
+	static AnalysisCache load(@NotNull final Project project, @NotNull final Module module, @NotNull final String configurationKey) {
+		return load(new File(PathManager.getSystemPath(),
+				"spotbugs" + File.separator + "analysis" + File.separator + project.getLocationHash() + File.separator + FileUtil.sanitizeFileName(module.getName())),
+				configurationKey);
+	}
+
+	@NotNull
+	static AnalysisCache load(@NotNull final File directory, @NotNull final String configurationKey) {
+		final File indexFile = new File(directory, INDEX_FILE_NAME);
+		final File bugsFile = new File(directory, BUGS_FILE_NAME);
+		if (indexFile.isFile() && bugsFile.isFile()) {
+			try {
+				final Map<String, ClassEntry> entries = readIndex(indexFile, configurationKey);
+				if (entries != null) {
+					final SortedBugCollection bugs = new SortedBugCollection();
+					WithPluginClassloader.compute(new Throwable2Computable<Void, IOException, DocumentException>() {
+						@Override
+						public Void compute() throws IOException, DocumentException {
+							bugs.readXML(bugsFile.getPath());
+							return null;
+						}
+					});
+					return new AnalysisCache(directory, configurationKey, entries, bugs);
+				}
+			} catch (final IOException | DocumentException | RuntimeException e) {
+				LOGGER.warn("Can not read analysis cache " + directory, e);
+			}
+		}
+		return new AnalysisCache(directory, configurationKey, new HashMap<>(), null);
+	}
+
+	/**
+	 * Removes all class files which are unchanged since the last analysis from {@code findBugsProject}.
+	 *
+	 * @return the cached bugs of the removed class files
+	 */
+	@NotNull
+	List<BugInstance> prepare(@NotNull final edu.umd.cs.findbugs.Project findBugsProject) {
+		final Set<String> cleanFiles = new HashSet<>();
+		for (final String path : findBugsProject.getFileList()) {
+			final File file = new File(path);
+			final ClassEntry cached = entries.get(path);
+			if (cached != null && cached.length == file.length() && cached.lastModified == file.lastModified()) {
+				scope.put(path, cached);
+				cleanFiles.add(path);
+				continue;
+			}
+			try {
+				final byte[] bytes = Files.readAllBytes(file.toPath());
+				final String hash = hash(bytes);
+				if (cached != null && cached.hash.equals(hash)) {
+					scope.put(path, new ClassEntry(file.length(), file.lastModified(), hash, cached.className, cached.referencedClassNames));
+					cleanFiles.add(path);
+				} else {
+					final ClassFileUtil.ClassFileInfo info = ClassFileUtil.read(bytes);
+					scope.put(path, new ClassEntry(file.length(), file.lastModified(), hash, info.getClassName(), info.getReferencedClassNames()));
+					dirtyClassNames.add(info.getClassName());
+				}
+			} catch (final IOException e) {
+				LOGGER.debug("Can not read class file " + path, e);
+			}
+		}
+		if (cachedBugs == null) {
+			return Collections.emptyList();
+		}
+
+		// dependents of changed classes must be analyzed again too (e.g. changed method signatures or supertypes)
+		final Map<String, ClassEntry> clean = new HashMap<>();
+		for (final String path : cleanFiles) {
+			clean.put(path, scope.get(path));
+		}
+		cleanFiles.removeAll(addDependents(clean, dirtyClassNames));
+
+		final Set<String> cleanClassNames = new HashSet<>();
+		final List<String> files = findBugsProject.getFileList();
+		for (int i = files.size() - 1; i >= 0; i--) {
+			final String path = files.get(i);
+			if (cleanFiles.contains(path)) {
+				cleanClassNames.add(scope.get(path).className);
+				findBugsProject.removeFile(i);
+			}
+		}
+
+		final List<BugInstance> ret = new ArrayList<>();
+		for (final BugInstance bug : cachedBugs.getCollection()) {
+			if (cleanClassNames.contains(getPrimaryClassName(bug))) {
+				ret.add(bug);
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * Stores the result of the analysis, including the replayed bugs. Entries of class files which were not part
+	 * of the analysis are kept unless they reference a changed class, directly or transitively.
+	 */
+	void save(@NotNull final SortedBugCollection bugCollection) {
+		final Map<String, ClassEntry> outOfScope = new HashMap<>(entries);
+		outOfScope.keySet().removeAll(scope.keySet());
+		final Set<String> invalidated = addDependents(outOfScope, new HashSet<>(dirtyClassNames));
+
+		final Map<String, ClassEntry> newEntries = new HashMap<>();
+		final Set<String> removedClassNames = new HashSet<>();
+		for (final Map.Entry<String, ClassEntry> entry : outOfScope.entrySet()) {
+			final ClassEntry classEntry = entry.getValue();
+			if (!invalidated.contains(entry.getKey()) && new File(entry.getKey()).isFile()) {
+				newEntries.put(entry.getKey(), classEntry);
+			} else {
+				removedClassNames.add(classEntry.className);
+			}
+		}
+		newEntries.putAll(scope);
+		for (final ClassEntry classEntry : scope.values()) {
+			removedClassNames.add(classEntry.className);
+		}
+
+		final SortedBugCollection bugs = bugCollection.createEmptyCollectionWithMetadata();
+		if (cachedBugs != null) {
+			for (final BugInstance bug : cachedBugs.getCollection()) {
+				if (!removedClassNames.contains(getPrimaryClassName(bug))) {
+					bugs.add(bug, false);
+				}
+			}
+		}
+		for (final BugInstance bug : bugCollection.getCollection()) {
+			bugs.add(bug, false);
+		}
+
+		try {
+			FileUtilFb.mkdirs(directory);
+			final File indexFile = new File(directory, INDEX_FILE_NAME);
+			FileUtil.delete(indexFile); // an index without matching bugs file must never survive
+			WithPluginClassloader.compute(() -> {
+				bugs.writeXML(new File(directory, BUGS_FILE_NAME).getPath());
+				return null;
+			});
+			writeIndex(indexFile, configurationKey, newEntries);
+		} catch (final IOException | RuntimeException e) {
+			LOGGER.warn("Can not write analysis cache " + directory, e);
+		}
+	}
+
+	/**
+	 * Finds the entries which reference one of {@code dirtyClassNames}, directly or through other entries, and adds
+	 * their class names to {@code dirtyClassNames}.
+	 *
+	 * @param candidates key = class file path
+	 * @return the class file paths of the found entries
+	 */
+	@NotNull
+	private static Set<String> addDependents(@NotNull final Map<String, ClassEntry> candidates, @NotNull final Set<String> dirtyClassNames) {
+		final Map<String, List<String>> dependents = new HashMap<>();
+		for (final Map.Entry<String, ClassEntry> entry : candidates.entrySet()) {
+			for (final String reference : entry.getValue().referencedClassNames) {
+				dependents.computeIfAbsent(reference, k -> new ArrayList<>()).add(entry.getKey());
+			}
+		}
+		final Set<String> ret = new HashSet<>();
+		final Deque<String> queue = new ArrayDeque<>(dirtyClassNames);
+		while (!queue.isEmpty()) {
+			for (final String path : dependents.getOrDefault(queue.poll(), Collections.emptyList())) {
+				if (ret.add(path)) {
+					final String className = candidates.get(path).className;
+					if (dirtyClassNames.add(className)) {
+						queue.add(className);
+					}
+				}
+			}
+		}
+		return ret;
+	}
+
+	@Nullable
+	private static String getPrimaryClassName(@NotNull final BugInstance bug) {
+		final ClassAnnotation primaryClass = bug.getPrimaryClass();
+		return primaryClass != null ? primaryClass.getClassName() : null;
+	}
+
+	/**
+	 * @param findBugsProject        the aux classpath entries of the project are part of the key
+	 * @param outputPaths            output directories of the analyzed module, its class files are tracked by the
+	 *                               entries of the store instead of the key
+	 * @param directoryFingerprints  fingerprints of the aux classpath directories, shared by the modules of one analysis
+	 */
+	@NotNull
+	static String createConfigurationKey(
+			@NotNull final AbstractSettings settings,
+			@NotNull final edu.umd.cs.findbugs.Project findBugsProject,
+			@NotNull final Collection<String> outputPaths,
+			@NotNull final Map<String, String> directoryFingerprints
+	) {
+		final StringBuilder key = new StringBuilder();
+		key.append(FORMAT_VERSION).append('|').append(FindBugsUtil.getFindBugsFullVersion());
+		key.append('|').append(System.getProperty("java.home")).append(':').append(System.getProperty("java.runtime.version"));
+		final Map<String, String> plugins = new TreeMap<>();
+		for (final Plugin plugin : Plugin.getAllPlugins()) {
+			plugins.put(plugin.getPluginId(), plugin.getVersion());
+		}
+		key.append('|').append(plugins);
+		key.append('|').append(settings.analysisEffort);
+		key.append('|').append(settings.minRank);
+		key.append('|').append(settings.minPriority);
+		key.append('|').append(new TreeSet<>(settings.hiddenBugCategory));
+		key.append('|').append(new TreeMap<>(settings.detectors));
+		for (final PluginSettings pluginSettings : new TreeSet<>(settings.plugins)) {
+			key.append('|').append(pluginSettings.id).append(pluginSettings.enabled).append(new TreeMap<>(pluginSettings.detectors));
+		}
+		appendFilterFiles(key, settings.includeFilterFiles);
+		appendFilterFiles(key, settings.excludeFilterFiles);
+		appendFilterFiles(key, settings.excludeBugsFiles);
+		for (final String auxClasspathEntry : new TreeSet<>(findBugsProject.getAuxClasspathEntryList())) {
+			if (outputPaths.contains(auxClasspathEntry)) {
+				continue;
+			}
+			final File file = new File(auxClasspathEntry);
+			key.append('|').append(auxClasspathEntry).append(':');
+			if (file.isDirectory()) {
+				key.append(directoryFingerprints.computeIfAbsent(auxClasspathEntry, path -> fingerprint(new File(path))));
+			} else {
+				key.append(file.length()).append(':').append(file.lastModified());
+			}
+		}
+		return hash(key.toString().getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Hashes path, size and modification time of all files below {@code directory}.
+	 */
+	@NotNull
+	private static String fingerprint(@NotNull final File directory) {
+		final List<String> files = new ArrayList<>();
+		final Path root = directory.toPath();
+		try {
+			Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) {
+					files.add(root.relativize(file) + ":" + attrs.size() + ":" + attrs.lastModifiedTime().toMillis());
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFileFailed(final Path file, final IOException e) {
+					files.add(root.relativize(file) + ":?");
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		} catch (final IOException e) {
+			LOGGER.debug("Can not list aux classpath directory " + directory, e);
+			files.add("?");
+		}
+		Collections.sort(files);
+		return hash(String.join("|", files).getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static void appendFilterFiles(@NotNull final StringBuilder key, @NotNull final Map<String, Boolean> filterFiles) {
+		for (final Map.Entry<String, Boolean> filterFile : new TreeMap<>(filterFiles).entrySet()) {
+			if (filterFile.getValue()) {
+				final File file = new File(filterFile.getKey());
+				key.append('|').append(filterFile.getKey()).append(':').append(file.length()).append(':').append(file.lastModified());
+			}
+		}
+	}
+
+	@NotNull
+	private static String hash(@NotNull final byte[] bytes) {
+		try {
+			return StringUtil.toHexString(MessageDigest.getInstance("SHA-256").digest(bytes));
+		} catch (final NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Nullable
+	private static Map<String, ClassEntry> readIndex(@NotNull final File indexFile, @NotNull final String configurationKey) throws IOException {
+		try (final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+			if (in.readInt() != FORMAT_VERSION || !configurationKey.equals(in.readUTF())) {
+				return null;
+			}
+			final int count = in.readInt();
+			final Map<String, ClassEntry> ret = new HashMap<>(count);
+			for (int i = 0; i < count; i++) {
+				final String path = in.readUTF();
+				final long length = in.readLong();
+				final long lastModified = in.readLong();
+				final String hash = in.readUTF();
+				final String className = in.readUTF();
+				final int referenceCount = in.readInt();
+				final Set<String> references = new HashSet<>(referenceCount);
+				for (int j = 0; j < referenceCount; j++) {
+					references.add(in.readUTF());
+				}
+				ret.put(path, new ClassEntry(length, lastModified, hash, className, references));
+			}
+			return ret;
+		}
+	}
+
+	private static void writeIndex(
+			@NotNull final File indexFile,
+			@NotNull final String configurationKey,
+			@NotNull final Map<String, ClassEntry> entries
+	) throws IOException {
+		try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile)))) {
+			out.writeInt(FORMAT_VERSION);
+			out.writeUTF(configurationKey);
+			out.writeInt(entries.size());
+			for (final Map.Entry<String, ClassEntry> entry : entries.entrySet()) {
+				final ClassEntry classEntry = entry.getValue();
+				out.writeUTF(entry.getKey());
+				out.writeLong(classEntry.length);
+				out.writeLong(classEntry.lastModified);
+				out.writeUTF(classEntry.hash);
+				out.writeUTF(classEntry.className);
+				out.writeInt(classEntry.referencedClassNames.size());
+				for (final String reference : classEntry.referencedClassNames) {
+					out.writeUTF(reference);
+				}
+			}
+		}
+	}
+
+	private static final class ClassEntry {
+		private final long length;
+		private final long lastModified;
+		@NotNull
+		private final String hash;
+		@NotNull
+		private final String className;
+		@NotNull
+		private final Set<String> referencedClassNames;
+
+		private ClassEntry(
+				final long length,
+				final long lastModified,
+				@NotNull final String hash,
+				@NotNull final String className,
+				@NotNull final Set<String> referencedClassNames
+		) {
+			this.length = length;
+			this.lastModified = lastModified;
+			this.hash = hash;
+			this.className = className;
+			this.referencedClassNames = referencedClassNames;
+		}
+	}
+}
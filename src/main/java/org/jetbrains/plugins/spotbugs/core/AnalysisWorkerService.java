@@ -0,0 +1,230 @@
+/*
+ * Copyright 2020 SpotBugs plugin contributors
+ *
+ * This file is part of IntelliJ SpotBugs plugin.
+ *
+ * IntelliJ SpotBugs plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * IntelliJ SpotBugs plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with IntelliJ SpotBugs plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jetbrains.plugins.spotbugs.core;
+
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.SystemInfo;
+import com.intellij.openapi.util.io.FileUtil;
+import edu.umd.cs.findbugs.FindBugs2;
+import edu.umd.cs.findbugs.Plugin;
+import edu.umd.cs.findbugs.config.UserPreferences;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.plugins.spotbugs.common.util.FindBugsCustomPluginUtil;
+import org.jetbrains.plugins.spotbugs.common.util.WithPluginClassloader;
+import org.jetbrains.plugins.spotbugs.worker.AnalysisWorker;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Runs the SpotBugs engine in worker JVMs (see {@link AnalysisWorker}) instead of the IDE heap, if
+ * {@link WorkspaceSettings#analyzeInWorkerProcess} is enabled.
+ * <p>
+ * A worker is started with the jars of this plugin and the configured maximum heap. The project (class files,
+ * aux classpath, source directories and plugin states) and the user preferences are handed over in temporary files,
+ * the bugs are streamed back and reported to the {@link Reporter} of the analysis. Idle workers are kept warm for the
+ * next analysis and stopped when the project is closed or the worker settings or the custom plugins changed.
+ */
+public final class AnalysisWorkerService implements Disposable {
+
+	private static final String LOG_FILE_NAME = "spotbugs-worker.log";
+
+	@NotNull
+	private final List<WorkerProcess> _idle;
+
+	private boolean _disposed;
+
+
+	public AnalysisWorkerService() {
+		_idle = new ArrayList<>();
+	}
+
+
+	@NotNull
+	static AnalysisWorkerService getInstance(@NotNull final Project project) {
+		return project.getService(AnalysisWorkerService.class);
+	}
+
+
+	/**
+	 * Analyzes {@code findBugsProject} in a worker, like {@link FindBugs2#execute()} would do in the IDE.
+	 *
+	 * @param userPrefs the filter files are parsed and cached by the worker, the baseline hashes are sent to it once
+	 */
+	void analyze(
+			@NotNull final Reporter reporter,
+			@NotNull final FindBugsProject findBugsProject,
+			@NotNull final UserPreferences userPrefs,
+			final int maxHeapMb
+	) throws IOException {
+		final File directory = FileUtil.createTempDirectory("spotbugs-worker", null);
+		try {
+			final File projectFile = new File(directory, "project.xml");
+			final File preferencesFile = new File(directory, "preferences.properties");
+			WithPluginClassloader.compute(() -> {
+				findBugsProject.writeXML(projectFile, null);
+				return null;
+			});
+			// the filter files are applied from the cache of the worker, its engine must not parse them again
+			final UserPreferences enginePrefs = userPrefs.clone();
+			enginePrefs.setIncludeFilterFiles(new HashMap<>());
+			enginePrefs.setExcludeFilterFiles(new HashMap<>());
+			enginePrefs.setExcludeBugsFiles(new HashMap<>());
+			try (OutputStream out = new FileOutputStream(preferencesFile)) {
+				enginePrefs.write(out);
+			}
+
+			final List<String> plugins = getCustomPlugins();
+			final WorkerProcess worker = acquire(createCommandLine(maxHeapMb), getPluginsKey(plugins));
+			try {
+				worker.analyze(reporter, plugins, projectFile, preferencesFile, userPrefs);
+			} finally {
+				release(worker);
+			}
+		} finally {
+			FileUtil.delete(directory);
+		}
+	}
+
+
+	@NotNull
+	private synchronized WorkerProcess acquire(@NotNull final List<String> commandLine, @NotNull final List<String> pluginsKey) throws IOException {
+		if (_disposed) {
+			throw new ProcessCanceledException();
+		}
+		WorkerProcess ret = null;
+		for (final Iterator<WorkerProcess> it = _idle.iterator(); it.hasNext(); ) {
+			final WorkerProcess worker = it.next();
+			final boolean current = worker.isStartedFor(commandLine, pluginsKey);
+			if (ret == null && worker.isReusable() && current) {
+				it.remove();
+				ret = worker;
+			} else if (!worker.isReusable() || !current) {
+				// died or started with outdated settings or plugins
+				it.remove();
+				worker.destroy();
+			}
+		}
+		if (ret == null) {
+			ret = WorkerProcess.start(commandLine, pluginsKey, new File(PathManager.getLogPath(), LOG_FILE_NAME));
+		}
+		return ret;
+	}
+
+
+	private synchronized void release(@NotNull final WorkerProcess worker) {
+		if (!_disposed && worker.isReusable()) {
+			_idle.add(worker);
+		} else {
+			worker.destroy();
+		}
+	}
+
+
+	@Override
+	public synchronized void dispose() {
+		_disposed = true;
+		for (final WorkerProcess worker : _idle) {
+			worker.destroy();
+		}
+		_idle.clear();
+	}
+
+
+	@NotNull
+	private static List<String> getCustomPlugins() {
+		final List<String> ret = new ArrayList<>();
+		for (final Plugin plugin : Plugin.getAllPlugins()) {
+			if (!plugin.isCorePlugin()) {
+				ret.add(FindBugsCustomPluginUtil.getAsString(plugin));
+			}
+		}
+		return ret;
+	}
+
+
+	/**
+	 * A worker loads a custom plugin once and keeps it enabled, it can not unload a removed plugin or reload a
+	 * replaced jar. So the worker is only reused for the same plugins in the same version.
+	 */
+	@NotNull
+	static List<String> getPluginsKey(@NotNull final List<String> plugins) throws IOException {
+		final List<String> ret = new ArrayList<>();
+		for (final String plugin : plugins) {
+			final File file = FindBugsCustomPluginUtil.getAsFile(plugin);
+			ret.add(plugin + '|' + file.length() + '|' + file.lastModified());
+		}
+		return ret;
+	}
+
+
+	@NotNull
+	private static List<String> createCommandLine(final int maxHeapMb) {
+		final List<String> ret = new ArrayList<>();
+		ret.add(new File(new File(System.getProperty("java.home"), "bin"), SystemInfo.isWindows ? "java.exe" : "java").getPath());
+		ret.add("-Xmx" + maxHeapMb + "m");
+		// do not hang in GC thrashing, the IDE reports the terminated worker
+		ret.add("-XX:+ExitOnOutOfMemoryError");
+		ret.add("-Djava.awt.headless=true");
+		ret.add("-cp");
+		ret.add(createClassPath());
+		ret.add(AnalysisWorker.class.getName());
+		return ret;
+	}
+
+
+	@NotNull
+	private static String createClassPath() {
+		final Set<String> ret = new LinkedHashSet<>();
+		ret.add(getRoot(PathManager.getJarPathForClass(AnalysisWorker.class), AnalysisWorker.class.getName()));
+		// the dependencies of SpotBugs are next to its jar in the lib directory of this plugin
+		final File spotBugsJar = new File(getRoot(PathManager.getJarPathForClass(FindBugs2.class), FindBugs2.class.getName()));
+		final File[] jars = spotBugsJar.getParentFile().listFiles((dir, name) -> name.endsWith(".jar"));
+		if (jars != null) {
+			for (final File jar : jars) {
+				ret.add(jar.getPath());
+			}
+		}
+		// SLF4J is not bundled with this plugin, it is provided by the IDE
+		ret.add(getRoot(PathManager.getResourceRoot(AnalysisWorkerService.class, "/org/slf4j/LoggerFactory.class"), "SLF4J"));
+		return String.join(File.pathSeparator, ret);
+	}
+
+
+	@NotNull
+	private static String getRoot(@Nullable final String root, @NotNull final String name) {
+		if (root == null) {
+			throw new IllegalStateException("Can not find class path of " + name);
+		}
+		return root;
+	}
+}
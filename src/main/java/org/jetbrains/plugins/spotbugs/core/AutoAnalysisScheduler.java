@@ -0,0 +1,144 @@
+/*
+ * Copyright 2020 SpotBugs plugin contributors
+ *
+ * This file is part of IntelliJ SpotBugs plugin.
+ *
+ * IntelliJ SpotBugs plugin is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ *
+ * IntelliJ SpotBugs plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with IntelliJ SpotBugs plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jetbrains.plugins.spotbugs.core;
+
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.Alarm;
+import com.intellij.util.io.storage.HeavyProcessLatch;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Schedules the analysis after auto make of one project. Change sets of consecutive builds are coalesced and at most
+ * one auto analysis runs at the same time: changes which arrive while an analysis runs are folded into the next one,
+ * and the changes of a canceled analysis are kept for the next build, so changed files are never lost.
+ * <p>
+ * The delay adapts to the observed build and analysis durations (exponentially smoothed): the analysis waits about
+ * as long as a build or an analysis takes, so that bursts of auto make builds end up in one analysis, but never
+ * longer than the configured maximum delay.
+ */
+final class AutoAnalysisScheduler {
+
+	private static final long MIN_DELAY_MS = 1000;
+	private static final double SMOOTHING = 0.3;
+
+	@NotNull
+	private final Project _project;
+
+	private final long _maxDelayMs;
+
+	@NotNull
+	private final Alarm _alarm;
+
+	private Set<VirtualFile> _pending; // @GuardedBy this
+	private boolean _running; // @GuardedBy this
+	private double _buildDurationMs = -1; // @GuardedBy this
+	private double _analysisDurationMs = -1; // @GuardedBy this
+
+	AutoAnalysisScheduler(@NotNull final Project project, final long maxDelayMs) {
+		_project = project;
+		_maxDelayMs = maxDelayMs;
+		_alarm = new Alarm(Alarm.ThreadToUse.POOLED_THREAD, project);
+	}
+
+	synchronized void schedule(@NotNull final Set<VirtualFile> changed, final long buildDurationMs) {
+		_buildDurationMs = smooth(_buildDurationMs, buildDurationMs);
+		addPending(changed);
+		if (!_running) {
+			reschedule();
+		} // else folded into the analysis after the running one
+	}
+
+	private void addPending(@NotNull final Set<VirtualFile> changed) {
+		if (_pending == null) {
+			_pending = new HashSet<>(changed);
+		} else {
+			_pending.addAll(changed);
+		}
+	}
+
+	private void reschedule() {
+		_alarm.cancelAllRequests();
+		_alarm.addRequest(() -> HeavyProcessLatch.INSTANCE.queueExecuteOutOfHeavyProcess(this::start), getDelayMs());
+	}
+
+	private long getDelayMs() {
+		if (_maxDelayMs <= 0) {
+			return 0;
+		}
+		final double observed = Math.max(_buildDurationMs, _analysisDurationMs);
+		if (observed < 0) {
+			return _maxDelayMs;
+		}
+		return Math.max(MIN_DELAY_MS, Math.min(_maxDelayMs, (long) observed));
+	}
+
+	private void start() {
+		final Set<VirtualFile> changed;
+		synchronized (this) {
+			if (_running || _pending == null || _project.isDisposed()) {
+				return;
+			}
+			changed = _pending;
+			_pending = null;
+			_running = true;
+		}
+		final long started = System.currentTimeMillis();
+		// the running flag must be cleared exactly once on every path, also if the analysis could not be started
+		final AtomicBoolean finished = new AtomicBoolean();
+		boolean queued = false;
+		try {
+			FindBugsCompileAfterHook.startAutoMakeAnalysis(_project, changed, canceled -> {
+				if (finished.compareAndSet(false, true)) {
+					finished(changed, canceled, System.currentTimeMillis() - started);
+				}
+			});
+			queued = true;
+		} finally {
+			if (!queued && finished.compareAndSet(false, true)) {
+				finished(changed, true, System.currentTimeMillis() - started);
+			}
+		}
+	}
+
+	private synchronized void finished(@NotNull final Set<VirtualFile> changed, final boolean canceled, final long durationMs) {
+		_running = false;
+		if (canceled) {
+			// analyze them again with the next build
+			addPending(changed);
+		} else {
+			_analysisDurationMs = smooth(_analysisDurationMs, durationMs);
+			if (_pending != null) {
+				reschedule();
+			}
+		}
+	}
+
+	private static double smooth(final double average, final long value) {
+		if (average < 0) {
+			return value;
+		}
+		return SMOOTHING * value + (1 - SMOOTHING) * average;
+	}
+}
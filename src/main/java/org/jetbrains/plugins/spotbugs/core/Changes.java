@@ -23,23 +23,22 @@ package org.jetbrains.plugins.spotbugs.core;
 
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.roots.ProjectFileIndex;
-import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
-import gnu.trove.THashMap;
-import gnu.trove.THashSet;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.plugins.spotbugs.common.util.IdeaUtilImpl;
 
-import java.io.File;
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 
 /**
+ * Changed source files per project, collected by {@link ChangeCollector} and consumed by the auto make analysis.
+ * All state is kept in concurrent collections, so the VFS event thread never waits for a build thread.
+ *
  * $Date: 2015-02-14 17:45:23 +0100 (Sa, 14 Feb 2015) $
  *
  * @author $Author: reto.merz@gmail.com $
@@ -50,65 +49,67 @@ final class Changes {
 
 
 	static final Changes INSTANCE = new Changes();
-	private final Set<Project> _listeners = new THashSet<>();
-	private final Map<Project, Set<VirtualFile>> _changed = new THashMap<>();
+	private final Set<Project> _listeners = ConcurrentHashMap.newKeySet();
+	private final ConcurrentMap<Project, Set<VirtualFile>> _changed = new ConcurrentHashMap<>();
 
 
 	private Changes() {
 	}
 
 
-	synchronized void addListener(@NotNull final Project project) {
+	void addListener(@NotNull final Project project) {
 		_listeners.add(project);
 	}
 
 
-	synchronized boolean removeListener(@NotNull final Project project) {
+	boolean removeListener(@NotNull final Project project) {
 		_listeners.remove(project);
 		_changed.remove(project);
 		return _listeners.isEmpty();
 	}
 
 
-	synchronized void addChanged(@NotNull final Collection<File> paths) {
-		final LocalFileSystem lfs = LocalFileSystem.getInstance();
-		VirtualFile vf;
-		List<VirtualFile> vfs = null;
-		for (File f : paths) {
-			vf = lfs.findFileByIoFile(f);
-			if (vf != null && vf.isValid() && !vf.isDirectory() && IdeaUtilImpl.isValidFileType(vf.getFileType())) {
-				if (vfs == null) {
-          vfs = new ArrayList<>();
+	/**
+	 * @param files changed files or directories (a directory stands for all files below it)
+	 */
+	void addChanged(@NotNull final List<VirtualFile> files) {
+		for (final Project project : _listeners) {
+			if (project.isDisposed() || !project.isInitialized()) {
+				continue;
+			}
+			final ProjectFileIndex index = ProjectFileIndex.getInstance(project);
+			final List<VirtualFile> changesOfProject = new ArrayList<>();
+			for (final VirtualFile file : files) {
+				if (!file.isDirectory()) {
+					addIfSource(index, file, changesOfProject);
+				} else if (index.isInContent(file)) {
+					index.iterateContentUnderDirectory(file, child -> {
+						addIfSource(index, child, changesOfProject);
+						return true;
+					});
 				}
-				vfs.add(vf);
+			}
+			if (!changesOfProject.isEmpty()) {
+				// compute is atomic with respect to getAndRemoveChanged, so no change can get lost
+				_changed.compute(project, (key, changed) -> {
+					final Set<VirtualFile> ret = changed != null ? changed : ConcurrentHashMap.newKeySet();
+					ret.addAll(changesOfProject);
+					return ret;
+				});
 			}
 		}
+	}
 
-		if (vfs != null) {
-			ProjectFileIndex index;
-			Set<VirtualFile> changesPerProject;
-			for (Project project : _listeners) {
-				index = ProjectFileIndex.getInstance( project );
-				changesPerProject = null;
-				for (VirtualFile f : vfs) {
-					if (index.isInSource(f)) {
-						if (changesPerProject == null) {
-							changesPerProject = _changed.get(project);
-							if (changesPerProject == null) {
-								changesPerProject = new THashSet<>();
-								_changed.put(project, changesPerProject);
-							}
-						}
-						changesPerProject.add(f);
-					}
-				}
-			}
+
+	private static void addIfSource(@NotNull final ProjectFileIndex index, @NotNull final VirtualFile file, @NotNull final List<VirtualFile> changes) {
+		if (!file.isDirectory() && index.isInSource(file) && IdeaUtilImpl.isValidFileType(file.getFileType())) {
+			changes.add(file);
 		}
 	}
 
 
 	@Nullable
-	synchronized Set<VirtualFile> getAndRemoveChanged(@NotNull final Project project) {
+	Set<VirtualFile> getAndRemoveChanged(@NotNull final Project project) {
 		return _changed.remove(project);
 	}
-}
\ No newline at end of file
+}
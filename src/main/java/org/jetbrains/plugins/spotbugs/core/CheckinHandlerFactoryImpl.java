@@ -98,7 +98,7 @@ public final class CheckinHandlerFactoryImpl extends CheckinHandlerFactory {
 					@Override
 					protected boolean configure(@NotNull final ProgressIndicator indicator, @NotNull final FindBugsProjects projects, final boolean justCompiled) {
 						final Collection<VirtualFile> virtualFiles = panel.getVirtualFiles();
-						projects.addFiles(virtualFiles, false, hasTests(virtualFiles));
+						addFilesInChunks(indicator, projects, virtualFiles, false, hasTests(virtualFiles));
 						return true;
 					}
 				}.start();
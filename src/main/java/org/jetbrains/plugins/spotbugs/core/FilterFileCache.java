@@ -0,0 +1,178 @@
+/*
+ * Copyright 2020 SpotBugs plugin contributors
+ *
+ * This file is part of IntelliJ SpotBugs plugin.
+ *
+ * IntelliJ SpotBugs plugin is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ *
+ * IntelliJ SpotBugs plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with IntelliJ SpotBugs plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jetbrains.plugins.spotbugs.core;
+
+import com.intellij.openapi.diagnostic.Logger;
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.BugReporter;
+import edu.umd.cs.findbugs.DelegatingBugReporter;
+import edu.umd.cs.findbugs.ExcludingHashesBugReporter;
+import edu.umd.cs.findbugs.FilterBugReporter;
+import edu.umd.cs.findbugs.config.UserPreferences;
+import edu.umd.cs.findbugs.filter.Filter;
+import org.dom4j.DocumentException;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the parsed include/exclude filter files and the instance hashes of baseline bug files in memory,
+ * so that all modules of an analysis run and later runs share them instead of parsing each file again.
+ * An entry is parsed again when the size or the modification time of its file changed.
+ */
+final class FilterFileCache {
+
+	private static final Logger LOGGER = Logger.getInstance(FilterFileCache.class);
+
+	private static final Map<String, Entry<Filter>> FILTERS = new HashMap<>(); // @GuardedBy FilterFileCache.class
+	private static final Map<String, Entry<Set<String>>> BASELINES = new HashMap<>(); // @GuardedBy FilterFileCache.class
+
+	private FilterFileCache() {
+	}
+
+	/**
+	 * Wraps {@code reporter} with the enabled filter and baseline files of {@code userPrefs}, like
+	 * {@link edu.umd.cs.findbugs.FindBugs2#addFilter(String, boolean)} and
+	 * {@link edu.umd.cs.findbugs.FindBugs2#excludeBaselineBugs(String)} but with the cached files.
+	 */
+	@NotNull
+	static BugReporter configure(@NotNull final BugReporter reporter, @NotNull final UserPreferences userPrefs) {
+		BugReporter ret = reporter;
+		for (final Filter filter : getFilters(userPrefs.getExcludeFilterFiles(), false).values()) {
+			ret = new FilterBugReporter(ret, filter, false);
+		}
+		for (final Filter filter : getFilters(userPrefs.getIncludeFilterFiles(), true).values()) {
+			ret = new FilterBugReporter(ret, filter, true);
+		}
+		for (final Set<String> hashes : getBaselines(userPrefs.getExcludeBugsFiles()).values()) {
+			ret = new BaselineBugReporter(ret, hashes);
+		}
+		return ret;
+	}
+
+	/**
+	 * @param filterFiles the include or exclude filter files of the user preferences
+	 * @return the enabled filters by path, a file which can not be parsed is logged and skipped
+	 */
+	@NotNull
+	static Map<String, Filter> getFilters(@NotNull final Map<String, Boolean> filterFiles, final boolean include) {
+		final Map<String, Filter> ret = new LinkedHashMap<>();
+		for (final Map.Entry<String, Boolean> filterFile : filterFiles.entrySet()) {
+			if (filterFile.getValue()) {
+				try {
+					ret.put(filterFile.getKey(), getFilter(filterFile.getKey()));
+				} catch (final IOException e) {
+					LOGGER.error((include ? "IncludeFilter" : "ExcludeFilter") + " configuration failed.", e);
+				}
+			}
+		}
+		return ret;
+	}
+
+	/**
+	 * @param excludeBugsFiles the baseline bug files of the user preferences
+	 * @return the instance hashes of the enabled baseline files by path, the same set as long as the file is unchanged;
+	 * a file which can not be parsed is logged and skipped
+	 */
+	@NotNull
+	static Map<String, Set<String>> getBaselines(@NotNull final Map<String, Boolean> excludeBugsFiles) {
+		final Map<String, Set<String>> ret = new LinkedHashMap<>();
+		for (final Map.Entry<String, Boolean> excludeBugFile : excludeBugsFiles.entrySet()) {
+			if (excludeBugFile.getValue()) {
+				try {
+					ret.put(excludeBugFile.getKey(), getBaselineInstanceHashes(excludeBugFile.getKey()));
+				} catch (final IOException | DocumentException e) {
+					LOGGER.error("ExcludeBaseLineBug files configuration failed.", e);
+				}
+			}
+		}
+		return ret;
+	}
+
+	@NotNull
+	private static synchronized Filter getFilter(@NotNull final String path) throws IOException {
+		final File file = new File(path);
+		final Entry<Filter> entry = FILTERS.get(path);
+		if (entry != null && entry.isValid(file)) {
+			return entry.value;
+		}
+		final Entry<Filter> ret = new Entry<>(file, new Filter(path));
+		FILTERS.put(path, ret);
+		return ret.value;
+	}
+
+	@NotNull
+	private static synchronized Set<String> getBaselineInstanceHashes(@NotNull final String path) throws IOException, DocumentException {
+		final File file = new File(path);
+		final Entry<Set<String>> entry = BASELINES.get(path);
+		if (entry != null && entry.isValid(file)) {
+			return entry.value;
+		}
+		final Set<String> hashes = new HashSet<>();
+		ExcludingHashesBugReporter.addToExcludedInstanceHashes(hashes, path);
+		final Entry<Set<String>> ret = new Entry<>(file, Collections.unmodifiableSet(hashes));
+		BASELINES.put(path, ret);
+		return ret.value;
+	}
+
+	private static final class Entry<T> {
+		private final long length;
+		private final long lastModified;
+		@NotNull
+		private final T value;
+
+		private Entry(@NotNull final File file, @NotNull final T value) {
+			this.length = file.length();
+			this.lastModified = file.lastModified();
+			this.value = value;
+		}
+
+		private boolean isValid(@NotNull final File file) {
+			return length == file.length() && lastModified == file.lastModified();
+		}
+	}
+
+	/**
+	 * Like {@link ExcludingHashesBugReporter} but with an already parsed set of instance hashes.
+	 */
+	private static final class BaselineBugReporter extends DelegatingBugReporter {
+		@NotNull
+		private final Set<String> excludedHashes;
+
+		private BaselineBugReporter(@NotNull final BugReporter delegate, @NotNull final Set<String> excludedHashes) {
+			super(delegate);
+			this.excludedHashes = excludedHashes;
+		}
+
+		@Override
+		public void reportBug(@NotNull final BugInstance bugInstance) {
+			if (!excludedHashes.contains(bugInstance.getInstanceHash())) {
+				getDelegate().reportBug(bugInstance);
+			}
+		}
+	}
+}
@@ -32,19 +32,17 @@ import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.vfs.VirtualFileManager;
-import com.intellij.openapi.vfs.impl.BulkVirtualFileListenerAdapter;
-import com.intellij.util.Alarm;
 import com.intellij.util.Consumer;
-import com.intellij.util.io.storage.HeavyProcessLatch;
 import com.intellij.util.messages.MessageBusConnection;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.plugins.spotbugs.common.EventDispatchThreadHelper;
 import org.jetbrains.plugins.spotbugs.common.util.IdeaUtilImpl;
 
 import java.util.ArrayList;
-import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.WeakHashMap;
@@ -53,10 +51,14 @@ import java.util.concurrent.ConcurrentMap;
 
 public class FindBugsCompileAfterHook {
 
+	/**
+	 * Maximum delay of the auto make analysis, the effective delay adapts to the observed durations.
+	 */
 	private static final int DEFAULT_DELAY_MS = 30000;
 	private static final int DELAY_MS = StringUtil.parseInt(System.getProperty("idea.findbugs.autoanalyze.delaymillis", String.valueOf(DEFAULT_DELAY_MS)), DEFAULT_DELAY_MS);
 	private static final ConcurrentMap<UUID, Set<VirtualFile>> CHANGED_BY_SESSION_ID = new ConcurrentHashMap<>();
-	private static final WeakHashMap<Project, DelayedExecutor> DELAYED_EXECUTOR_BY_PROJECT = new WeakHashMap<>();
+	private static final ConcurrentMap<UUID, Long> BUILD_STARTED_BY_SESSION_ID = new ConcurrentHashMap<>();
+	private static final WeakHashMap<Project, AutoAnalysisScheduler> SCHEDULER_BY_PROJECT = new WeakHashMap<>();
 	private static ChangeCollector CHANGE_COLLECTOR; // EDT thread confinement
 	private static MessageBusConnection connection;
 
@@ -79,6 +81,7 @@ public class FindBugsCompileAfterHook {
 					final Set<VirtualFile> changed = Changes.INSTANCE.getAndRemoveChanged(project);
 					if (changed != null) {
 						CHANGED_BY_SESSION_ID.put(sessionId, changed);
+						BUILD_STARTED_BY_SESSION_ID.put(sessionId, System.currentTimeMillis());
 					}
 				}
 			}
@@ -87,19 +90,18 @@ public class FindBugsCompileAfterHook {
 			public void buildFinished(final @NotNull Project project, final @NotNull UUID sessionId, final boolean isAutomake) {
 				if (isAutomake) {
 					final Set<VirtualFile> changed = CHANGED_BY_SESSION_ID.remove(sessionId);
+					final Long buildStarted = BUILD_STARTED_BY_SESSION_ID.remove(sessionId);
 					if (changed != null) {
-						if (DELAY_MS <= 0) {
-							initWorkerForAutoMake(project, changed);
-						} else {
-							synchronized (DELAYED_EXECUTOR_BY_PROJECT) {
-								DelayedExecutor task = DELAYED_EXECUTOR_BY_PROJECT.get(project);
-								if (task == null) {
-									task = new DelayedExecutor(project);
-									DELAYED_EXECUTOR_BY_PROJECT.put(project, task);
-								}
-								task.schedule(changed);
+						final long buildDurationMs = buildStarted != null ? System.currentTimeMillis() - buildStarted : 0;
+						AutoAnalysisScheduler scheduler;
+						synchronized (SCHEDULER_BY_PROJECT) {
+							scheduler = SCHEDULER_BY_PROJECT.get(project);
+							if (scheduler == null) {
+								scheduler = new AutoAnalysisScheduler(project, DELAY_MS);
+								SCHEDULER_BY_PROJECT.put(project, scheduler);
 							}
 						}
+						scheduler.schedule(changed, buildDurationMs);
 					}
 				} // else do nothing
 			}
@@ -110,10 +112,16 @@ public class FindBugsCompileAfterHook {
 	static void setAnalyzeAfterAutomake(@NotNull final Project project, final boolean enabled) {
 		if (enabled) {
 			Changes.INSTANCE.addListener(project);
+			// seed the index with the current compiler output, so that the next build has a previous state to compare
+			ApplicationManager.getApplication().executeOnPooledThread(() -> {
+				if (!project.isDisposed()) {
+					ReverseDependencyIndex.getInstance(project).update();
+				}
+			});
 			if (CHANGE_COLLECTOR == null) {
 				CHANGE_COLLECTOR = new ChangeCollector();
 				connection = project.getMessageBus().connect();
-				connection.subscribe(VirtualFileManager.VFS_CHANGES, new BulkVirtualFileListenerAdapter(CHANGE_COLLECTOR));
+				connection.subscribe(VirtualFileManager.VFS_CHANGES, CHANGE_COLLECTOR);
 			}
 		} else {
 			final boolean empty = Changes.INSTANCE.removeListener(project);
@@ -157,7 +165,7 @@ public class FindBugsCompileAfterHook {
 
 			@Override
 			protected boolean configure(@NotNull final ProgressIndicator indicator, @NotNull final FindBugsProjects projects, final boolean justCompiled) {
-				return projects.addFiles(affectedFiles, false, hasTests(affectedFiles));
+				return addFilesInChunks(indicator, projects, affectedFiles, false, hasTests(affectedFiles));
 			}
 		}.start();
 	}
@@ -186,69 +194,76 @@ public class FindBugsCompileAfterHook {
 		return settings.analyzeAfterAutoMake;
 	}
 
-	private static void initWorkerForAutoMake(@NotNull final Project project, @NotNull final Collection<VirtualFile> changed) {
-		ApplicationManager.getApplication().runReadAction(() -> initWorkerForAutoMakeImpl(project, changed));
-	}
-
-	private static void initWorkerForAutoMakeImpl(@NotNull final Project project, @NotNull final Collection<VirtualFile> changed) {
-		EventDispatchThreadHelper.invokeLater(() -> new FindBugsStarter(
-				project,
-				"Running SpotBugs analysis for affected files...",
-				ProgressStartType.RunInBackground
-		) {
-			@Override
-			protected boolean isCompileBeforeAnalyze() {
-				return false;
-			}
-
-			@Override
-			protected void createCompileScope(@NotNull final CompilerManager compilerManager, @NotNull final Consumer<CompileScope> consumer) {
-				throw new UnsupportedOperationException();
-			}
-
-			@Override
-			protected boolean configure(@NotNull final ProgressIndicator indicator, @NotNull final FindBugsProjects projects, final boolean justCompiled) {
-				projects.addFiles(changed, false, hasTests(changed));
-				return true;
+	/**
+	 * Starts the analysis of the changed files, see {@link AutoAnalysisScheduler}.
+	 *
+	 * @param done invoked with {@code true} if the analysis was canceled or could not be started
+	 */
+	static void startAutoMakeAnalysis(
+			@NotNull final Project project,
+			@NotNull final Set<VirtualFile> changed,
+			@NotNull final Consumer<Boolean> done
+	) {
+		EventDispatchThreadHelper.invokeLater(() -> {
+			if (project.isDisposed()) {
+				done.consume(true);
+				return;
 			}
-		}.start());
-	}
+			try {
+				new FindBugsStarter(
+						project,
+						"Running SpotBugs analysis for affected files...",
+						ProgressStartType.RunInBackground
+				) {
+					@Nullable
+					private ReverseDependencyIndex.AffectedClasses _affected;
 
-	private static class DelayedExecutor {
-		private final Project _project;
-		private final Alarm _alarm;
-		private Set<VirtualFile> _changed;
+					@Override
+					protected boolean isCompileBeforeAnalyze() {
+						return false;
+					}
 
-		DelayedExecutor(@NotNull final Project project) {
-			_project = project;
-			_alarm = new Alarm(Alarm.ThreadToUse.POOLED_THREAD, project);
-		}
+					@Override
+					protected void createCompileScope(@NotNull final CompilerManager compilerManager, @NotNull final Consumer<CompileScope> consumer) {
+						throw new UnsupportedOperationException();
+					}
 
-		void schedule(@NotNull final Set<VirtualFile> changed) {
-			_alarm.cancelAllRequests();
-			synchronized (this) {
-				if (_changed == null) {
-					_changed = changed;
-				} else {
-					_changed.addAll(changed);
-				}
-			}
-			addRequest();
-		}
+					@Override
+					protected boolean configure(@NotNull final ProgressIndicator indicator, @NotNull final FindBugsProjects projects, final boolean justCompiled) {
+						// expand the changed sources by the classes which were recompiled or depend on a recompiled class;
+						// lists all output directories, so it runs here in the analysis task
+						final ReverseDependencyIndex.AffectedClasses affected = ReverseDependencyIndex.getInstance(project).update();
+						_affected = affected;
+						indicator.checkCanceled();
+						final List<VirtualFile> files = new ArrayList<>(changed.size());
+						for (final VirtualFile file : changed) {
+							if (file.isValid()) {
+								files.add(file);
+							}
+						}
+						final boolean includeTests = hasTests(files) || affected.hasTests();
+						addFilesInChunks(indicator, projects, files, false, includeTests);
+						return readAction(indicator, () -> {
+							for (final Map.Entry<Module, Set<String>> entry : affected.getClassFiles().entrySet()) {
+								projects.addClassFiles(entry.getKey(), entry.getValue(), includeTests);
+							}
+							return true;
+						});
+					}
 
-		private void addRequest() {
-			_alarm.addRequest(() -> {
-				if (HeavyProcessLatch.INSTANCE.isRunning()) {
-					addRequest();
-				} else {
-					final Set<VirtualFile> changed;
-					synchronized (DelayedExecutor.this) {
-						changed = _changed;
-						_changed = null;
+					@Override
+					protected void analysisDone(final boolean canceled) {
+						if (canceled && _affected != null && !project.isDisposed()) {
+							// the index moved on already, the next run analyzes these classes
+							ReverseDependencyIndex.getInstance(project).restore(_affected);
+						}
+						done.consume(canceled);
 					}
-					initWorkerForAutoMake(_project, changed);
-				}
-			}, DELAY_MS);
-		}
+				}.start();
+			} catch (final RuntimeException e) {
+				done.consume(true);
+				throw e;
+			}
+		});
 	}
 }
@@ -121,6 +121,16 @@ public final class FindBugsProjects {
 		return true;
 	}
 
+	/**
+	 * Adds already compiled class files, f. e. the dependents of changed classes (see {@link ReverseDependencyIndex}).
+	 */
+	void addClassFiles(@NotNull final Module module, @NotNull final Collection<String> classFiles, final boolean includeTests) {
+		final FindBugsProject findBugsProject = get(module, includeTests);
+		for (final String classFile : classFiles) {
+			findBugsProject.addFile(classFile);
+		}
+	}
+
 	@NotNull
 	public FindBugsProject get(@NotNull final Module module, final boolean includeTests) {
 		FindBugsProject ret = projects.get(module);
@@ -19,20 +19,37 @@
  */
 package org.jetbrains.plugins.spotbugs.core;
 
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.PackageStats;
 import edu.umd.cs.findbugs.Project;
 import edu.umd.cs.findbugs.ProjectStats;
 import edu.umd.cs.findbugs.SortedBugCollection;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public final class FindBugsResult {
 	@NotNull
 	private final Map<Project, SortedBugCollection> results;
 
+	/**
+	 * {@code true} if this result was {@link #merge(FindBugsResult) merged} from several analyses, so the
+	 * {@link ProjectStats} of the collections may overlap.
+	 */
+	private boolean merged;
+
+	/**
+	 * {@code true} if this result was restored from the {@link ResultSnapshot} of the last analysis.
+	 */
+	private boolean restored;
+
 	public FindBugsResult() {
 		this.results = new HashMap<>();
 	}
@@ -43,6 +60,14 @@ public final class FindBugsResult {
 		}
 	}
 
+	public boolean isRestored() {
+		return restored;
+	}
+
+	void setRestored() {
+		restored = true;
+	}
+
 	public boolean isBugCollectionEmpty() {
 		for (final SortedBugCollection bugCollection : results.values()) {
 			if (!bugCollection.getCollection().isEmpty()) {
@@ -62,6 +87,9 @@ public final class FindBugsResult {
 
 	@Nullable
 	public Integer getAnalyzedClassCount() {
+		if (merged) {
+			return getAnalyzedClassNames().size();
+		}
 		int ret = -1;
 		for (final SortedBugCollection bugCollection : results.values()) {
 			final ProjectStats stats = bugCollection.getProjectStats();
@@ -87,4 +115,79 @@ public final class FindBugsResult {
 	public Map<Project, SortedBugCollection> getResults() {
 		return results;
 	}
+
+	@NotNull
+	public Set<String> getAnalyzedClassNames() {
+		final Set<String> ret = new HashSet<>();
+		for (final SortedBugCollection bugCollection : results.values()) {
+			addAnalyzedClassNames(bugCollection, ret);
+		}
+		return ret;
+	}
+
+	/**
+	 * @return {@code true} if {@code bug} is still part of this result
+	 */
+	public boolean contains(@NotNull final Bug bug) {
+		for (final SortedBugCollection bugCollection : results.values()) {
+			if (bugCollection == bug.getBugCollection()) {
+				return bugCollection.getCollection().contains(bug.getInstance());
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Merges the result of a partial analysis into this result. The bugs of all classes which were analyzed again
+	 * by {@code newer} are replaced, the bugs of all other classes are kept. Note that the bug collections of this
+	 * result are modified and reused, so {@link Bug} instances of kept bugs stay valid.
+	 *
+	 * @param newer the result of the partial analysis
+	 * @return the merged result
+	 */
+	@NotNull
+	public FindBugsResult merge(@NotNull final FindBugsResult newer) {
+		final Set<String> reanalyzed = newer.getAnalyzedClassNames();
+		for (final SortedBugCollection bugCollection : newer.results.values()) {
+			for (final BugInstance bugInstance : bugCollection.getCollection()) {
+				reanalyzed.add(bugInstance.getPrimaryClass().getClassName());
+			}
+		}
+
+		final FindBugsResult ret = new FindBugsResult();
+		ret.merged = true;
+		for (final Map.Entry<Project, SortedBugCollection> entry : results.entrySet()) {
+			final SortedBugCollection bugCollection = entry.getValue();
+			final List<BugInstance> stale = new ArrayList<>();
+			for (final BugInstance bugInstance : bugCollection.getCollection()) {
+				if (reanalyzed.contains(bugInstance.getPrimaryClass().getClassName())) {
+					stale.add(bugInstance);
+				}
+			}
+			for (final BugInstance bugInstance : stale) {
+				bugCollection.remove(bugInstance);
+			}
+			if (bugCollection.getCollection().isEmpty()) {
+				final Set<String> classNames = new HashSet<>();
+				addAnalyzedClassNames(bugCollection, classNames);
+				if (reanalyzed.containsAll(classNames)) {
+					continue; // completely superseded by newer
+				}
+			}
+			ret.results.put(entry.getKey(), bugCollection);
+		}
+		ret.results.putAll(newer.results);
+		return ret;
+	}
+
+	private static void addAnalyzedClassNames(@NotNull final SortedBugCollection bugCollection, @NotNull final Set<String> classNames) {
+		final ProjectStats stats = bugCollection.getProjectStats();
+		if (stats != null) {
+			for (final PackageStats packageStats : stats.getPackageStats()) {
+				for (final PackageStats.ClassStats classStats : packageStats.getClassStats()) {
+					classNames.add(classStats.getName());
+				}
+			}
+		}
+	}
 }
@@ -23,8 +23,8 @@ import com.intellij.execution.*;
 import com.intellij.execution.configurations.RunConfiguration;
 import com.intellij.facet.FacetManager;
 import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.compiler.*;
-import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.module.*;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.progress.*;
@@ -35,10 +35,11 @@ import com.intellij.openapi.util.*;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.openapi.wm.ToolWindow;
+import com.intellij.psi.PsiManager;
 import com.intellij.util.Consumer;
+import com.intellij.util.concurrency.AppExecutorUtil;
 import edu.umd.cs.findbugs.*;
 import edu.umd.cs.findbugs.config.*;
-import org.dom4j.DocumentException;
 import org.jetbrains.annotations.*;
 import org.jetbrains.plugins.spotbugs.common.EventDispatchThreadHelper;
 import org.jetbrains.plugins.spotbugs.gui.common.BalloonTipFactory;
@@ -49,11 +50,34 @@ import org.jetbrains.plugins.spotbugs.resources.ResourcesLoader;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
 
 public abstract class FindBugsStarter implements AnalysisAbortingListener {
 
-	private static final Logger LOGGER = Logger.getInstance(FindBugsStarter.class);
+	/**
+	 * Number of files added per read action, see {@link #addFilesInChunks}.
+	 */
+	private static final int CONFIGURE_CHUNK_SIZE = 100;
+
+	/**
+	 * Maximum number of builds of the {@link #createPipeline() pipeline}, each build compiles a batch of modules.
+	 */
+	private static final int MAX_PIPELINE_BUILDS = 4;
+
+	/**
+	 * Interval to check for cancellation while waiting for a free engine, see {@link #_engines}.
+	 */
+	private static final long ENGINE_POLL_TIMEOUT_MS = 100;
 
 	@NotNull
 	private final Project project;
@@ -73,6 +97,19 @@ public abstract class FindBugsStarter implements AnalysisAbortingListener {
 
 	private final AtomicBoolean _cancellingByUser;
 
+	/**
+	 * {@link WorkspaceSettings#analysisParallelism} when the analysis was created, the same value sizes the pools
+	 * and {@link #_engines} even if the setting changes during the analysis.
+	 */
+	private final int _parallelism;
+
+	/**
+	 * Limits the engines which run at the same time in this analysis (modules, shards of modules and worker
+	 * processes together) to {@link #_parallelism}.
+	 */
+	@NotNull
+	private final Semaphore _engines;
+
 
 	public FindBugsStarter(
 			@NotNull final Project project,
@@ -108,6 +145,8 @@ public abstract class FindBugsStarter implements AnalysisAbortingListener {
 				throw new UnsupportedOperationException("Unsupported " + progressStartType);
 		}
 		_cancellingByUser = new AtomicBoolean();
+		_parallelism = Math.max(1, workspaceSettings.analysisParallelism);
+		_engines = new Semaphore(_parallelism, true);
 		MessageBusManager.subscribe(project, this, AnalysisAbortingListener.TOPIC, this);
 	}
 
@@ -115,11 +154,39 @@ public abstract class FindBugsStarter implements AnalysisAbortingListener {
 		return workspaceSettings.compileBeforeAnalyze;
 	}
 
+	/**
+	 * @return {@code true} if this (partial) analysis only updates the bugs of the analyzed classes and keeps the
+	 * remaining bugs of the previous result, {@code false} if the result replaces the previous one.
+	 */
+	protected boolean isMergeResult() {
+		return true;
+	}
+
+	/**
+	 * Override to analyze the modules batch by batch as soon as they are compiled, see
+	 * {@link WorkspaceSettings#pipelineCompileAndAnalyze}.
+	 *
+	 * @return the modules to compile and analyze or null if this analysis does not support the pipeline
+	 */
+	@Nullable
+	protected ModulePipeline createPipeline() {
+		return null;
+	}
+
 	public final void start() {
 		EventDispatchThreadHelper.checkEDT();
 		if (isCompileBeforeAnalyze()) {
 			final boolean isAnalyzeAfterCompile = workspaceSettings.analyzeAfterCompile;
 			final CompilerManager compilerManager = CompilerManager.getInstance(project);
+			// a modal task would block the compile callbacks of the pipeline
+			if (workspaceSettings.pipelineCompileAndAnalyze && !isAnalyzeAfterCompile && !startProgressModal) {
+				final ModulePipeline pipeline = createPipeline();
+				// with a single module the pipeline has nothing to overlap
+				if (pipeline != null && pipeline.getModules().length > 1) {
+					startPipeline(compilerManager, pipeline);
+					return;
+				}
+			}
 			createCompileScope(compilerManager, compileScope -> {
 				if (compileScope != null) {
 					finalizeCompileScope(compileScope);
@@ -130,19 +197,71 @@ public abstract class FindBugsStarter implements AnalysisAbortingListener {
 							// We need to continue outside dumb mode to make activateToolWindow work f. e.
 							DumbService.getInstance(project).runWhenSmart(() -> {
 								EventDispatchThreadHelper.checkEDT();
-								startImpl(true);
+								startImpl(indicator -> asyncStartImpl(indicator, true));
 							});
 						}
 					});
 				}
 			});
 		} else {
-			startImpl(false);
+			startImpl(indicator -> asyncStartImpl(indicator, false));
 		}
 	}
 
-	private void startImpl(final boolean justCompiled) {
-		MessageBusManager.publishAnalysisStarted(project);
+	/**
+	 * Starts the analysis task right away and compiles the modules in at most {@link #MAX_PIPELINE_BUILDS} batches
+	 * one after another. The task analyzes each batch as soon as its compilation finished while the next batch is
+	 * compiled.
+	 */
+	private void startPipeline(@NotNull final CompilerManager compilerManager, @NotNull final ModulePipeline pipeline) {
+		final CompilePipeline compilePipeline = new CompilePipeline();
+		startImpl(indicator -> asyncStartPipelineImpl(indicator, pipeline, compilePipeline));
+		compileNext(compilerManager, createBatches(pipeline.getModules()), 0, compilePipeline);
+	}
+
+	/**
+	 * Each build has a fixed overhead, so the modules are not compiled one by one but in a few consecutive batches
+	 * of about the same size. The order is kept, so the dependencies of a batch are compiled before.
+	 */
+	@NotNull
+	private static List<Module[]> createBatches(@NotNull final Module[] modules) {
+		final int batchCount = Math.min(MAX_PIPELINE_BUILDS, modules.length);
+		final List<Module[]> ret = new ArrayList<>(batchCount);
+		for (int i = 0; i < batchCount; i++) {
+			ret.add(Arrays.copyOfRange(modules, i * modules.length / batchCount, (i + 1) * modules.length / batchCount));
+		}
+		return ret;
+	}
+
+	private void compileNext(
+			@NotNull final CompilerManager compilerManager,
+			@NotNull final List<Module[]> batches,
+			final int index,
+			@NotNull final CompilePipeline compilePipeline
+	) {
+		if (compilePipeline.isCanceled()) {
+			return;
+		}
+		if (index >= batches.size()) {
+			compilePipeline.finish();
+			return;
+		}
+		final Module[] batch = batches.get(index);
+		final CompileScope compileScope = compilerManager.createModulesCompileScope(batch, false);
+		finalizeCompileScope(compileScope);
+		compilerManager.make(compileScope, (aborted, errors, warnings, compileContext) -> {
+			if (aborted || errors > 0) {
+				compilePipeline.fail();
+				return;
+			}
+			compilePipeline.add(batch);
+			// do not start the next build inside finished()
+			EventDispatchThreadHelper.invokeLater(() -> compileNext(compilerManager, batches, index + 1, compilePipeline));
+		});
+	}
+
+	private void startImpl(@NotNull final Function<ProgressIndicator, Boolean> analysis) {
+		MessageBusManager.publishAnalysisStarted(project, isMergeResult());
 
 		if (!ApplicationManager.getApplication().isUnitTestMode()) {
 			final ToolWindow toolWindow = ToolWindowPanel.getWindow(project);
@@ -164,14 +283,14 @@ public abstract class FindBugsStarter implements AnalysisAbortingListener {
 			task = new Task.Modal(project, _title, true) {
 				@Override
 				public void run(@NotNull final ProgressIndicator indicator) {
-					asyncStart(indicator, justCompiled);
+					asyncStart(indicator, analysis);
 				}
 			};
 		} else {
 			task = new Task.Backgroundable(project, _title, true) {
 				@Override
 				public void run(@NotNull final ProgressIndicator indicator) {
-					asyncStart(indicator, justCompiled);
+					asyncStart(indicator, analysis);
 				}
 
 				@Override
@@ -183,42 +302,81 @@ public abstract class FindBugsStarter implements AnalysisAbortingListener {
 		task.queue();
 	}
 
-	private void asyncStart(@NotNull final ProgressIndicator indicator, final boolean justCompiled) {
+	private void asyncStart(@NotNull final ProgressIndicator indicator, @NotNull final Function<ProgressIndicator, Boolean> analysis) {
 		indicator.setIndeterminate(true);
 		indicator.setText("Configure SpotBugs...");
+		boolean canceled = true;
 		try {
-			asyncStartImpl(indicator, justCompiled);
+			canceled = analysis.apply(indicator);
 		} catch (final ProcessCanceledException ignore) {
 			MessageBusManager.publishAnalysisAbortedToEDT(project);
+		} finally {
+			analysisDone(canceled);
+		}
+	}
+
+	/**
+	 * Analyzes the batches of the pipeline in the order they were compiled. The modules of a batch are analyzed like
+	 * the modules of a regular analysis, concurrently or by a shared engine if enabled.
+	 *
+	 * @return true if the analysis was canceled
+	 */
+	private boolean asyncStartPipelineImpl(
+			@NotNull final ProgressIndicator indicator,
+			@NotNull final ModulePipeline pipeline,
+			@NotNull final CompilePipeline compilePipeline
+	) {
+
+		final FindBugsResult result = new FindBugsResult();
+		final AtomicInteger numClassesOffset = new AtomicInteger();
+		Throwable error = null;
+		boolean canceled = false;
+
+		try {
+			Module[] batch;
+			while (!canceled && (batch = compilePipeline.take(indicator)) != null) {
+				indicator.setText("Configure SpotBugs for " + batch.length + " modules...");
+				final FindBugsProjects projects = new FindBugsProjects(project);
+				pipeline.configure(indicator, projects, batch);
+				canceled = execute(indicator, projects, numClassesOffset, result);
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (final ProcessCanceledException e) {
+			throw e;
+		} catch (final Throwable e) {
+			if (ApplicationManager.getApplication().isUnitTestMode()) {
+				throw new RuntimeException(e);
+			}
+			error = e;
+		} finally {
+			// stop compiling the remaining modules
+			compilePipeline.cancel();
+		}
+
+		if (canceled) {
+			MessageBusManager.publishAnalysisAbortedToEDT(project);
+		} else {
+			MessageBusManager.publishAnalysisFinishedToEDT(project, result, error);
 		}
+		return canceled;
 	}
 
-	private void asyncStartImpl(@NotNull final ProgressIndicator indicator, final boolean justCompiled) {
+	/**
+	 * @return true if the analysis was canceled
+	 */
+	private boolean asyncStartImpl(@NotNull final ProgressIndicator indicator, final boolean justCompiled) {
 
 		final FindBugsProjects projects = new FindBugsProjects(project);
 
-		boolean canceled = !ApplicationManager.getApplication().runReadAction(
-				(Computable<Boolean>) () -> configure(indicator, projects, justCompiled));
+		boolean canceled = !configure(indicator, projects, justCompiled);
 
 		final FindBugsResult result = new FindBugsResult();
 		Throwable error = null;
 
 		if (!canceled) {
 			try {
-				int numClassesOffset = 0;
-				for (final Map.Entry<Module, FindBugsProject> entry : projects.getProjects().entrySet()) {
-					final FindBugsProject findBugsProject = entry.getValue();
-					final Module module = entry.getKey();
-					indicator.setText("Start SpotBugs analysis of " + findBugsProject.getProjectName());
-					final Pair<SortedBugCollection, Reporter> data = executeImpl(indicator, module, findBugsProject, numClassesOffset);
-					final int numClasses = data.getSecond().getProjectStats().getNumClasses();
-					numClassesOffset += numClasses;
-					result.put(findBugsProject, data.getFirst());
-					if (data.getSecond().isCanceled()) {
-						canceled = true;
-						break;
-					}
-				}
+				canceled = execute(indicator, projects, new AtomicInteger(), result);
 			} catch (final InterruptedException e) {
 				Thread.currentThread().interrupt();
 			} catch (final ProcessCanceledException e) {
@@ -236,14 +394,126 @@ public abstract class FindBugsStarter implements AnalysisAbortingListener {
 		} else {
 			MessageBusManager.publishAnalysisFinishedToEDT(project, result, error);
 		}
+		return canceled;
 	}
 
-	private Pair<SortedBugCollection, Reporter> executeImpl(
+	/**
+	 * Analyzes the configured modules, concurrently or by one shared engine if enabled in the settings, and adds
+	 * their bugs to {@code result}.
+	 *
+	 * @return true if the analysis was canceled
+	 */
+	private boolean execute(
 			@NotNull final ProgressIndicator indicator,
-			@NotNull final Module module,
-			@NotNull final FindBugsProject findBugsProject,
-			final int analyzedClassCountOffset
-	) throws IOException, InterruptedException {
+			@NotNull final FindBugsProjects projects,
+			@NotNull final AtomicInteger numClassesOffset,
+			@NotNull final FindBugsResult result
+	) throws Throwable {
+
+		boolean canceled = false;
+		SharedAnalysisContext sharedContext = null;
+		try {
+			final Map<Module, FindBugsProject> sequentialProjects = new LinkedHashMap<>();
+			final Map<Module, FindBugsProject> parallelProjects = new LinkedHashMap<>();
+			final boolean shareAnalysisContext = workspaceSettings.shareAnalysisContext;
+			for (final Map.Entry<Module, FindBugsProject> entry : projects.getProjects().entrySet()) {
+				/*
+				 * Loaded plugins are global state, so only modules which share the project settings
+				 * can be analyzed concurrently or by one shared engine.
+				 */
+				if ((shareAnalysisContext || _parallelism > 1) && !ModuleSettings.getInstance(entry.getKey()).overrideProjectSettings) {
+					parallelProjects.put(entry.getKey(), entry.getValue());
+				} else {
+					sequentialProjects.put(entry.getKey(), entry.getValue());
+				}
+			}
+			if (parallelProjects.size() > 1 && shareAnalysisContext) {
+				sequentialProjects.putAll(SharedAnalysisContext.removeConflictingModules(parallelProjects));
+			}
+			if (parallelProjects.size() > 1) {
+				if (shareAnalysisContext) {
+					sharedContext = new SharedAnalysisContext(project, parallelProjects);
+					canceled = executeShared(indicator, sharedContext, numClassesOffset, result);
+				} else {
+					canceled = executeParallel(indicator, parallelProjects, _parallelism, numClassesOffset, result);
+				}
+			} else {
+				sequentialProjects.putAll(parallelProjects);
+			}
+			if (!canceled) {
+				for (final Map.Entry<Module, FindBugsProject> entry : sequentialProjects.entrySet()) {
+					final FindBugsProject findBugsProject = entry.getValue();
+					final Module module = entry.getKey();
+					indicator.setText("Start SpotBugs analysis of " + findBugsProject.getProjectName());
+					final AbstractSettings settings = loadSettings(module);
+					final Pair<SortedBugCollection, Boolean> data = executeImpl(indicator, module, settings, findBugsProject, numClassesOffset);
+					result.put(findBugsProject, data.getFirst());
+					if (data.getSecond()) {
+						canceled = true;
+						break;
+					}
+				}
+			}
+		} finally {
+			if (sharedContext != null) {
+				sharedContext.dispose();
+			}
+		}
+		return canceled;
+	}
+
+	/**
+	 * Analyzes the modules concurrently with at most {@code parallelism} engines at the same time.
+	 * All modules must use the project settings (see {@link ModuleSettings#overrideProjectSettings}).
+	 *
+	 * @return true if the analysis was canceled
+	 */
+	private boolean executeParallel(
+			@NotNull final ProgressIndicator indicator,
+			@NotNull final Map<Module, FindBugsProject> projects,
+			final int parallelism,
+			@NotNull final AtomicInteger numClassesOffset,
+			@NotNull final FindBugsResult result
+	) throws Throwable {
+
+		indicator.setText("Start SpotBugs analysis of " + projects.size() + " modules (" + parallelism + " in parallel)");
+		// All modules share the project settings, so any of them can be used to load them.
+		final AbstractSettings settings = loadSettings(projects.keySet().iterator().next());
+
+		final ExecutorService executor = AppExecutorUtil.createBoundedApplicationPoolExecutor("SpotBugs Analysis", parallelism);
+		final Map<FindBugsProject, Future<Pair<SortedBugCollection, Boolean>>> futures = new LinkedHashMap<>();
+		try {
+			for (final Map.Entry<Module, FindBugsProject> entry : projects.entrySet()) {
+				final Module module = entry.getKey();
+				final FindBugsProject findBugsProject = entry.getValue();
+				futures.put(findBugsProject, executor.submit(() -> executeImpl(indicator, module, settings, findBugsProject, numClassesOffset)));
+			}
+			boolean canceled = false;
+			for (final Map.Entry<FindBugsProject, Future<Pair<SortedBugCollection, Boolean>>> entry : futures.entrySet()) {
+				final Pair<SortedBugCollection, Boolean> data;
+				try {
+					data = entry.getValue().get();
+				} catch (final ExecutionException e) {
+					throw e.getCause();
+				}
+				result.put(entry.getKey(), data.getFirst());
+				if (data.getSecond()) {
+					canceled = true;
+				}
+			}
+			return canceled;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Imports the runtime settings (if configured) and loads the plugins for the module.
+	 *
+	 * @return the effective settings of the module
+	 */
+	@NotNull
+	private AbstractSettings loadSettings(@NotNull final Module module) {
 
 		final ModuleSettings moduleSettings = ModuleSettings.getInstance(module);
 		AbstractSettings settings = projectSettings;
@@ -268,41 +538,181 @@ public abstract class FindBugsStarter implements AnalysisAbortingListener {
 		if (!PluginLoader.load(project, moduleSettings.overrideProjectSettings ? module : null, settings, true)) {
 			throw new ProcessCanceledException();
 		}
+		return settings;
+	}
 
-		final DetectorFactoryCollection detectorFactoryCollection = DetectorFactoryCollection.instance();
+	/**
+	 * @return the bugs of the module and true if the analysis was canceled
+	 */
+	private Pair<SortedBugCollection, Boolean> executeImpl(
+			@NotNull final ProgressIndicator indicator,
+			@NotNull final Module module,
+			@NotNull final AbstractSettings settings,
+			@NotNull final FindBugsProject findBugsProject,
+			@NotNull final AtomicInteger analyzedClassCountOffset
+	) throws IOException, InterruptedException {
 
-		final ProjectFilterSettings projectFilterSettings;
-		final UserPreferences userPrefs = UserPreferences.createDefaultUserPreferences();
-		{
-			userPrefs.setEffort(settings.analysisEffort);
-			projectFilterSettings = userPrefs.getFilterSettings();
-			projectFilterSettings.setMinRank(settings.minRank);
-			projectFilterSettings.setMinPriority(settings.minPriority);
+		final UserPreferences userPrefs = createUserPreferences(settings);
+		final ProjectFilterSettings projectFilterSettings = userPrefs.getFilterSettings();
+
+		final AnalysisCache analysisCache = workspaceSettings.incrementalAnalysis ?
+				AnalysisCache.load(project, module, AnalysisCache.createConfigurationKey(settings, findBugsProject, getOutputPaths(module), new HashMap<>())) : null;
+		final List<BugInstance> cachedBugs = analysisCache != null ? analysisCache.prepare(findBugsProject) : Collections.emptyList();
+
+		final SortedBugCollection bugCollection = new SortedBugCollection(findBugsProject);
 
-			for (final String category : DetectorFactoryCollection.instance().getBugCategories()) {
-				projectFilterSettings.removeCategory(category);
-				projectFilterSettings.addCategory(category);
+		final boolean canceled;
+		// shards are analyzed by their own engines, which are limited by the analysis parallelism
+		final int shardCount = ModuleShards.getShardCount(findBugsProject.getFileCount(), Math.min(workspaceSettings.moduleShards, _parallelism));
+		if (shardCount > 1) {
+			canceled = executeSharded(indicator, module, findBugsProject, bugCollection, userPrefs, cachedBugs, shardCount, analyzedClassCountOffset);
+		} else {
+			final Reporter reporter = new Reporter(
+					project,
+					module,
+					bugCollection,
+					projectFilterSettings,
+					indicator,
+					_cancellingByUser,
+					analyzedClassCountOffset
+			);
+
+			reporter.setPriorityThreshold(userPrefs.getUserDetectorThreshold());
+			reporter.setRankThreshold(projectFilterSettings.getMinRank());
+			for (final BugInstance bug : cachedBugs) {
+				reporter.reportBug(bug);
 			}
-			for (final String category : settings.hiddenBugCategory) {
-				projectFilterSettings.removeCategory(category);
+
+			if (analysisCache == null || findBugsProject.getFileCount() > 0) {
+				runEngine(reporter, findBugsProject, userPrefs);
+			} else {
+				// all classes unchanged, the cached bugs are already reported
+				reporter.finish();
 			}
+			analyzedClassCountOffset.addAndGet(reporter.getProjectStats().getNumClasses());
+			canceled = reporter.isCanceled();
+		}
+
+		bugCollection.setTimestamp(System.currentTimeMillis());
+		if (analysisCache != null && !canceled) {
+			analysisCache.save(bugCollection);
+		}
+
+		return Pair.create(bugCollection, canceled);
+	}
+
+	/**
+	 * Splits the module into {@code shardCount} shards which are analyzed concurrently, see {@link ModuleShards}.
+	 *
+	 * @return true if the analysis was canceled
+	 */
+	private boolean executeSharded(
+			@NotNull final ProgressIndicator indicator,
+			@NotNull final Module module,
+			@NotNull final FindBugsProject findBugsProject,
+			@NotNull final SortedBugCollection bugCollection,
+			@NotNull final UserPreferences userPrefs,
+			@NotNull final List<BugInstance> cachedBugs,
+			final int shardCount,
+			@NotNull final AtomicInteger analyzedClassCountOffset
+	) throws IOException, InterruptedException {
 
-			userPrefs.setIncludeFilterFiles(new HashMap<>(settings.includeFilterFiles));
-			userPrefs.setExcludeBugsFiles(new HashMap<>(settings.excludeBugsFiles));
-			userPrefs.setExcludeFilterFiles(new HashMap<>(settings.excludeFilterFiles));
+		final ProjectFilterSettings projectFilterSettings = userPrefs.getFilterSettings();
+		final ModuleShards shards = ModuleShards.split(project, module, findBugsProject, bugCollection, shardCount);
+		indicator.setText("Start SpotBugs analysis of " + findBugsProject.getProjectName() + " (" + shards.getShards().size() + " shards)");
 
-			configureDetectors(settings.detectors, detectorFactoryCollection, userPrefs);
-			for (final PluginSettings pluginSettings : settings.plugins) {
-				configureDetectors(pluginSettings.detectors, detectorFactoryCollection, userPrefs);
+		final ExecutorService executor = AppExecutorUtil.createBoundedApplicationPoolExecutor("SpotBugs Shard Analysis", shards.getShards().size());
+		final List<Future<Boolean>> futures = new ArrayList<>();
+		try {
+			for (final FindBugsProject shard : shards.getShards()) {
+				final SortedBugCollection shardBugCollection = new SortedBugCollection(shard);
+				final Reporter reporter = new Reporter(
+						project,
+						module,
+						bugCollection,
+						shards,
+						shardBugCollection,
+						projectFilterSettings,
+						indicator,
+						_cancellingByUser,
+						analyzedClassCountOffset
+				);
+				reporter.setPriorityThreshold(userPrefs.getUserDetectorThreshold());
+				reporter.setRankThreshold(projectFilterSettings.getMinRank());
+				if (futures.isEmpty()) {
+					for (final BugInstance bug : cachedBugs) {
+						reporter.reportBug(bug);
+					}
+				}
+				futures.add(executor.submit(() -> {
+					runEngine(reporter, shard, userPrefs);
+					shards.finish(shardBugCollection);
+					analyzedClassCountOffset.addAndGet(reporter.getProjectStats().getNumClasses());
+					return reporter.isCanceled();
+				}));
 			}
+			boolean canceled = false;
+			for (final Future<Boolean> future : futures) {
+				try {
+					if (future.get()) {
+						canceled = true;
+					}
+				} catch (final ExecutionException e) {
+					final Throwable cause = e.getCause();
+					if (cause instanceof IOException) {
+						throw (IOException) cause;
+					}
+					if (cause instanceof RuntimeException) {
+						throw (RuntimeException) cause;
+					}
+					if (cause instanceof Error) {
+						throw (Error) cause;
+					}
+					throw new IllegalStateException(cause);
+				}
+			}
+			return canceled;
+		} finally {
+			executor.shutdownNow();
 		}
+	}
 
-		final SortedBugCollection bugCollection = new SortedBugCollection(findBugsProject);
+	/**
+	 * Analyzes all modules with one engine, see {@link SharedAnalysisContext}.
+	 *
+	 * @return true if the analysis was canceled
+	 */
+	private boolean executeShared(
+			@NotNull final ProgressIndicator indicator,
+			@NotNull final SharedAnalysisContext sharedContext,
+			@NotNull final AtomicInteger analyzedClassCountOffset,
+			@NotNull final FindBugsResult result
+	) throws IOException, InterruptedException {
+
+		final Map<Module, FindBugsProject> projects = sharedContext.getProjects();
+		indicator.setText("Start SpotBugs analysis of " + projects.size() + " modules");
+		// All modules share the project settings, so any of them can be used to load them.
+		final AbstractSettings settings = loadSettings(projects.keySet().iterator().next());
+		final UserPreferences userPrefs = createUserPreferences(settings);
+		final ProjectFilterSettings projectFilterSettings = userPrefs.getFilterSettings();
+
+		final Map<Module, AnalysisCache> analysisCaches = new HashMap<>();
+		final List<BugInstance> cachedBugs = new ArrayList<>();
+		if (workspaceSettings.incrementalAnalysis) {
+			final Map<String, String> directoryFingerprints = new HashMap<>();
+			for (final Map.Entry<Module, FindBugsProject> entry : projects.entrySet()) {
+				final String configurationKey = AnalysisCache.createConfigurationKey(settings, entry.getValue(), getOutputPaths(entry.getKey()), directoryFingerprints);
+				final AnalysisCache analysisCache = AnalysisCache.load(project, entry.getKey(), configurationKey);
+				analysisCaches.put(entry.getKey(), analysisCache);
+				cachedBugs.addAll(analysisCache.prepare(entry.getValue()));
+			}
+		}
+		// merge after the cache removed the unchanged class files from the module projects
+		final FindBugsProject findBugsProject = sharedContext.mergeProjects();
 
 		final Reporter reporter = new Reporter(
 				project,
-				module,
-				bugCollection,
+				sharedContext,
 				projectFilterSettings,
 				indicator,
 				_cancellingByUser,
@@ -311,28 +721,127 @@ public abstract class FindBugsStarter implements AnalysisAbortingListener {
 
 		reporter.setPriorityThreshold(userPrefs.getUserDetectorThreshold());
 		reporter.setRankThreshold(projectFilterSettings.getMinRank());
+		for (final BugInstance bug : cachedBugs) {
+			reporter.reportBug(bug);
+		}
 
-		final FindBugs2 engine = new FindBugs2();
-		{
-			engine.setNoClassOk(true);
-			engine.setMergeSimilarWarnings(false);
-			engine.setBugReporter(reporter);
-			engine.setProject(findBugsProject);
-			engine.setProgressCallback(reporter);
-			configureFilter(engine, userPrefs);
-			engine.setDetectorFactoryCollection(detectorFactoryCollection);
-			engine.setUserPreferences(userPrefs);
+		if (analysisCaches.isEmpty() || findBugsProject.getFileCount() > 0) {
+			runEngine(reporter, findBugsProject, userPrefs);
+		} else {
+			// all classes unchanged, the cached bugs are already reported
+			reporter.finish();
 		}
 
+		sharedContext.finish();
+		for (final Map.Entry<Module, FindBugsProject> entry : projects.entrySet()) {
+			final SortedBugCollection bugCollection = sharedContext.getBugCollection(entry.getKey());
+			final AnalysisCache analysisCache = analysisCaches.get(entry.getKey());
+			if (analysisCache != null && !reporter.isCanceled()) {
+				analysisCache.save(bugCollection);
+			}
+			result.put(entry.getValue(), bugCollection);
+		}
+		analyzedClassCountOffset.addAndGet(reporter.getProjectStats().getNumClasses());
+
+		return reporter.isCanceled();
+	}
+
+	/**
+	 * @return the output directories of the module itself (not of its dependencies), see {@link AnalysisCache}
+	 */
+	@NotNull
+	private static Set<String> getOutputPaths(@NotNull final Module module) {
+		return ReadAction.compute(() -> {
+			final Set<String> ret = new HashSet<>();
+			final CompilerModuleExtension extension = CompilerModuleExtension.getInstance(module);
+			if (extension != null) {
+				for (final VirtualFile path : new VirtualFile[]{extension.getCompilerOutputPath(), extension.getCompilerOutputPathForTests()}) {
+					if (path != null) {
+						ret.add(path.getCanonicalPath());
+					}
+				}
+			}
+			return ret;
+		});
+	}
+
+	@NotNull
+	private static UserPreferences createUserPreferences(@NotNull final AbstractSettings settings) {
+		final DetectorFactoryCollection detectorFactoryCollection = DetectorFactoryCollection.instance();
+		final UserPreferences userPrefs = UserPreferences.createDefaultUserPreferences();
+		userPrefs.setEffort(settings.analysisEffort);
+		final ProjectFilterSettings projectFilterSettings = userPrefs.getFilterSettings();
+		projectFilterSettings.setMinRank(settings.minRank);
+		projectFilterSettings.setMinPriority(settings.minPriority);
+
+		for (final String category : detectorFactoryCollection.getBugCategories()) {
+			projectFilterSettings.removeCategory(category);
+			projectFilterSettings.addCategory(category);
+		}
+		for (final String category : settings.hiddenBugCategory) {
+			projectFilterSettings.removeCategory(category);
+		}
+
+		userPrefs.setIncludeFilterFiles(new HashMap<>(settings.includeFilterFiles));
+		userPrefs.setExcludeBugsFiles(new HashMap<>(settings.excludeBugsFiles));
+		userPrefs.setExcludeFilterFiles(new HashMap<>(settings.excludeFilterFiles));
+
+		configureDetectors(settings.detectors, detectorFactoryCollection, userPrefs);
+		for (final PluginSettings pluginSettings : settings.plugins) {
+			configureDetectors(pluginSettings.detectors, detectorFactoryCollection, userPrefs);
+		}
+		return userPrefs;
+	}
+
+	/**
+	 * Runs the engine in the IDE or in a worker JVM, see {@link WorkspaceSettings#analyzeInWorkerProcess}.
+	 */
+	private void runEngine(
+			@NotNull final Reporter reporter,
+			@NotNull final FindBugsProject findBugsProject,
+			@NotNull final UserPreferences userPrefs
+	) throws IOException, InterruptedException {
+		while (!_engines.tryAcquire(ENGINE_POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+			if (_cancellingByUser.get()) {
+				throw new ProcessCanceledException();
+			}
+		}
 		try {
-			engine.execute();
+			if (workspaceSettings.analyzeInWorkerProcess) {
+				AnalysisWorkerService.getInstance(project).analyze(reporter, findBugsProject, userPrefs, workspaceSettings.workerMaxHeapMb);
+				return;
+			}
+			final FindBugs2 engine = createEngine(reporter, findBugsProject, userPrefs);
+			try {
+				engine.execute();
+			} finally {
+				engine.dispose();
+			}
 		} finally {
-			engine.dispose();
+			_engines.release();
 		}
+	}
 
-		bugCollection.setTimestamp(System.currentTimeMillis());
-
-		return Pair.create(bugCollection, reporter);
+	@NotNull
+	private static FindBugs2 createEngine(
+			@NotNull final Reporter reporter,
+			@NotNull final FindBugsProject findBugsProject,
+			@NotNull final UserPreferences userPrefs
+	) {
+		final FindBugs2 engine = new FindBugs2();
+		engine.setNoClassOk(true);
+		engine.setMergeSimilarWarnings(false);
+		// filter and baseline files are applied from the cache, the engine must not parse them again
+		engine.setBugReporter(FilterFileCache.configure(reporter, userPrefs));
+		engine.setProject(findBugsProject);
+		engine.setProgressCallback(reporter);
+		engine.setDetectorFactoryCollection(DetectorFactoryCollection.instance());
+		final UserPreferences enginePrefs = userPrefs.clone();
+		enginePrefs.setIncludeFilterFiles(new HashMap<>());
+		enginePrefs.setExcludeFilterFiles(new HashMap<>());
+		enginePrefs.setExcludeBugsFiles(new HashMap<>());
+		engine.setUserPreferences(enginePrefs);
+		return engine;
 	}
 
 	protected abstract void createCompileScope(@NotNull final CompilerManager compilerManager, @NotNull final Consumer<CompileScope> consumer);
@@ -395,12 +904,87 @@ public abstract class FindBugsStarter implements AnalysisAbortingListener {
 		return FacetManager.getInstance(module).getAllFacets().length > 0;
 	}
 
+	/**
+	 * Invoked on the analysis thread <b>without</b> read access, so that the configuration does not block write
+	 * actions (typing) for its whole duration. Use {@link #readAction(ProgressIndicator, Callable)} for short reads and
+	 * {@link #addFilesInChunks(ProgressIndicator, FindBugsProjects, Collection, boolean, boolean)} to add many files.
+	 *
+	 * @return false to abort the analysis
+	 */
 	protected abstract boolean configure(
 			@NotNull final ProgressIndicator indicator,
 			@NotNull final FindBugsProjects projects,
 			final boolean justCompiled
 	);
 
+	/**
+	 * Runs {@code callable} in a non blocking read action. A write action cancels the read action and
+	 * {@code callable} is restarted afterwards, so it must tolerate to be executed more than once.
+	 */
+	protected final <T> T readAction(@NotNull final ProgressIndicator indicator, @NotNull final Callable<T> callable) {
+		if (ApplicationManager.getApplication().isReadAccessAllowed()) {
+			// f. e. a task which runs synchronously on EDT (unit test mode)
+			try {
+				return callable.call();
+			} catch (final RuntimeException e) {
+				throw e;
+			} catch (final Exception e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		return ReadAction.nonBlocking(callable)
+				.wrapProgress(indicator)
+				.expireWith(project)
+				.executeSynchronously();
+	}
+
+	/**
+	 * Adds {@code files} in chunks, each chunk in its own {@link #readAction(ProgressIndicator, Callable) non blocking
+	 * read action}. The files already added are kept in {@code projects}, so a write action only restarts the current
+	 * chunk (adding a file again is harmless).
+	 *
+	 * @return false if a file is not compiled (only if {@code checkCompiled} is set)
+	 */
+	protected final boolean addFilesInChunks(
+			@NotNull final ProgressIndicator indicator,
+			@NotNull final FindBugsProjects projects,
+			@NotNull final Collection<VirtualFile> files,
+			final boolean checkCompiled,
+			final boolean includeTests
+	) {
+		final List<VirtualFile> list = new ArrayList<>(files);
+		final PsiManager psiManager = PsiManager.getInstance(project);
+		for (int from = 0; from < list.size(); from += CONFIGURE_CHUNK_SIZE) {
+			if (_cancellingByUser.get()) {
+				throw new ProcessCanceledException();
+			}
+			final List<VirtualFile> chunk = list.subList(from, Math.min(list.size(), from + CONFIGURE_CHUNK_SIZE));
+			// the PSI files created to find the classes of the sources must not stay in the PSI cache
+			final boolean added = readAction(indicator, () -> psiManager.runInBatchFilesMode(() -> projects.addFiles(chunk, checkCompiled, includeTests)));
+			if (!added) {
+				return false;
+			}
+			indicator.setText2("Files collected: " + (from + chunk.size()));
+		}
+		return true;
+	}
+
+	protected final boolean addFilesInChunks(
+			@NotNull final ProgressIndicator indicator,
+			@NotNull final FindBugsProjects projects,
+			@NotNull final VirtualFile[] files,
+			final boolean checkCompiled,
+			final boolean includeTests
+	) {
+		return addFilesInChunks(indicator, projects, Arrays.asList(files), checkCompiled, includeTests);
+	}
+
+	/**
+	 * Invoked on the analysis thread when the analysis task finished, was canceled or failed.
+	 */
+	protected void analysisDone(final boolean canceled) {
+	}
+
 	@Override
 	public final void analysisAborting() {
 		_cancellingByUser.set(true);
@@ -419,68 +1003,112 @@ public abstract class FindBugsStarter implements AnalysisAbortingListener {
 		}
 	}
 
-	private static void configureFilter(
-			@NotNull final FindBugs2 engine,
-			@NotNull final UserPreferences userPrefs
-	) {
-
-		final Map<String, Boolean> excludeFilterFiles = userPrefs.getExcludeFilterFiles();
-		for (final Map.Entry<String, Boolean> excludeFileName : excludeFilterFiles.entrySet()) {
-			if (excludeFileName.getValue()) {
-				final String filePath = excludeFileName.getKey();
-				try {
-					engine.addFilter(filePath, false);
-				} catch (final IOException e) {
-					LOGGER.error("ExcludeFilter configuration failed.", e);
-				}
-			}
-		}
-		final Map<String, Boolean> includeFilterFiles = userPrefs.getIncludeFilterFiles();
-		for (final Map.Entry<String, Boolean> includeFileName : includeFilterFiles.entrySet()) {
-			if (includeFileName.getValue()) {
-				final String filePath = includeFileName.getKey();
-				try {
-					engine.addFilter(filePath, true);
-				} catch (final IOException e) {
-					LOGGER.error("IncludeFilter configuration failed.", e);
-				}
-			}
-		}
-		final Map<String, Boolean> excludeBugFiles = userPrefs.getExcludeBugsFiles();
-		for (final Map.Entry<String, Boolean> excludeBugFile : excludeBugFiles.entrySet()) {
-			if (excludeBugFile.getValue()) {
-				final String filePath = excludeBugFile.getKey();
-				try {
-					engine.excludeBaselineBugs(filePath);
-				} catch (final IOException | DocumentException e) {
-					LOGGER.error("ExcludeBaseLineBug files configuration failed.", e);
-				}
-			}
-		}
-	}
-
 	protected final void showWarning(@NotNull final String message) {
 		EventDispatchThreadHelper.invokeLater(() -> BalloonTipFactory.showToolWindowWarnNotifier(
 				project, message + " " + ResourcesLoader.getString("analysis.aborted")));
 	}
 
 	protected final boolean hasTests(@NotNull final Iterable<VirtualFile> virtualFiles) {
-		final ProjectFileIndex fileIndex = ProjectRootManager.getInstance(project).getFileIndex();
-		for (final VirtualFile file : virtualFiles) {
-			if (fileIndex.isInTestSourceContent(file)) {
-				return true;
+		return ReadAction.compute(() -> {
+			final ProjectFileIndex fileIndex = ProjectRootManager.getInstance(project).getFileIndex();
+			for (final VirtualFile file : virtualFiles) {
+				if (fileIndex.isInTestSourceContent(file)) {
+					return true;
+				}
 			}
-		}
-		return false;
+			return false;
+		});
 	}
 
 	protected final boolean hasTests(@NotNull final VirtualFile[] virtualFiles) {
-		final ProjectFileIndex fileIndex = ProjectRootManager.getInstance(project).getFileIndex();
-		for (final VirtualFile file : virtualFiles) {
-			if (fileIndex.isInTestSourceContent(file)) {
-				return true;
+		return hasTests(Arrays.asList(virtualFiles));
+	}
+
+	/**
+	 * The modules of an analysis which supports the pipeline and how to configure them, see {@link #createPipeline()}.
+	 */
+	protected interface ModulePipeline {
+
+		/**
+		 * @return the modules to compile and analyze, dependencies first (they are compiled in batches in this order)
+		 */
+		@NotNull
+		Module[] getModules();
+
+		/**
+		 * Invoked on the analysis thread <b>without</b> read access for each batch of modules after it was compiled.
+		 * See {@link #configure(ProgressIndicator, FindBugsProjects, boolean)}.
+		 */
+		void configure(@NotNull ProgressIndicator indicator, @NotNull FindBugsProjects projects, @NotNull Module[] modules);
+	}
+
+	/**
+	 * Hands the compiled batches of modules from the compile callbacks (EDT) over to the analysis task.
+	 */
+	private final class CompilePipeline {
+
+		private static final long POLL_TIMEOUT_MS = 100;
+
+		private final BlockingQueue<Module[]> _compiled = new LinkedBlockingQueue<>();
+		private volatile boolean _finished;
+		private volatile boolean _failed;
+		private volatile boolean _canceled;
+
+		void add(@NotNull final Module[] batch) {
+			_compiled.add(batch);
+		}
+
+		/**
+		 * All batches are compiled.
+		 */
+		void finish() {
+			_finished = true;
+		}
+
+		/**
+		 * Compilation failed or was aborted, the analysis is aborted too.
+		 */
+		void fail() {
+			_failed = true;
+		}
+
+		/**
+		 * The analysis task is done, the remaining modules are not compiled anymore.
+		 */
+		void cancel() {
+			_canceled = true;
+		}
+
+		boolean isCanceled() {
+			return _canceled || _cancellingByUser.get();
+		}
+
+		/**
+		 * Waits for the next compiled batch.
+		 *
+		 * @return the next compiled batch or null if all batches are compiled and taken
+		 * @throws ProcessCanceledException if the compilation failed or the analysis was canceled
+		 */
+		@Nullable
+		Module[] take(@NotNull final ProgressIndicator indicator) throws InterruptedException {
+			while (true) {
+				if (_cancellingByUser.get()) {
+					throw new ProcessCanceledException();
+				}
+				indicator.checkCanceled();
+				final Module[] batch = _compiled.poll(POLL_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+				if (batch != null) {
+					return batch;
+				}
+				if (_failed) {
+					throw new ProcessCanceledException();
+				}
+				if (_finished) {
+					// finish() is invoked after the last add()
+					return _compiled.poll();
+				}
+				indicator.setText("Waiting for compilation...");
 			}
 		}
-		return false;
 	}
 }
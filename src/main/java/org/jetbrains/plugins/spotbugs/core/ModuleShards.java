@@ -0,0 +1,190 @@
+/*
+ * Copyright 2020 SpotBugs plugin contributors
+ *
+ * This file is part of IntelliJ SpotBugs plugin.
+ *
+ * IntelliJ SpotBugs plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * IntelliJ SpotBugs plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with IntelliJ SpotBugs plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jetbrains.plugins.spotbugs.core;
+
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.project.Project;
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.PackageStats;
+import edu.umd.cs.findbugs.SortedBugCollection;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.plugins.spotbugs.common.util.WithPluginClassloader;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Splits the class files of one module into partitions (shards) which are analyzed concurrently, each by its own
+ * {@link edu.umd.cs.findbugs.FindBugs2} engine. Every shard has the whole module on its aux classpath, so the
+ * classes of the other shards are still resolved, but they are not <em>analyzed</em> by the engine of the shard.
+ * The bugs of all shards are collected in the bug collection of the module.
+ * <p>
+ * The files are sorted by path, so a shard contains whole packages where possible and a top level class is never
+ * separated from its nested classes.
+ * <p>
+ * Detectors which build a database over all analyzed classes in the first pass only see the classes of their own
+ * shard. Those detectors lose precision:
+ * <ul>
+ * <li>{@code UnreadFields}: a field which is only read or written in another shard is reported as unread or
+ * unwritten (URF_, UUF_, UWF_, NP_UNWRITTEN_FIELD)</li>
+ * <li>{@code FindInconsistentSync2}: accesses from other shards are not counted (IS2_INCONSISTENT_SYNC)</li>
+ * <li>{@code MutableStaticFields}: writes from other shards are not seen (MS_)</li>
+ * <li>{@code Naming}: confusing method names are only compared within one shard (NM_CONFUSING, NM_VERY_CONFUSING)</li>
+ * <li>{@code FindNullDeref}, {@code NoteUnconditionalParamDerefs}: the unconditional parameter dereferences and
+ * return value nullness of methods in other shards are unknown (NP_NULL_PARAM_DEREF, NP_NULL_ON_SOME_PATH_FROM_RETURN_VALUE)</li>
+ * <li>{@code FindUnsatisfiedObligation}, {@code FindRefComparison} and the type qualifier detectors: inferred
+ * annotations of methods in other shards are unknown</li>
+ * </ul>
+ * Detectors which only look at one class or method at a time are not affected.
+ */
+final class ModuleShards {
+
+	/**
+	 * A module is only split if every shard gets at least this number of class files,
+	 * smaller modules are faster analyzed by one engine.
+	 */
+	static final int MIN_CLASSES_PER_SHARD = 1000;
+
+	@NotNull
+	private final SortedBugCollection _bugCollection;
+
+	@NotNull
+	private final List<FindBugsProject> _shards;
+
+
+	private ModuleShards(@NotNull final SortedBugCollection bugCollection, @NotNull final List<FindBugsProject> shards) {
+		_bugCollection = bugCollection;
+		_shards = shards;
+	}
+
+
+	/**
+	 * @param fileCount the number of class files of the module
+	 * @param maxShards {@link WorkspaceSettings#moduleShards}, limited by {@link WorkspaceSettings#analysisParallelism}
+	 * @return the number of shards for the module, {@code 1} if it should not be split
+	 */
+	static int getShardCount(final int fileCount, final int maxShards) {
+		return Math.max(1, Math.min(maxShards, fileCount / MIN_CLASSES_PER_SHARD));
+	}
+
+
+	/**
+	 * Splits the class files of {@code findBugsProject} into {@code shardCount} projects.
+	 *
+	 * @param bugCollection receives the bugs of all shards
+	 */
+	@NotNull
+	static ModuleShards split(
+			@NotNull final Project project,
+			@NotNull final Module module,
+			@NotNull final FindBugsProject findBugsProject,
+			@NotNull final SortedBugCollection bugCollection,
+			final int shardCount
+	) {
+		final List<FindBugsProject> shards = new ArrayList<>(shardCount);
+		for (final List<String> files : partition(findBugsProject.getFileList(), shardCount)) {
+			final FindBugsProject shard = WithPluginClassloader.notNull(() -> FindBugsProject.create(
+					project,
+					module,
+					findBugsProject.getProjectName() + "[" + (shards.size() + 1) + "/" + shardCount + "]"
+			));
+			for (final String file : files) {
+				shard.addFile(file);
+			}
+			for (final String sourceDir : findBugsProject.getSourceDirList()) {
+				shard.addSourceDir(sourceDir);
+			}
+			// contains the output paths of the module, so the classes of the other shards are resolved
+			for (final String auxClasspathEntry : findBugsProject.getAuxClasspathEntryList()) {
+				shard.addAuxClasspathEntry(auxClasspathEntry);
+			}
+			shards.add(shard);
+		}
+		return new ModuleShards(bugCollection, shards);
+	}
+
+
+	/**
+	 * Splits the sorted {@code files} into at most {@code shardCount} non empty partitions of about the same size.
+	 */
+	@NotNull
+	static List<List<String>> partition(@NotNull final Collection<String> files, final int shardCount) {
+		final List<String> sorted = new ArrayList<>(files);
+		Collections.sort(sorted);
+		final List<List<String>> ret = new ArrayList<>(shardCount);
+		int from = 0;
+		for (int i = 0; i < shardCount && from < sorted.size(); i++) {
+			int to = i == shardCount - 1 ? sorted.size() : Math.max(from + 1, (int) ((long) sorted.size() * (i + 1) / shardCount));
+			// do not separate nested classes from their top level class
+			while (to < sorted.size() && getTopLevelPath(sorted.get(to)).equals(getTopLevelPath(sorted.get(to - 1)))) {
+				to++;
+			}
+			ret.add(sorted.subList(from, to));
+			from = to;
+		}
+		return ret;
+	}
+
+
+	@NotNull
+	List<FindBugsProject> getShards() {
+		return _shards;
+	}
+
+
+	/**
+	 * Invoked by the reporters of all shards concurrently.
+	 */
+	void add(@NotNull final BugInstance bug) {
+		synchronized (_bugCollection) {
+			_bugCollection.add(bug);
+		}
+	}
+
+
+	/**
+	 * Adds the class statistics of a finished shard to the collection of the module.
+	 */
+	void finish(@NotNull final SortedBugCollection shardBugCollection) {
+		synchronized (_bugCollection) {
+			for (final PackageStats packageStats : shardBugCollection.getProjectStats().getPackageStats()) {
+				for (final PackageStats.ClassStats classStats : packageStats.getClassStats()) {
+					_bugCollection.getProjectStats().addClass(classStats.getName(), classStats.getSourceFile(), classStats.isInterface(), classStats.size());
+				}
+			}
+		}
+	}
+
+
+	/**
+	 * {@code a/b/Outer$Inner.class} and {@code a/b/Outer.class} are both mapped to {@code a/b/Outer}.
+	 */
+	@NotNull
+	private static String getTopLevelPath(@NotNull final String path) {
+		final int nameStart = path.lastIndexOf('/') + 1;
+		final int nested = path.indexOf('$', nameStart);
+		if (nested != -1) {
+			return path.substring(0, nested);
+		}
+		return path.endsWith(".class") ? path.substring(0, path.length() - ".class".length()) : path;
+	}
+}
@@ -0,0 +1,169 @@
+/*
+ * Copyright 2020 SpotBugs plugin contributors
+ *
+ * This file is part of IntelliJ SpotBugs plugin.
+ *
+ * IntelliJ SpotBugs plugin is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ *
+ * IntelliJ SpotBugs plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with IntelliJ SpotBugs plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jetbrains.plugins.spotbugs.core;
+
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.project.Project;
+import com.intellij.util.TimeoutUtil;
+import com.intellij.util.containers.TransferToEDTQueue;
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.SortedBugCollection;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.plugins.spotbugs.messages.MessageBusManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Collects reported {@link BugInstance}s and hands them over to the EDT in chunks, so that one
+ * {@link org.jetbrains.plugins.spotbugs.messages.NewBugListener#newBugs(List, int)} event is published per chunk
+ * instead of one event (and one EDT runnable) per bug. A chunk is flushed as soon as it reaches the size budget
+ * or when it was pending longer than the time budget. Not thread safe, intended to be fed by one producer thread.
+ */
+public final class NewBugBatcher {
+
+	private static final int MAX_BATCH_SIZE = 500;
+	private static final long MAX_BATCH_DELAY_MS = 200;
+
+	@NotNull
+	private final Project _project;
+
+	@Nullable
+	private final Module _module;
+
+	@NotNull
+	private final SortedBugCollection _bugCollection;
+
+	@Nullable
+	private final SharedAnalysisContext _sharedContext;
+
+	@NotNull
+	private final TransferToEDTQueue<Runnable> _transferToEDTQueue;
+
+	private final AtomicInteger _pendingChunks;
+
+	@NotNull
+	private List<BugInstance> _pending;
+	private long _pendingSince;
+	private int _analyzedClassCount;
+
+
+	public NewBugBatcher(
+			@NotNull final Project project,
+			@Nullable final Module module,
+			@NotNull final SortedBugCollection bugCollection,
+			@NotNull final TransferToEDTQueue<Runnable> transferToEDTQueue
+	) {
+		this(project, module, bugCollection, null, transferToEDTQueue);
+	}
+
+
+	/**
+	 * Creates a batcher which assigns every bug to the module (and its collection) which owns the primary class.
+	 */
+	NewBugBatcher(
+			@NotNull final Project project,
+			@NotNull final SharedAnalysisContext sharedContext,
+			@NotNull final TransferToEDTQueue<Runnable> transferToEDTQueue
+	) {
+		this(project, null, sharedContext.getBugCollection(), sharedContext, transferToEDTQueue);
+	}
+
+
+	private NewBugBatcher(
+			@NotNull final Project project,
+			@Nullable final Module module,
+			@NotNull final SortedBugCollection bugCollection,
+			@Nullable final SharedAnalysisContext sharedContext,
+			@NotNull final TransferToEDTQueue<Runnable> transferToEDTQueue
+	) {
+		_project = project;
+		_module = module;
+		_bugCollection = bugCollection;
+		_sharedContext = sharedContext;
+		_transferToEDTQueue = transferToEDTQueue;
+		_pending = new ArrayList<>();
+		_pendingChunks = new AtomicInteger();
+	}
+
+
+	public void add(@NotNull final BugInstance bug, final int analyzedClassCount) {
+		if (_pending.isEmpty()) {
+			_pendingSince = System.currentTimeMillis();
+		}
+		_pending.add(bug);
+		_analyzedClassCount = analyzedClassCount;
+		flushIfDue();
+	}
+
+
+	/**
+	 * Flushes the pending chunk if the size or time budget is exceeded.
+	 * Producers should call this from time to time so that sparse bugs are not held back until {@link #flush()}.
+	 */
+	public void flushIfDue() {
+		if (_pending.size() >= MAX_BATCH_SIZE || (!_pending.isEmpty() && System.currentTimeMillis() - _pendingSince >= MAX_BATCH_DELAY_MS)) {
+			flush();
+		}
+	}
+
+
+	public void flush() {
+		if (_pending.isEmpty()) {
+			return;
+		}
+		final List<BugInstance> chunk = _pending;
+		final int analyzedClassCount = _analyzedClassCount;
+		_pending = new ArrayList<>();
+		_pendingChunks.incrementAndGet();
+		// TransferToEDTQueue synchronizes the hand over, the chunk is never touched by this thread again.
+		_transferToEDTQueue.offer(() -> {
+			try {
+				final List<Bug> bugs = new ArrayList<>(chunk.size());
+				for (final BugInstance bugInstance : chunk) {
+					if (_sharedContext != null) {
+						bugs.add(new Bug(_sharedContext.getModule(bugInstance), _sharedContext.getBugCollection(bugInstance), bugInstance));
+					} else {
+						bugs.add(new Bug(_module, _bugCollection, bugInstance));
+					}
+				}
+				MessageBusManager.publishNewBugs(_project, bugs, analyzedClassCount);
+			} finally {
+				_pendingChunks.decrementAndGet();
+			}
+		});
+	}
+
+
+	/**
+	 * Blocks the producer while more than {@code maxPendingChunks} chunks wait for the EDT, so that a producer
+	 * which is faster than the tool window (f. e. the XML import) does not queue up an unbounded number of chunks.
+	 *
+	 * @param canceled checked while waiting; chunks of a canceled queue are never delivered
+	 */
+	public void awaitPendingChunks(final int maxPendingChunks, @NotNull final BooleanSupplier canceled) {
+		while (_pendingChunks.get() > maxPendingChunks && !canceled.getAsBoolean()) {
+			TimeoutUtil.sleep(10);
+		}
+	}
+}
@@ -19,24 +19,128 @@
  */
 package org.jetbrains.plugins.spotbugs.core;
 
+import com.intellij.lang.ASTNode;
+import com.intellij.psi.PsiElement;
 import com.intellij.psi.PsiFile;
+import com.intellij.psi.impl.source.tree.LeafElement;
+import com.intellij.psi.impl.source.tree.TreeUtil;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.plugins.spotbugs.common.ExtendedProblemDescriptor;
 
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 public class ProblemCacheService {
 
     private final ConcurrentMap<PsiFile, List<ExtendedProblemDescriptor>> problems;
 
+    /**
+     * Per file lookup index used by the annotator and line marker provider. An index is dropped when the problems
+     * of its file change and rebuilt when the file was modified after the index was built.
+     */
+    private final ConcurrentMap<PsiFile, ProblemIndex> indexes;
+
     public ProblemCacheService() {
       problems = new ConcurrentHashMap<>();
+      indexes = new ConcurrentHashMap<>();
     }
 
+    /**
+     * Use {@link #addProblem}, {@link #removeProblem} and {@link #clear} to modify the problems.
+     */
     @NotNull
     public Map<PsiFile, List<ExtendedProblemDescriptor>> getProblems() {
-        return problems;
+        return Collections.unmodifiableMap(problems);
+    }
+
+    public void addProblem(@NotNull final PsiFile psiFile, @NotNull final ExtendedProblemDescriptor problem) {
+        problems.computeIfAbsent(psiFile, k -> new CopyOnWriteArrayList<>()).add(problem);
+        indexes.remove(psiFile);
+    }
+
+    public void removeProblem(@NotNull final PsiFile psiFile, @NotNull final ExtendedProblemDescriptor problem) {
+        final List<ExtendedProblemDescriptor> fileProblems = problems.get(psiFile);
+        if (fileProblems != null) {
+            fileProblems.remove(problem);
+        }
+        indexes.remove(psiFile);
+    }
+
+    public void clear() {
+        problems.clear();
+        indexes.clear();
+    }
+
+    /**
+     * @return the problems whose {@link ExtendedProblemDescriptor#getPsiElement()} is {@code psiElement}
+     */
+    @NotNull
+    public List<ExtendedProblemDescriptor> getProblemsOfElement(@NotNull final PsiElement psiElement) {
+        final ProblemIndex index = getIndex(psiElement.getContainingFile());
+        return index != null ? index.getByElement(psiElement) : Collections.emptyList();
+    }
+
+    /**
+     * @return the problems whose {@link ExtendedProblemDescriptor#getPsiElement()} starts with the leaf {@code psiElement}
+     */
+    @NotNull
+    public List<ExtendedProblemDescriptor> getProblemsOfFirstLeaf(@NotNull final PsiElement psiElement) {
+        final ProblemIndex index = getIndex(psiElement.getContainingFile());
+        return index != null ? index.getByFirstLeaf(psiElement) : Collections.emptyList();
+    }
+
+    @Nullable
+    private ProblemIndex getIndex(@Nullable final PsiFile psiFile) {
+        if (psiFile == null) {
+            return null;
+        }
+        final List<ExtendedProblemDescriptor> fileProblems = problems.get(psiFile);
+        if (fileProblems == null || fileProblems.isEmpty()) {
+            return null;
+        }
+        final long modificationStamp = psiFile.getModificationStamp();
+        ProblemIndex index = indexes.get(psiFile);
+        if (index == null || index.modificationStamp != modificationStamp) {
+            index = new ProblemIndex(fileProblems, modificationStamp);
+            indexes.put(psiFile, index);
+        }
+        return index;
+    }
+
+    private static final class ProblemIndex {
+        private final long modificationStamp;
+        private final Map<PsiElement, List<ExtendedProblemDescriptor>> byElement;
+        private final Map<PsiElement, List<ExtendedProblemDescriptor>> byFirstLeaf;
+
+        private ProblemIndex(@NotNull final List<ExtendedProblemDescriptor> problems, final long modificationStamp) {
+            this.modificationStamp = modificationStamp;
+            byElement = new HashMap<>();
+            byFirstLeaf = new HashMap<>();
+            for (final ExtendedProblemDescriptor problem : problems) {
+                final PsiElement psiElement = problem.getPsiElement();
+                if (psiElement == null) {
+                    continue;
+                }
+                byElement.computeIfAbsent(psiElement, k -> new ArrayList<>()).add(problem);
+                final ASTNode node = psiElement.getNode();
+                final LeafElement firstLeaf = node != null ? TreeUtil.findFirstLeaf(node) : null;
+                if (firstLeaf != null) {
+                    byFirstLeaf.computeIfAbsent(firstLeaf.getPsi(), k -> new ArrayList<>()).add(problem);
+                }
+            }
+        }
+
+        @NotNull
+        private List<ExtendedProblemDescriptor> getByElement(@NotNull final PsiElement psiElement) {
+            return byElement.getOrDefault(psiElement, Collections.emptyList());
+        }
+
+        @NotNull
+        private List<ExtendedProblemDescriptor> getByFirstLeaf(@NotNull final PsiElement psiElement) {
+            return byFirstLeaf.getOrDefault(psiElement, Collections.emptyList());
+        }
     }
 }
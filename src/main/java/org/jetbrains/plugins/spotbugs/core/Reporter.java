@@ -36,8 +36,8 @@ import edu.umd.cs.findbugs.classfile.ClassDescriptor;
 import edu.umd.cs.findbugs.config.ProjectFilterSettings;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.jetbrains.plugins.spotbugs.common.EventDispatchThreadHelper;
-import org.jetbrains.plugins.spotbugs.messages.MessageBusManager;
 
 import java.util.ArrayList;
 import java.util.Collections;
@@ -47,7 +47,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicInteger;
 
 final class Reporter extends AbstractBugReporter implements FindBugsProgress {
 
@@ -57,18 +57,22 @@ final class Reporter extends AbstractBugReporter implements FindBugsProgress {
 	@NotNull
 	private final Project _project;
 
-	@NotNull
-	private final Module module;
-
 	@NotNull
 	private final SortedBugCollection _bugCollection;
 
+	@Nullable
+	private final SharedAnalysisContext _sharedContext;
+
+	@Nullable
+	private final ModuleShards _shards;
+
 	@NotNull
 	private final ProjectFilterSettings projectFilterSettings;
 
 	private final ProgressIndicator _indicator;
 	private final AtomicBoolean _cancellingByUser;
 	private final TransferToEDTQueue<Runnable> _transferToEDTQueue;
+	private final NewBugBatcher _newBugBatcher;
 
 	private int pass = -1;
 	private int bugCount;
@@ -77,21 +81,77 @@ final class Reporter extends AbstractBugReporter implements FindBugsProgress {
 	@NonNls
 	private String _currentStageName;
 	private boolean _canceled;
-	private int analyzedClassCountOffset;
+
+	/**
+	 * Number of classes analyzed by already finished modules; shared by all modules of one analysis run.
+	 */
+	@NotNull
+	private final AtomicInteger analyzedClassCountOffset;
+
+
+	Reporter(
+			@NotNull final Project project,
+			@NotNull final Module module,
+			@NotNull final SortedBugCollection bugCollection,
+			@NotNull final ProjectFilterSettings projectFilterSettings,
+			@NotNull final ProgressIndicator indicator,
+			@NotNull final AtomicBoolean cancellingByUser,
+			@NotNull final AtomicInteger analyzedClassCountOffset
+	) {
+		this(project, module, bugCollection, bugCollection, null, null, projectFilterSettings, indicator, cancellingByUser, analyzedClassCountOffset);
+	}
 
 
+	/**
+	 * Creates a reporter for the engine of one shard of {@code shards}. The class statistics are collected in
+	 * {@code shardBugCollection}, the bugs in {@code bugCollection} of the module.
+	 */
 	Reporter(
 			@NotNull final Project project,
 			@NotNull final Module module,
 			@NotNull final SortedBugCollection bugCollection,
+			@NotNull final ModuleShards shards,
+			@NotNull final SortedBugCollection shardBugCollection,
 			@NotNull final ProjectFilterSettings projectFilterSettings,
 			@NotNull final ProgressIndicator indicator,
 			@NotNull final AtomicBoolean cancellingByUser,
-			final int analyzedClassCountOffset
+			@NotNull final AtomicInteger analyzedClassCountOffset
+	) {
+		this(project, module, shardBugCollection, bugCollection, null, shards, projectFilterSettings, indicator, cancellingByUser, analyzedClassCountOffset);
+	}
+
+
+	/**
+	 * Creates a reporter for the shared engine of {@code sharedContext}, the bugs are collected per module.
+	 */
+	Reporter(
+			@NotNull final Project project,
+			@NotNull final SharedAnalysisContext sharedContext,
+			@NotNull final ProjectFilterSettings projectFilterSettings,
+			@NotNull final ProgressIndicator indicator,
+			@NotNull final AtomicBoolean cancellingByUser,
+			@NotNull final AtomicInteger analyzedClassCountOffset
+	) {
+		this(project, null, sharedContext.getBugCollection(), sharedContext.getBugCollection(), sharedContext, null, projectFilterSettings, indicator, cancellingByUser, analyzedClassCountOffset);
+	}
+
+
+	private Reporter(
+			@NotNull final Project project,
+			@Nullable final Module module,
+			@NotNull final SortedBugCollection bugCollection,
+			@NotNull final SortedBugCollection moduleBugCollection,
+			@Nullable final SharedAnalysisContext sharedContext,
+			@Nullable final ModuleShards shards,
+			@NotNull final ProjectFilterSettings projectFilterSettings,
+			@NotNull final ProgressIndicator indicator,
+			@NotNull final AtomicBoolean cancellingByUser,
+			@NotNull final AtomicInteger analyzedClassCountOffset
 	) {
 		_project = project;
-		this.module = module;
 		_bugCollection = bugCollection;
+		_sharedContext = sharedContext;
+		_shards = shards;
 		this.projectFilterSettings = projectFilterSettings;
 		_indicator = indicator;
 		_cancellingByUser = cancellingByUser;
@@ -102,10 +162,18 @@ final class Reporter extends AbstractBugReporter implements FindBugsProgress {
 				return project.isDisposed() || _cancellingByUser.get() || _indicator.isCanceled();
 			}
 		}, 500);
+		if (sharedContext != null) {
+			_newBugBatcher = new NewBugBatcher(project, sharedContext, _transferToEDTQueue);
+		} else {
+			_newBugBatcher = new NewBugBatcher(project, module, moduleBugCollection, _transferToEDTQueue);
+		}
 	}
 
 
-	private boolean checkCancel() {
+	/**
+	 * @return true if the analysis is canceled, the engine thread is interrupted then
+	 */
+	boolean checkCancel() {
 		if (_canceled) {
 			return true;
 		}
@@ -127,24 +195,17 @@ final class Reporter extends AbstractBugReporter implements FindBugsProgress {
 		if (!projectFilterSettings.displayWarning(bug)) {
 			return;
 		}
-		_bugCollection.add(bug);
+		if (_sharedContext != null) {
+			_sharedContext.getBugCollection(bug).add(bug);
+		} else if (_shards != null) {
+			_shards.add(bug);
+		} else {
+			_bugCollection.add(bug);
+		}
 		bugCount++;
 		observeClass(bug.getPrimaryClass().getClassDescriptor());
 
-		// Guarantee thread visibility *one* time.
-    final AtomicReference<SortedBugCollection> bugCollectionRef = new AtomicReference<>(_bugCollection);
-    final AtomicReference<BugInstance> bugRef = new AtomicReference<>(bug);
-		final int analyzedClassCount = analyzedClassCountOffset + getProjectStats().getNumClasses();
-		_transferToEDTQueue.offer(new Runnable() {
-			/**
-			 * Invoked by EDT.
-			 */
-			@Override
-			public void run() {
-				final Bug bug = new Bug(module, bugCollectionRef.get(), bugRef.get());
-				MessageBusManager.publishNewBug(_project, bug, analyzedClassCount);
-			}
-		});
+		_newBugBatcher.add(bug, analyzedClassCountOffset.get() + getProjectStats().getNumClasses());
 	}
 
 
@@ -197,6 +258,7 @@ final class Reporter extends AbstractBugReporter implements FindBugsProgress {
 
 	@Override
 	public void finish() {
+		_newBugBatcher.flush();
 		EventDispatchThreadHelper.invokeAndWait(new EventDispatchThreadHelper.OperationAdapter() {
 			@Override
 			public void run() {
@@ -260,6 +322,7 @@ final class Reporter extends AbstractBugReporter implements FindBugsProgress {
 	@Override
 	public void finishClass() {
 		step();
+		_newBugBatcher.flushIfDue();
 	}
 
 
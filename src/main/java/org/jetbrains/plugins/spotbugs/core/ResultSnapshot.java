@@ -0,0 +1,375 @@
+/*
+ * Copyright 2020 SpotBugs plugin contributors
+ *
+ * This file is part of IntelliJ SpotBugs plugin.
+ *
+ * IntelliJ SpotBugs plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * IntelliJ SpotBugs plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with IntelliJ SpotBugs plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jetbrains.plugins.spotbugs.core;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.application.ReadAction;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.module.ModuleManager;
+import com.intellij.openapi.progress.ProgressIndicator;
+import com.intellij.openapi.progress.Task;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ModuleRootManager;
+import com.intellij.openapi.roots.ProjectRootManager;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.wm.ToolWindowManager;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import com.intellij.util.containers.TransferToEDTQueue;
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.SortedBugCollection;
+import edu.umd.cs.findbugs.SourceLineAnnotation;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.plugins.spotbugs.common.EventDispatchThreadHelper;
+import org.jetbrains.plugins.spotbugs.common.util.FindBugsUtil;
+import org.jetbrains.plugins.spotbugs.common.util.WithPluginClassloader;
+import org.jetbrains.plugins.spotbugs.gui.toolwindow.view.ToolWindowPanel;
+import org.jetbrains.plugins.spotbugs.messages.MessageBusManager;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Snapshot of the last analysis result of a project, located in the IDE system directory, so that the bugs (and the
+ * gutter icons) are back after an IDE restart without another analysis (see {@link WorkspaceSettings#persistResult}).
+ * <p>
+ * Every bug collection of the result is stored with the name of its module. The snapshot is written in the background
+ * (from copies of the bug collections, the result is modified by the next merged analysis) when an analysis finished
+ * and restored in the background when the project is opened. A new snapshot is written to a temporary directory and
+ * replaces the previous one when complete. A restored bug whose source
+ * file was modified after its analysis (the analysis timestamp of its collection) is dropped, because its line
+ * numbers and maybe the bug itself are outdated. The whole snapshot is dropped if the SpotBugs version changed.
+ */
+public final class ResultSnapshot {
+
+	private static final Logger LOGGER = Logger.getInstance(ResultSnapshot.class);
+
+	private static final int FORMAT_VERSION = 1;
+	private static final String INDEX_FILE_NAME = "index.properties";
+	private static final String KEY_FORMAT_VERSION = "formatVersion";
+	private static final String KEY_SPOTBUGS_VERSION = "spotbugsVersion";
+	private static final String KEY_COUNT = "count";
+	private static final String KEY_MODULE = ".module";
+	private static final String KEY_FILE = ".file";
+
+	/**
+	 * Snapshots are written one after another, a newer result is always written after an older one.
+	 */
+	private static final ExecutorService WRITER = AppExecutorUtil.createBoundedApplicationPoolExecutor("SpotBugs Result Snapshot", 1);
+
+	/**
+	 * The latest snapshot of each directory which is not written yet. A snapshot which is replaced by a newer one
+	 * before the writer got to it is never written.
+	 */
+	private static final Map<File, Map<SortedBugCollection, String>> PENDING = new ConcurrentHashMap<>();
+
+	private ResultSnapshot() {
+	}
+
+
+	/**
+	 * Writes the snapshot of {@code result} in the background.
+	 */
+	public static void saveLater(@NotNull final Project project, @NotNull final FindBugsResult result) {
+		EventDispatchThreadHelper.checkEDT();
+		if (!WorkspaceSettings.getInstance(project).persistResult || result.isRestored()) {
+			return;
+		}
+		final File directory = getDirectory(project);
+		final Map<SortedBugCollection, String> collections = new HashMap<>();
+		for (final Map.Entry<edu.umd.cs.findbugs.Project, SortedBugCollection> entry : result.getResults().entrySet()) {
+			if (entry.getValue() != null) {
+				final Module module = entry.getKey() instanceof FindBugsProject ? ((FindBugsProject) entry.getKey()).getModule() : null;
+				// the collections of the result are modified on EDT by the next merged analysis
+				collections.put(entry.getValue().duplicate(), module != null ? module.getName() : "");
+			}
+		}
+		if (PENDING.put(directory, collections) != null) {
+			return; // the queued write takes this newer snapshot
+		}
+		WRITER.execute(() -> {
+			final Map<SortedBugCollection, String> latest = PENDING.remove(directory);
+			if (latest == null) {
+				return; // deleted meanwhile
+			}
+			try {
+				save(directory, latest);
+			} catch (final IOException | RuntimeException e) {
+				LOGGER.warn("Can not write analysis result snapshot " + directory, e);
+			}
+		});
+	}
+
+
+	public static void delete(@NotNull final Project project) {
+		final File directory = getDirectory(project);
+		PENDING.remove(directory);
+		WRITER.execute(() -> {
+			FileUtil.delete(getTempDirectory(directory));
+			FileUtil.delete(directory);
+		});
+	}
+
+
+	/**
+	 * Writes the snapshot to a temporary directory which replaces the previous snapshot when complete, so a failed
+	 * write does not destroy the previous snapshot.
+	 */
+	private static void save(@NotNull final File directory, @NotNull final Map<SortedBugCollection, String> collections) throws IOException {
+		final File temp = getTempDirectory(directory);
+		FileUtil.delete(temp);
+		FileUtil.createDirectory(temp);
+		writeSnapshot(temp, collections);
+		final File old = new File(directory.getPath() + ".old");
+		FileUtil.delete(old);
+		if (directory.exists() && !directory.renameTo(old)) {
+			FileUtil.delete(temp);
+			throw new IOException("Can not replace " + directory);
+		}
+		if (!temp.renameTo(directory)) {
+			throw new IOException("Can not rename " + temp + " to " + directory);
+		}
+		FileUtil.delete(old);
+	}
+
+
+	private static void writeSnapshot(@NotNull final File directory, @NotNull final Map<SortedBugCollection, String> collections) throws IOException {
+		final Properties index = new Properties();
+		index.setProperty(KEY_FORMAT_VERSION, String.valueOf(FORMAT_VERSION));
+		index.setProperty(KEY_SPOTBUGS_VERSION, FindBugsUtil.getFindBugsFullVersion());
+		int i = 0;
+		for (final Map.Entry<SortedBugCollection, String> entry : collections.entrySet()) {
+			final String fileName = i + ".xml.gz";
+			try (OutputStream out = new GZIPOutputStream(new BufferedOutputStream(new FileOutputStream(new File(directory, fileName))))) {
+				final SortedBugCollection bugCollection = entry.getKey();
+				WithPluginClassloader.compute(() -> {
+					bugCollection.writeXML(out);
+					return null;
+				});
+			}
+			index.setProperty(i + KEY_MODULE, entry.getValue());
+			index.setProperty(i + KEY_FILE, fileName);
+			i++;
+		}
+		index.setProperty(KEY_COUNT, String.valueOf(i));
+		// the index is written last, a snapshot without index is ignored
+		try (OutputStream out = new FileOutputStream(new File(directory, INDEX_FILE_NAME))) {
+			index.store(out, null);
+		}
+	}
+
+
+	/**
+	 * Restores the snapshot in the background as soon as the tool window is available, unless an analysis was
+	 * already started.
+	 */
+	static void restoreLater(@NotNull final Project project) {
+		if (!WorkspaceSettings.getInstance(project).persistResult || !new File(getDirectory(project), INDEX_FILE_NAME).isFile()) {
+			return;
+		}
+		ToolWindowManager.getInstance(project).invokeLater(() -> {
+			if (project.isDisposed() || !FindBugsState.get(project).isIdle()) {
+				return;
+			}
+			final ToolWindowPanel toolWindowPanel = ToolWindowPanel.getInstance(project);
+			if (toolWindowPanel == null || toolWindowPanel.getResult() != null) {
+				return;
+			}
+			new Task.Backgroundable(project, "Restoring SpotBugs result", true) {
+				@Override
+				public void run(@NotNull final ProgressIndicator indicator) {
+					restore(project, indicator);
+				}
+			}.queue();
+		});
+	}
+
+
+	private static void restore(@NotNull final Project project, @NotNull final ProgressIndicator indicator) {
+		final File directory = getDirectory(project);
+		final Properties index = new Properties();
+		try (InputStream in = new FileInputStream(new File(directory, INDEX_FILE_NAME))) {
+			index.load(in);
+		} catch (final IOException e) {
+			LOGGER.warn("Can not read analysis result snapshot " + directory, e);
+			return;
+		}
+		if (!String.valueOf(FORMAT_VERSION).equals(index.getProperty(KEY_FORMAT_VERSION)) ||
+				!FindBugsUtil.getFindBugsFullVersion().equals(index.getProperty(KEY_SPOTBUGS_VERSION))) {
+			FileUtil.delete(directory);
+			return;
+		}
+
+		final TransferToEDTQueue<Runnable> transferToEDTQueue = new TransferToEDTQueue<>("Add Restored Bug Instance", runnable -> {
+			runnable.run();
+			return true;
+		}, o -> project.isDisposed() || indicator.isCanceled(), 500);
+
+		MessageBusManager.publishAnalysisStartedToEDT(project, false);
+		final FindBugsResult result = new FindBugsResult();
+		result.setRestored();
+		int dropped = 0;
+		try {
+			final int count = Integer.parseInt(index.getProperty(KEY_COUNT, "0"));
+			for (int i = 0; i < count; i++) {
+				indicator.checkCanceled();
+				final String moduleName = index.getProperty(i + KEY_MODULE, "");
+				final Module module = moduleName.isEmpty() ? null : ModuleManager.getInstance(project).findModuleByName(moduleName);
+				if (!moduleName.isEmpty() && module == null) {
+					continue; // module was removed
+				}
+				final edu.umd.cs.findbugs.Project findBugsProject = module != null ?
+						WithPluginClassloader.notNull(() -> FindBugsProject.create(project, module, project.getName() + "[" + module.getName() + "]")) :
+						new edu.umd.cs.findbugs.Project();
+				final SortedBugCollection bugCollection = read(new File(directory, index.getProperty(i + KEY_FILE, "")), findBugsProject);
+
+				final SourceRoots sourceRoots = new SourceRoots(project, module, bugCollection.getAnalysisTimestamp());
+				final List<BugInstance> stale = new ArrayList<>();
+				for (final BugInstance bug : bugCollection.getCollection()) {
+					if (sourceRoots.isModified(bug)) {
+						stale.add(bug);
+					}
+				}
+				for (final BugInstance bug : stale) {
+					bugCollection.remove(bug);
+				}
+				dropped += stale.size();
+
+				final NewBugBatcher newBugBatcher = new NewBugBatcher(project, module, bugCollection, transferToEDTQueue);
+				for (final BugInstance bug : bugCollection.getCollection()) {
+					newBugBatcher.add(bug, -1);
+				}
+				newBugBatcher.flush();
+				result.put(findBugsProject, bugCollection);
+			}
+		} catch (final IOException | RuntimeException e) {
+			if (!indicator.isCanceled()) {
+				LOGGER.warn("Can not restore analysis result snapshot " + directory, e);
+			}
+			MessageBusManager.publishAnalysisAbortedToEDT(project);
+			return;
+		}
+		if (dropped > 0) {
+			LOGGER.info("Dropped " + dropped + " restored bugs of modified source files");
+		}
+		EventDispatchThreadHelper.invokeLater(transferToEDTQueue::drain);
+		MessageBusManager.publishAnalysisFinishedToEDT(project, result, null);
+	}
+
+
+	@NotNull
+	private static SortedBugCollection read(@NotNull final File file, @NotNull final edu.umd.cs.findbugs.Project findBugsProject) throws IOException {
+		final SortedBugCollection ret = new SortedBugCollection(findBugsProject);
+		try (InputStream in = new GZIPInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+			WithPluginClassloader.compute(() -> {
+				ret.readXML(in);
+				return null;
+			});
+		} catch (final IOException e) {
+			throw e;
+		} catch (final Exception e) {
+			throw new IOException("Can not read " + file, e);
+		}
+		return ret;
+	}
+
+
+	@NotNull
+	private static File getDirectory(@NotNull final Project project) {
+		return new File(PathManager.getSystemPath(), "spotbugs" + File.separator + "results" + File.separator + project.getLocationHash());
+	}
+
+
+	@NotNull
+	private static File getTempDirectory(@NotNull final File directory) {
+		return new File(directory.getPath() + ".tmp");
+	}
+
+
+	/**
+	 * Finds the source file of a bug by its source path relative to the source roots of the module (or the project),
+	 * without the index which is not ready while the project is opened.
+	 */
+	private static final class SourceRoots {
+
+		@NotNull
+		private final List<File> _roots;
+
+		private final long _analysisTimestamp;
+
+		/**
+		 * Key = source path.
+		 */
+		@NotNull
+		private final Map<String, Boolean> _modified;
+
+
+		SourceRoots(@NotNull final Project project, @Nullable final Module module, final long analysisTimestamp) {
+			_roots = new ArrayList<>();
+			final VirtualFile[] roots = ReadAction.compute(() -> module != null ?
+					ModuleRootManager.getInstance(module).getSourceRoots(true) :
+					ProjectRootManager.getInstance(project).getContentSourceRoots());
+			for (final VirtualFile root : roots) {
+				_roots.add(new File(root.getPath()));
+			}
+			_analysisTimestamp = analysisTimestamp;
+			_modified = new HashMap<>();
+		}
+
+
+		/**
+		 * @return true if the source file of {@code bug} was modified after the analysis; unknown source files are
+		 * never considered modified
+		 */
+		boolean isModified(@NotNull final BugInstance bug) {
+			final SourceLineAnnotation sourceLine = bug.getPrimarySourceLineAnnotation();
+			final String sourcePath = sourceLine.getSourcePath();
+			return _modified.computeIfAbsent(sourcePath, this::isModified);
+		}
+
+
+		private boolean isModified(@NotNull final String sourcePath) {
+			for (final File root : _roots) {
+				final File file = new File(root, sourcePath);
+				if (file.isFile()) {
+					return file.lastModified() > _analysisTimestamp;
+				}
+			}
+			return false;
+		}
+	}
+}
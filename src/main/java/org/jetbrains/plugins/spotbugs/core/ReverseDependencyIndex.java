@@ -0,0 +1,301 @@
+/*
+ * Copyright 2020 SpotBugs plugin contributors
+ *
+ * This file is part of IntelliJ SpotBugs plugin.
+ *
+ * IntelliJ SpotBugs plugin is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ *
+ * IntelliJ SpotBugs plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with IntelliJ SpotBugs plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jetbrains.plugins.spotbugs.core;
+
+import com.intellij.openapi.application.ApplicationManager;
+import com.intellij.openapi.components.Service;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.module.ModuleManager;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.CompilerModuleExtension;
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.vfs.VirtualFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.plugins.spotbugs.common.util.ClassFileUtil;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Bytecode level reverse reference index over the compiler output of all modules (see {@link ClassFileUtil}).
+ * The index is updated incrementally after each build: only class files with changed size or modification time are
+ * read again. Class files whose content changed since the previous update, together with all class files which
+ * reference them, are the affected classes of the build. The affected classes of a build whose analysis did not
+ * complete are added to the affected classes of the next build (see {@link #restore(AffectedClasses)}).
+ */
+@Service(Service.Level.PROJECT)
+final class ReverseDependencyIndex {
+
+	private static final Logger LOGGER = Logger.getInstance(ReverseDependencyIndex.class);
+	private static final String CLASS_FILE_SUFFIX = ".class";
+
+	@NotNull
+	private final Project project;
+
+	/**
+	 * Class file path (system independent) to entry.
+	 */
+	@NotNull
+	private final Map<String, ClassEntry> entries; // @GuardedBy this
+
+	/**
+	 * Class name to the paths of the class files which reference it.
+	 */
+	@NotNull
+	private final Map<String, Set<String>> dependents; // @GuardedBy this
+
+	/**
+	 * Paths of the class files which are affected by previous updates but were not analyzed.
+	 */
+	@NotNull
+	private final Set<String> pending; // @GuardedBy this
+
+	private boolean initialized; // @GuardedBy this
+
+	ReverseDependencyIndex(@NotNull final Project project) {
+		this.project = project;
+		entries = new HashMap<>();
+		dependents = new HashMap<>();
+		pending = new HashSet<>();
+	}
+
+	@NotNull
+	static ReverseDependencyIndex getInstance(@NotNull final Project project) {
+		return project.getService(ReverseDependencyIndex.class);
+	}
+
+	/**
+	 * Updates the index with the current compiler output. Must not be called inside a read action because
+	 * all output directories are listed.
+	 *
+	 * @return the affected class files by module, including the restored ones; empty on the first update because
+	 * there is no previous state
+	 */
+	@NotNull
+	synchronized AffectedClasses update() {
+		final List<OutputRoot> roots = ApplicationManager.getApplication().runReadAction(
+				(Computable<List<OutputRoot>>) this::getOutputRoots);
+
+		final Set<String> seen = new HashSet<>();
+		final Set<String> changedClassNames = new HashSet<>();
+		final Set<String> changedPaths = new HashSet<>();
+		for (final OutputRoot root : roots) {
+			try (final Stream<Path> files = Files.walk(Paths.get(root.path))) {
+				files.filter(file -> file.getFileName().toString().endsWith(CLASS_FILE_SUFFIX)).forEach(file -> {
+					final String path = root.path + '/' + Paths.get(root.path).relativize(file).toString().replace('\\', '/');
+					if (seen.add(path) && updateEntry(root, path, file)) {
+						changedPaths.add(path);
+						changedClassNames.add(entries.get(path).className);
+					}
+				});
+			} catch (final IOException | RuntimeException e) {
+				LOGGER.debug("Can not list compiler output " + root.path, e);
+			}
+		}
+		for (final String path : new ArrayList<>(entries.keySet())) {
+			if (!seen.contains(path)) {
+				changedClassNames.add(entries.get(path).className);
+				removeEntry(path);
+			}
+		}
+
+		if (!initialized) {
+			initialized = true;
+			return new AffectedClasses(Collections.emptyMap(), false);
+		}
+
+		final Set<String> affectedPaths = new HashSet<>(changedPaths);
+		for (final String className : changedClassNames) {
+			final Set<String> paths = dependents.get(className);
+			if (paths != null) {
+				affectedPaths.addAll(paths);
+			}
+		}
+		affectedPaths.addAll(pending);
+		pending.clear();
+		final Map<Module, Set<String>> classFiles = new HashMap<>();
+		boolean tests = false;
+		for (final String path : affectedPaths) {
+			final ClassEntry entry = entries.get(path);
+			if (entry != null && !entry.root.module.isDisposed()) {
+				classFiles.computeIfAbsent(entry.root.module, m -> new HashSet<>()).add(path);
+				tests |= entry.root.tests;
+			}
+		}
+		return new AffectedClasses(classFiles, tests);
+	}
+
+	/**
+	 * Keeps the affected classes of an update whose analysis was canceled or failed, they are returned again by the
+	 * next {@link #update()}. Class files which were deleted meanwhile are dropped there.
+	 */
+	synchronized void restore(@NotNull final AffectedClasses affected) {
+		for (final Set<String> paths : affected.classFiles.values()) {
+			pending.addAll(paths);
+		}
+	}
+
+	/**
+	 * @return true if the content of the class file changed
+	 */
+	private boolean updateEntry(@NotNull final OutputRoot root, @NotNull final String path, @NotNull final Path file) {
+		final ClassEntry cached = entries.get(path);
+		try {
+			final long length = Files.size(file);
+			final long lastModified = Files.getLastModifiedTime(file).toMillis();
+			if (cached != null && cached.length == length && cached.lastModified == lastModified) {
+				return false;
+			}
+			final byte[] bytes = Files.readAllBytes(file);
+			final CRC32 crc = new CRC32();
+			crc.update(bytes);
+			if (cached != null && cached.crc == crc.getValue()) {
+				entries.put(path, new ClassEntry(root, length, lastModified, crc.getValue(), cached.className, cached.referencedClassNames));
+				return false;
+			}
+			final ClassFileUtil.ClassFileInfo info = ClassFileUtil.read(bytes);
+			if (cached != null) {
+				removeEntry(path);
+			}
+			entries.put(path, new ClassEntry(root, length, lastModified, crc.getValue(), info.getClassName(), info.getReferencedClassNames()));
+			for (final String reference : info.getReferencedClassNames()) {
+				dependents.computeIfAbsent(reference, name -> new HashSet<>()).add(path);
+			}
+			return true;
+		} catch (final IOException e) {
+			LOGGER.debug("Can not read class file " + path, e);
+			return false;
+		}
+	}
+
+	private void removeEntry(@NotNull final String path) {
+		final ClassEntry entry = entries.remove(path);
+		if (entry != null) {
+			for (final String reference : entry.referencedClassNames) {
+				final Set<String> paths = dependents.get(reference);
+				if (paths != null) {
+					paths.remove(path);
+					if (paths.isEmpty()) {
+						dependents.remove(reference);
+					}
+				}
+			}
+		}
+	}
+
+	@NotNull
+	private List<OutputRoot> getOutputRoots() {
+		final List<OutputRoot> ret = new ArrayList<>();
+		for (final Module module : ModuleManager.getInstance(project).getModules()) {
+			final CompilerModuleExtension extension = CompilerModuleExtension.getInstance(module);
+			if (extension != null) {
+				final VirtualFile output = extension.getCompilerOutputPath();
+				if (output != null && output.getCanonicalPath() != null) {
+					ret.add(new OutputRoot(module, output.getCanonicalPath(), false));
+				}
+				final VirtualFile testOutput = extension.getCompilerOutputPathForTests();
+				if (testOutput != null && testOutput.getCanonicalPath() != null) {
+					ret.add(new OutputRoot(module, testOutput.getCanonicalPath(), true));
+				}
+			}
+		}
+		return ret;
+	}
+
+	static final class AffectedClasses {
+		@NotNull
+		private final Map<Module, Set<String>> classFiles;
+		private final boolean tests;
+
+		private AffectedClasses(@NotNull final Map<Module, Set<String>> classFiles, final boolean tests) {
+			this.classFiles = classFiles;
+			this.tests = tests;
+		}
+
+		/**
+		 * @return the paths of the affected class files by module
+		 */
+		@NotNull
+		Map<Module, Set<String>> getClassFiles() {
+			return classFiles;
+		}
+
+		/**
+		 * @return true if any affected class file belongs to a test output directory
+		 */
+		boolean hasTests() {
+			return tests;
+		}
+	}
+
+	private static final class OutputRoot {
+		@NotNull
+		private final Module module;
+		@NotNull
+		private final String path;
+		private final boolean tests;
+
+		private OutputRoot(@NotNull final Module module, @NotNull final String path, final boolean tests) {
+			this.module = module;
+			this.path = path;
+			this.tests = tests;
+		}
+	}
+
+	private static final class ClassEntry {
+		@NotNull
+		private final OutputRoot root;
+		private final long length;
+		private final long lastModified;
+		private final long crc;
+		@NotNull
+		private final String className;
+		@NotNull
+		private final Set<String> referencedClassNames;
+
+		private ClassEntry(
+				@NotNull final OutputRoot root,
+				final long length,
+				final long lastModified,
+				final long crc,
+				@NotNull final String className,
+				@NotNull final Set<String> referencedClassNames
+		) {
+			this.root = root;
+			this.length = length;
+			this.lastModified = lastModified;
+			this.crc = crc;
+			this.className = className;
+			this.referencedClassNames = referencedClassNames;
+		}
+	}
+}
@@ -0,0 +1,256 @@
+/*
+ * Copyright 2020 SpotBugs plugin contributors
+ *
+ * This file is part of IntelliJ SpotBugs plugin.
+ *
+ * IntelliJ SpotBugs plugin is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ *
+ * IntelliJ SpotBugs plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with IntelliJ SpotBugs plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jetbrains.plugins.spotbugs.core;
+
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.ClassAnnotation;
+import edu.umd.cs.findbugs.PackageStats;
+import edu.umd.cs.findbugs.ProjectStats;
+import edu.umd.cs.findbugs.SortedBugCollection;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Run-scoped context which analyzes several modules with one {@link edu.umd.cs.findbugs.FindBugs2} engine.
+ * <p>
+ * SpotBugs keeps the class path, the parsed classes, the class hierarchy and the database factories in a global
+ * analysis cache which belongs to one engine and can not be handed over to another engine. So instead of one engine
+ * per module, the class files, source directories and aux classpath entries of all modules are merged into one
+ * project. Shared dependency output directories and the JDK are parsed once per run instead of once per module,
+ * and the reported bugs are assigned to the module which owns their primary class.
+ * <p>
+ * All modules must use the project settings (see {@link ModuleSettings#overrideProjectSettings}) and must not contain
+ * classes with the same name (see {@link #removeConflictingModules(Map)}).
+ */
+final class SharedAnalysisContext {
+
+	@NotNull
+	private final Map<Module, FindBugsProject> _projects;
+
+	@NotNull
+	private final FindBugsProject _project;
+
+	@NotNull
+	private final SortedBugCollection _bugCollection;
+
+	@NotNull
+	private final Map<Module, SortedBugCollection> _bugCollections;
+
+	@NotNull
+	private final Map<String, Module> _moduleByClassName;
+
+	@NotNull
+	private final Module _defaultModule;
+
+
+	SharedAnalysisContext(@NotNull final Project project, @NotNull final Map<Module, FindBugsProject> projects) {
+		if (projects.isEmpty()) {
+			throw new IllegalArgumentException("No projects");
+		}
+		_projects = new LinkedHashMap<>(projects);
+		_defaultModule = projects.keySet().iterator().next();
+		_project = FindBugsProject.create(project, _defaultModule, project.getName());
+		_bugCollection = new SortedBugCollection(_project);
+		_bugCollections = new HashMap<>();
+		_moduleByClassName = new HashMap<>();
+		for (final Map.Entry<Module, FindBugsProject> entry : _projects.entrySet()) {
+			final Module module = entry.getKey();
+			final FindBugsProject findBugsProject = entry.getValue();
+			for (final String path : findBugsProject.getFileList()) {
+				final String className = getClassName(findBugsProject, path);
+				if (className != null) {
+					final Module owner = _moduleByClassName.putIfAbsent(className, module);
+					if (owner != null && owner != module) {
+						throw new IllegalArgumentException("Class " + className + " in module " + owner.getName() + " and " + module.getName());
+					}
+				}
+			}
+			_bugCollections.put(module, new SortedBugCollection(findBugsProject));
+		}
+	}
+
+
+	/**
+	 * Removes the modules which contain a class with the same name as a class of another module (f. e. a duplicated
+	 * generated class or test fixtures). The bugs of such a class can not be assigned to the right module, so these
+	 * modules must be analyzed by their own engines.
+	 *
+	 * @param projects the modules which should be analyzed together; the conflicting modules are removed
+	 * @return the removed modules
+	 */
+	@NotNull
+	static Map<Module, FindBugsProject> removeConflictingModules(@NotNull final Map<Module, FindBugsProject> projects) {
+		final Map<String, Module> owners = new HashMap<>();
+		final Set<Module> conflicting = new LinkedHashSet<>();
+		for (final Map.Entry<Module, FindBugsProject> entry : projects.entrySet()) {
+			for (final String path : entry.getValue().getFileList()) {
+				final String className = getClassName(entry.getValue(), path);
+				if (className != null) {
+					final Module owner = owners.putIfAbsent(className, entry.getKey());
+					if (owner != null && owner != entry.getKey()) {
+						conflicting.add(owner);
+						conflicting.add(entry.getKey());
+					}
+				}
+			}
+		}
+		final Map<Module, FindBugsProject> ret = new LinkedHashMap<>();
+		for (final Module module : conflicting) {
+			ret.put(module, projects.remove(module));
+		}
+		return ret;
+	}
+
+
+	/**
+	 * Merges the class files, source directories and aux classpath entries of the module projects into the project
+	 * which is analyzed by the shared engine. Must be called after the unchanged class files were removed from the
+	 * module projects (see {@link AnalysisCache#prepare(edu.umd.cs.findbugs.Project)}); the owning modules of removed class
+	 * files are still known, so that their cached bugs are assigned correctly.
+	 *
+	 * @return the merged project
+	 */
+	@NotNull
+	FindBugsProject mergeProjects() {
+		for (final FindBugsProject findBugsProject : _projects.values()) {
+			for (final String path : findBugsProject.getFileList()) {
+				_project.addFile(path);
+			}
+			for (final String sourceDir : findBugsProject.getSourceDirList()) {
+				_project.addSourceDir(sourceDir);
+			}
+			for (final String auxClasspathEntry : findBugsProject.getAuxClasspathEntryList()) {
+				_project.addAuxClasspathEntry(auxClasspathEntry);
+			}
+		}
+		return _project;
+	}
+
+
+	/**
+	 * @return the collection which receives the class statistics of the shared engine
+	 */
+	@NotNull
+	SortedBugCollection getBugCollection() {
+		return _bugCollection;
+	}
+
+
+	@NotNull
+	Module getModule(@NotNull final BugInstance bug) {
+		final ClassAnnotation primaryClass = bug.getPrimaryClass();
+		if (primaryClass != null) {
+			final Module module = _moduleByClassName.get(primaryClass.getClassName());
+			if (module != null) {
+				return module;
+			}
+		}
+		return _defaultModule;
+	}
+
+
+	@NotNull
+	SortedBugCollection getBugCollection(@NotNull final BugInstance bug) {
+		return getBugCollection(getModule(bug));
+	}
+
+
+	@NotNull
+	SortedBugCollection getBugCollection(@NotNull final Module module) {
+		final SortedBugCollection ret = _bugCollections.get(module);
+		if (ret == null) {
+			throw new IllegalArgumentException("Unknown module " + module.getName());
+		}
+		return ret;
+	}
+
+
+	/**
+	 * Splits the class statistics of the shared engine into the collections of the modules,
+	 * so that every analyzed class is counted once.
+	 */
+	void finish() {
+		for (final PackageStats packageStats : _bugCollection.getProjectStats().getPackageStats()) {
+			for (final PackageStats.ClassStats classStats : packageStats.getClassStats()) {
+				final Module module = _moduleByClassName.getOrDefault(classStats.getName(), _defaultModule);
+				final ProjectStats stats = getBugCollection(module).getProjectStats();
+				stats.addClass(classStats.getName(), classStats.getSourceFile(), classStats.isInterface(), classStats.size());
+			}
+		}
+		final long timestamp = System.currentTimeMillis();
+		for (final SortedBugCollection bugCollection : _bugCollections.values()) {
+			bugCollection.setTimestamp(timestamp);
+		}
+	}
+
+
+	@NotNull
+	Map<Module, FindBugsProject> getProjects() {
+		return _projects;
+	}
+
+
+	void dispose() {
+		_moduleByClassName.clear();
+		_projects.clear();
+	}
+
+
+	@Nullable
+	private static String getClassName(@NotNull final FindBugsProject findBugsProject, @NotNull final String path) {
+		return getClassName(findBugsProject.getAuxClasspathEntryList(), path);
+	}
+
+
+	/**
+	 * Derives the class name from the path of the class file relative to the aux classpath entry
+	 * (one of the compiler output paths of the module) which contains it. The class files are listed with the
+	 * separator of the OS, the aux classpath entries are canonical paths, so both are compared system independent.
+	 */
+	@Nullable
+	static String getClassName(@NotNull final Collection<String> auxClasspathEntries, @NotNull final String path) {
+		final String file = FileUtil.toSystemIndependentName(path);
+		if (!file.endsWith(".class")) {
+			return null;
+		}
+		String root = null;
+		for (final String auxClasspathEntry : auxClasspathEntries) {
+			final String entry = StringUtil.trimEnd(FileUtil.toSystemIndependentName(auxClasspathEntry), "/");
+			if (file.startsWith(entry + "/") && (root == null || entry.length() > root.length())) {
+				root = entry;
+			}
+		}
+		if (root == null) {
+			return null;
+		}
+		return file.substring(root.length() + 1, file.length() - ".class".length()).replace('/', '.');
+	}
+}
@@ -0,0 +1,368 @@
+/*
+ * Copyright 2020 SpotBugs plugin contributors
+ *
+ * This file is part of IntelliJ SpotBugs plugin.
+ *
+ * IntelliJ SpotBugs plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * IntelliJ SpotBugs plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with IntelliJ SpotBugs plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jetbrains.plugins.spotbugs.core;
+
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.PackageStats;
+import edu.umd.cs.findbugs.ProjectStats;
+import edu.umd.cs.findbugs.config.UserPreferences;
+import edu.umd.cs.findbugs.filter.Filter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.plugins.spotbugs.common.util.WithPluginClassloader;
+import org.jetbrains.plugins.spotbugs.worker.AnalysisWorker;
+import org.jetbrains.plugins.spotbugs.worker.WorkerProtocol;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One worker JVM which runs {@link AnalysisWorker}, see {@link AnalysisWorkerService}.
+ * A worker analyzes one project at a time.
+ */
+final class WorkerProcess {
+
+	private static final long EXIT_TIMEOUT_SECONDS = 5;
+	private static final long POLL_INTERVAL_MS = 50;
+	private static final long CANCEL_TIMEOUT_MS = 10000;
+
+	@NotNull
+	private final List<String> _commandLine;
+
+	/**
+	 * The custom plugins and the versions of their jars the worker was started for, see
+	 * {@link AnalysisWorkerService#getPluginsKey(List)}.
+	 */
+	@NotNull
+	private final List<String> _pluginsKey;
+
+	@NotNull
+	private final Process _process;
+
+	@NotNull
+	private final DataOutputStream _out;
+
+	@NotNull
+	private final DataInputStream _in;
+
+	/**
+	 * The baseline hashes known by the worker, see {@link WorkerProtocol#BASELINE}.
+	 */
+	@NotNull
+	private final Map<String, Set<String>> _sentBaselines;
+
+	private boolean _broken;
+
+
+	private WorkerProcess(@NotNull final List<String> commandLine, @NotNull final List<String> pluginsKey, @NotNull final Process process) {
+		_commandLine = commandLine;
+		_pluginsKey = pluginsKey;
+		_process = process;
+		_out = new DataOutputStream(new BufferedOutputStream(process.getOutputStream()));
+		_in = new DataInputStream(new BufferedInputStream(process.getInputStream()));
+		_sentBaselines = new HashMap<>();
+	}
+
+
+	@NotNull
+	static WorkerProcess start(
+			@NotNull final List<String> commandLine,
+			@NotNull final List<String> pluginsKey,
+			@NotNull final File logFile
+	) throws IOException {
+		final Process process = new ProcessBuilder(commandLine)
+				.redirectError(ProcessBuilder.Redirect.appendTo(logFile))
+				.start();
+		return new WorkerProcess(commandLine, pluginsKey, process);
+	}
+
+
+	/**
+	 * @return true if the worker was started with {@code commandLine} and loads the same custom plugins,
+	 * a loaded plugin can not be unloaded or reloaded by the worker
+	 */
+	boolean isStartedFor(@NotNull final List<String> commandLine, @NotNull final List<String> pluginsKey) {
+		return _commandLine.equals(commandLine) && _pluginsKey.equals(pluginsKey);
+	}
+
+
+	/**
+	 * @return false if the worker died or its stream is out of sync, it must not be reused
+	 */
+	boolean isReusable() {
+		return !_broken && _process.isAlive();
+	}
+
+
+	void destroy() {
+		_process.destroy();
+	}
+
+
+	/**
+	 * Analyzes the project in the worker and forwards the progress and the bugs to {@code reporter}, like the engine
+	 * would do if it runs in the IDE. The class statistics of the worker are added to the statistics of
+	 * {@code reporter}.
+	 *
+	 * @param plugins         URLs of the custom plugins which must be loaded by the worker
+	 * @param projectFile     written by {@link edu.umd.cs.findbugs.Project#writeXML(File, edu.umd.cs.findbugs.BugCollection)}
+	 * @param preferencesFile written by {@link UserPreferences#write(java.io.OutputStream)}, without filter files
+	 * @param userPrefs       the filter and baseline files, see {@link FilterFileCache}
+	 */
+	void analyze(
+			@NotNull final Reporter reporter,
+			@NotNull final List<String> plugins,
+			@NotNull final File projectFile,
+			@NotNull final File preferencesFile,
+			@NotNull final UserPreferences userPrefs
+	) throws IOException {
+		final Map<String, Filter> excludeFilters = FilterFileCache.getFilters(userPrefs.getExcludeFilterFiles(), false);
+		final Map<String, Filter> includeFilters = FilterFileCache.getFilters(userPrefs.getIncludeFilterFiles(), true);
+		final Map<String, Set<String>> baselines = FilterFileCache.getBaselines(userPrefs.getExcludeBugsFiles());
+
+		_broken = true; // until the worker answered completely
+		for (final Map.Entry<String, Set<String>> baseline : baselines.entrySet()) {
+			// the cache returns the same set as long as the file is unchanged
+			if (_sentBaselines.get(baseline.getKey()) != baseline.getValue()) {
+				_out.writeByte(WorkerProtocol.BASELINE);
+				_out.writeUTF(baseline.getKey());
+				_out.writeInt(baseline.getValue().size());
+				for (final String hash : baseline.getValue()) {
+					_out.writeUTF(hash);
+				}
+				_sentBaselines.put(baseline.getKey(), baseline.getValue());
+			}
+		}
+		_out.writeByte(WorkerProtocol.ANALYZE);
+		writePaths(plugins);
+		_out.writeUTF(projectFile.getPath());
+		_out.writeUTF(preferencesFile.getPath());
+		writePaths(excludeFilters.keySet());
+		writePaths(includeFilters.keySet());
+		writePaths(baselines.keySet());
+		_out.flush();
+
+		final ReporterReceiver receiver = new ReporterReceiver(reporter);
+		boolean cancelSent = false;
+		try {
+			long cancelDeadline = 0;
+			boolean done = false;
+			while (!done) {
+				if (!cancelSent) {
+					cancelSent = awaitMessage(reporter);
+					cancelDeadline = System.currentTimeMillis() + CANCEL_TIMEOUT_MS;
+				}
+				if (cancelSent && !awaitMessage(cancelDeadline)) {
+					// the worker does not stop, it stays broken and is not reused
+					destroy();
+					reporter.finish();
+					return;
+				}
+				done = WithPluginClassloader.<Boolean, IOException, RuntimeException>compute(() -> WorkerProtocol.readMessage(_in, receiver));
+			}
+			_broken = false;
+			if (receiver._error != null) {
+				throw new IOException("SpotBugs worker failed: " + receiver._error);
+			}
+			reporter.finish();
+		} catch (final EOFException e) {
+			throw new IOException("SpotBugs worker terminated unexpectedly" + getExitCode() + ", the worker heap may be too small", e);
+		} finally {
+			if (cancelSent) {
+				// see Reporter#cancelFindBugs, the worker is stopped already
+				Thread.interrupted();
+			}
+		}
+	}
+
+
+	private void writePaths(@NotNull final Collection<String> paths) throws IOException {
+		_out.writeInt(paths.size());
+		for (final String path : paths) {
+			_out.writeUTF(path);
+		}
+	}
+
+
+	/**
+	 * Waits until the worker sent the next message without blocking in the read, so that a cancel of the analysis
+	 * is sent to the worker right away and not only when the worker sends its next message.
+	 *
+	 * @return true if {@link WorkerProtocol#CANCEL} was sent
+	 */
+	private boolean awaitMessage(@NotNull final Reporter reporter) throws IOException {
+		while (true) {
+			if (reporter.checkCancel()) {
+				sendCancel();
+				return true;
+			}
+			if (_in.available() > 0 || !_process.isAlive()) {
+				return false; // the read returns the message or fails with EOF
+			}
+			try {
+				Thread.sleep(POLL_INTERVAL_MS);
+			} catch (final InterruptedException ignore) {
+				// the analysis thread is stopped, so is the worker
+				sendCancel();
+				return true;
+			}
+		}
+	}
+
+
+	/**
+	 * Waits until the worker sent the next message after {@link WorkerProtocol#CANCEL}.
+	 *
+	 * @return false if the worker did not answer until {@code deadline}
+	 */
+	private boolean awaitMessage(final long deadline) throws IOException {
+		while (_in.available() <= 0 && _process.isAlive()) {
+			if (System.currentTimeMillis() >= deadline) {
+				return false;
+			}
+			try {
+				Thread.sleep(POLL_INTERVAL_MS);
+			} catch (final InterruptedException ignore) {
+				// the cancel interrupts the analysis thread, the worker gets its time to stop anyway
+			}
+		}
+		return true;
+	}
+
+
+	private void sendCancel() throws IOException {
+		_out.writeByte(WorkerProtocol.CANCEL);
+		_out.flush();
+	}
+
+
+	private static void addClassStats(@NotNull final ProjectStats from, @NotNull final ProjectStats to) {
+		for (final PackageStats packageStats : from.getPackageStats()) {
+			for (final PackageStats.ClassStats classStats : packageStats.getClassStats()) {
+				to.addClass(classStats.getName(), classStats.getSourceFile(), classStats.isInterface(), classStats.size());
+			}
+		}
+	}
+
+
+	@NotNull
+	private String getExitCode() {
+		try {
+			if (_process.waitFor(EXIT_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+				return " (exit code " + _process.exitValue() + ")";
+			}
+			return "";
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return "";
+		}
+	}
+
+
+	/**
+	 * Forwards the messages of the worker to the {@link Reporter} of the analysis.
+	 */
+	private static final class ReporterReceiver implements WorkerProtocol.Receiver {
+
+		@NotNull
+		private final Reporter _reporter;
+
+		@Nullable
+		private String _error;
+
+
+		private ReporterReceiver(@NotNull final Reporter reporter) {
+			_reporter = reporter;
+		}
+
+
+		@Override
+		public void reportNumberOfArchives(final int numArchives) {
+			_reporter.reportNumberOfArchives(numArchives);
+		}
+
+
+		@Override
+		public void startArchive(final String name) {
+			_reporter.startArchive(name);
+		}
+
+
+		@Override
+		public void finishArchive() {
+			_reporter.finishArchive();
+		}
+
+
+		@Override
+		public void startAnalysis(final int numClasses) {
+			_reporter.startAnalysis(numClasses);
+		}
+
+
+		@Override
+		public void finishClass() {
+			_reporter.finishClass();
+		}
+
+
+		@Override
+		public void finishPerClassAnalysis() {
+			_reporter.finishPerClassAnalysis();
+		}
+
+
+		@Override
+		public void predictPassCount(final int[] classesPerPass) {
+			_reporter.predictPassCount(classesPerPass);
+		}
+
+
+		@Override
+		public void reportBugs(@NotNull final Collection<BugInstance> bugs) {
+			for (final BugInstance bug : bugs) {
+				_reporter.reportBug(bug);
+			}
+		}
+
+
+		@Override
+		public void done(@NotNull final ProjectStats stats) {
+			addClassStats(stats, _reporter.getProjectStats());
+		}
+
+
+		@Override
+		public void failed(@NotNull final String error) {
+			_error = error;
+		}
+	}
+}
@@ -43,12 +43,78 @@ public final class WorkspaceSettings implements PersistentStateComponent<Workspa
 	@Tag
 	public boolean analyzeAfterCompile = false;
 
+	/**
+	 * Compile the modules in a few batches (in dependency order) and analyze each compiled batch while the remaining
+	 * batches are still compiled. Only used by the project analysis of projects with more than one module.
+	 * <p>
+	 * Trade-off: every batch is a separate build with its own up-to-date checks, so the whole compilation takes
+	 * longer than one project build, and the modules of a batch are analyzed without the modules of the other batches
+	 * (no shared engine across batches). It pays off if compiling and analyzing take about equally long.
+	 */
+	@Tag
+	public boolean pipelineCompileAndAnalyze = false;
+
 	@Tag
 	public boolean analyzeAfterAutoMake = false;
 
 	@Tag
 	public boolean runInBackground = false;
 
+	/**
+	 * Maximum number of modules which are analyzed concurrently, {@code 1} analyzes the modules one after another.
+	 * Modules which override the project settings are always analyzed one after another. Also limits the engines
+	 * (including the {@link #moduleShards shards} and worker processes) which run at the same time in one analysis.
+	 */
+	@Tag
+	public int analysisParallelism = 1;
+
+	/**
+	 * Maximum number of class partitions (shards) of one module which are analyzed concurrently by their own engines,
+	 * {@code 1} analyzes each module with one engine. Like all engines of an analysis, the shards are limited by
+	 * {@link #analysisParallelism}. Only modules with at least
+	 * {@link ModuleShards#MIN_CLASSES_PER_SHARD} class files per shard are split. Detectors which collect facts
+	 * over all analyzed classes lose precision, see {@link ModuleShards}.
+	 */
+	@Tag
+	public int moduleShards = 1;
+
+	/**
+	 * Replay the cached bugs of class files which did not change since the last analysis
+	 * instead of analyzing them again. Off by default: any change on the aux classpath (f. e. in a dependency module)
+	 * discards the cache of the module, and detectors which look beyond the referenced classes may still
+	 * miss changes.
+	 */
+	@Tag
+	public boolean incrementalAnalysis = false;
+
+	/**
+	 * Analyze all modules which use the project settings with one SpotBugs engine, so that shared dependencies
+	 * are parsed once per analysis run instead of once per module.
+	 */
+	@Tag
+	public boolean shareAnalysisContext = false;
+
+	/**
+	 * Run the SpotBugs engine in a separate JVM (see {@link AnalysisWorkerService}) so that a large analysis
+	 * can not exhaust the heap of the IDE.
+	 */
+	@Tag
+	public boolean analyzeInWorkerProcess = false;
+
+	/**
+	 * Maximum heap (-Xmx) of the worker JVM in megabytes.
+	 */
+	@Tag
+	public int workerMaxHeapMb = 2048;
+
+	/**
+	 * Keep the last analysis result in the IDE system directory and restore it when the project is opened
+	 * (see {@link ResultSnapshot}). Disabled by default, because every finished analysis rewrites the snapshot of the
+	 * whole project, also every partial analysis (f. e. after auto make) which is merged into the result.
+	 */
+	@Tag
+	public boolean persistResult = false;
+
 	/**
 	 * Last used export directory for "Export Bug Collection".
 	 */
@@ -27,7 +27,6 @@ import com.intellij.openapi.util.TextRange;
 import com.intellij.psi.PsiAnonymousClass;
 import com.intellij.psi.PsiClass;
 import com.intellij.psi.PsiElement;
-import com.intellij.psi.PsiFile;
 import com.intellij.ui.JBColor;
 import edu.umd.cs.findbugs.BugInstance;
 import edu.umd.cs.findbugs.Detector;
@@ -47,7 +46,6 @@ import org.jetbrains.plugins.spotbugs.resources.ResourcesLoader;
 import java.awt.Font;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 public final class BugAnnotator implements Annotator {
 
@@ -68,23 +66,17 @@ public final class BugAnnotator implements Annotator {
 		if (cacheService == null) {
 			return;
 		}
-		final Map<PsiFile, List<ExtendedProblemDescriptor>> problems = cacheService.getProblems();
-
-		final PsiFile psiFile = psiElement.getContainingFile();
-		if (problems.containsKey(psiFile)) {
-			addAnnotation(psiElement, new ArrayList<>(problems.get(psiFile)), annotationHolder);
+		final List<ExtendedProblemDescriptor> problemDescriptors = cacheService.getProblemsOfElement(psiElement);
+		if (!problemDescriptors.isEmpty()) {
+			addAnnotation(psiElement, problemDescriptors, annotationHolder);
 		}
 	}
 
 	private static void addAnnotation(@NotNull final PsiElement psiElement, final Iterable<ExtendedProblemDescriptor> problemDescriptors, @NotNull final AnnotationHolder annotationHolder) {
 		final List<ExtendedProblemDescriptor> matchingDescriptors = new ArrayList<>();
 		for (final ExtendedProblemDescriptor descriptor : problemDescriptors) {
-			final PsiElement problemPsiElement = descriptor.getPsiElement();
-
-			if (psiElement.equals(problemPsiElement)) {
-				matchingDescriptors.add(descriptor);
-				addAnnotation(descriptor, matchingDescriptors, psiElement, annotationHolder);
-			}
+			matchingDescriptors.add(descriptor);
+			addAnnotation(descriptor, matchingDescriptors, psiElement, annotationHolder);
 		}
 	}
 
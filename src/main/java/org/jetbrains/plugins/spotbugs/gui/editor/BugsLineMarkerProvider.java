@@ -27,9 +27,6 @@ import com.intellij.openapi.project.Project;
 import com.intellij.openapi.ui.popup.JBPopup;
 import com.intellij.openapi.ui.popup.JBPopupFactory;
 import com.intellij.psi.PsiElement;
-import com.intellij.psi.PsiFile;
-import com.intellij.psi.impl.source.tree.LeafElement;
-import com.intellij.psi.impl.source.tree.TreeUtil;
 import com.intellij.ui.awt.RelativePoint;
 import com.intellij.util.Function;
 import org.jetbrains.annotations.NotNull;
@@ -37,7 +34,6 @@ import org.jetbrains.annotations.Nullable;
 import org.jetbrains.plugins.spotbugs.common.ExtendedProblemDescriptor;
 import org.jetbrains.plugins.spotbugs.common.util.BugInstanceUtil;
 import org.jetbrains.plugins.spotbugs.common.util.GuiUtil;
-import org.jetbrains.plugins.spotbugs.common.util.IdeaUtilImpl;
 import org.jetbrains.plugins.spotbugs.core.FindBugsState;
 import org.jetbrains.plugins.spotbugs.core.ProblemCacheService;
 import org.jetbrains.plugins.spotbugs.core.WorkspaceSettings;
@@ -53,7 +49,6 @@ import java.awt.event.MouseEvent;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
-import java.util.Map;
 import java.util.regex.Pattern;
 
 public final class BugsLineMarkerProvider implements LineMarkerProvider {
@@ -82,43 +77,15 @@ public final class BugsLineMarkerProvider implements LineMarkerProvider {
 		if (cacheService == null) {
 			return null;
 		}
-		final PsiFile psiFile = IdeaUtilImpl.getPsiFile(psiElement);
-		final Map<PsiFile, List<ExtendedProblemDescriptor>> problemCache = cacheService.getProblems();
-
-		if (problemCache.containsKey(psiFile)) {
-			final List<ExtendedProblemDescriptor> matchingDescriptors = new ArrayList<ExtendedProblemDescriptor>();
-			final List<ExtendedProblemDescriptor> problemDescriptors = problemCache.get(psiFile);
-			if (problemDescriptors == null) {
-				return null;
-			}
-
-			final Iterable<ExtendedProblemDescriptor> descriptors = new ArrayList<ExtendedProblemDescriptor>(problemDescriptors);
-			for (final ExtendedProblemDescriptor problemDescriptor : descriptors) {
-
-				final PsiElement problemPsiElement = problemDescriptor.getPsiElement();
-				if (psiElement == firstLeafOrNull(problemPsiElement)) {
-					matchingDescriptors.add(problemDescriptor);
-					//if(psiElement instanceof PsiAnonymousClass) {
-					//	final Editor[] editors = com.intellij.openapi.editor.EditorFactory.getInstance().getEditors(IdeaUtilImpl.getDocument(psiFile.getProject(), problemDescriptor));
-					//	editors[0].getMarkupModel().addRangeHighlighter()
-					//}
-				}
-			}
-			if (!matchingDescriptors.isEmpty()) {
-				final GutterIconNavigationHandler<PsiElement> navHandler = new BugGutterIconNavigationHandler(psiElement, matchingDescriptors);
-				return new LineMarkerInfo<>(psiElement, psiElement.getTextRange(), GuiUtil.getTinyIcon(matchingDescriptors.get(0)), new TooltipProvider(matchingDescriptors), navHandler, GutterIconRenderer.Alignment.LEFT);
-			}
+		final List<ExtendedProblemDescriptor> matchingDescriptors = cacheService.getProblemsOfFirstLeaf(psiElement);
+		if (!matchingDescriptors.isEmpty()) {
+			final GutterIconNavigationHandler<PsiElement> navHandler = new BugGutterIconNavigationHandler(psiElement, matchingDescriptors);
+			return new LineMarkerInfo<>(psiElement, psiElement.getTextRange(), GuiUtil.getTinyIcon(matchingDescriptors.get(0)), new TooltipProvider(matchingDescriptors), navHandler, GutterIconRenderer.Alignment.LEFT);
 		}
 
 		return null;
 	}
 
-	@Nullable
-	private static PsiElement firstLeafOrNull(@NotNull PsiElement element) {
-		LeafElement firstLeaf = TreeUtil.findFirstLeaf(element.getNode());
-		return firstLeaf != null ? firstLeaf.getPsi() : null;
-	}
-
 	public void collectSlowLineMarkers(final @NotNull List<? extends PsiElement> elements, final @NotNull Collection<? super LineMarkerInfo<?>> result) {
 	}
 
@@ -20,6 +20,7 @@
 package org.jetbrains.plugins.spotbugs.gui.settings;
 
 import com.intellij.openapi.options.ConfigurationException;
+import com.intellij.ui.JBIntSpinner;
 import com.intellij.ui.components.JBCheckBox;
 import com.intellij.util.ui.UIUtil;
 import org.jetbrains.annotations.NotNull;
@@ -31,37 +32,81 @@ import org.jetbrains.plugins.spotbugs.gui.common.VerticalFlowLayout;
 import org.jetbrains.plugins.spotbugs.plugins.Plugins;
 import org.jetbrains.plugins.spotbugs.resources.ResourcesLoader;
 
+import javax.swing.JLabel;
 import javax.swing.JPanel;
 import java.awt.BorderLayout;
+import java.awt.FlowLayout;
 
 final class GeneralTab extends JPanel {
+	private static final int MAX_ANALYSIS_PARALLELISM = 64;
+	private static final int MAX_MODULE_SHARDS = 16;
+	private static final int MIN_WORKER_MAX_HEAP_MB = 256;
+	private static final int MAX_WORKER_MAX_HEAP_MB = 65536;
+	private static final int WORKER_MAX_HEAP_STEP_MB = 256;
+
 	private JBCheckBox compileBeforeAnalyze;
 	private JBCheckBox analyzeAfterCompile;
+	private JBCheckBox pipelineCompileAndAnalyze;
 	private JBCheckBox analyzeAfterAutoMake;
 	private JBCheckBox runInBackground;
 	private JBCheckBox toolWindowToFront;
+	private JBCheckBox incrementalAnalysis;
+	private JBCheckBox shareAnalysisContext;
+	private JBIntSpinner analysisParallelism;
+	private JBIntSpinner moduleShards;
+	private JBCheckBox analyzeInWorkerProcess;
+	private JBIntSpinner workerMaxHeapMb;
+	private JBCheckBox persistResult;
 	private PluginTablePane plugin;
 
 	GeneralTab() {
 		super(new BorderLayout());
 		compileBeforeAnalyze = new JBCheckBox(ResourcesLoader.getString("general.compileBeforeAnalyze.title"));
 		analyzeAfterCompile = new JBCheckBox(ResourcesLoader.getString("general.analyzeAfterCompile.title"));
+		pipelineCompileAndAnalyze = new JBCheckBox(ResourcesLoader.getString("general.pipelineCompileAndAnalyze.title"));
+		pipelineCompileAndAnalyze.setToolTipText(ResourcesLoader.getString("general.pipelineCompileAndAnalyze.description"));
 		analyzeAfterAutoMake = new JBCheckBox(ResourcesLoader.getString("general.analyzeAfterAutoMake.title"));
 		runInBackground = new JBCheckBox(ResourcesLoader.getString("general.runInBackground.title"));
 		toolWindowToFront = new JBCheckBox(ResourcesLoader.getString("general.toolWindowToFront.title"));
+		incrementalAnalysis = new JBCheckBox(ResourcesLoader.getString("general.incrementalAnalysis.title"));
+		shareAnalysisContext = new JBCheckBox(ResourcesLoader.getString("general.shareAnalysisContext.title"));
+		analysisParallelism = new JBIntSpinner(1, 1, MAX_ANALYSIS_PARALLELISM);
+		moduleShards = new JBIntSpinner(1, 1, MAX_MODULE_SHARDS);
+		analyzeInWorkerProcess = new JBCheckBox(ResourcesLoader.getString("general.analyzeInWorkerProcess.title"));
+		workerMaxHeapMb = new JBIntSpinner(2048, MIN_WORKER_MAX_HEAP_MB, MAX_WORKER_MAX_HEAP_MB, WORKER_MAX_HEAP_STEP_MB);
+		persistResult = new JBCheckBox(ResourcesLoader.getString("general.persistResult.title"));
 		plugin = new PluginTablePane();
 
 		final JPanel topPane = new JPanel(new VerticalFlowLayout(HAlignment.Left, VAlignment.Top, 0, UIUtil.DEFAULT_VGAP, false, false));
 		topPane.add(compileBeforeAnalyze);
 		topPane.add(analyzeAfterCompile);
+		topPane.add(pipelineCompileAndAnalyze);
 		topPane.add(analyzeAfterAutoMake);
 		topPane.add(runInBackground);
 		topPane.add(toolWindowToFront);
+		topPane.add(incrementalAnalysis);
+		topPane.add(shareAnalysisContext);
+		topPane.add(createSpinnerPane(analysisParallelism, "general.analysisParallelism"));
+		topPane.add(createSpinnerPane(moduleShards, "general.moduleShards"));
+		topPane.add(analyzeInWorkerProcess);
+		topPane.add(createSpinnerPane(workerMaxHeapMb, "general.workerMaxHeapMb"));
+		topPane.add(persistResult);
 
 		add(topPane, BorderLayout.NORTH);
 		add(plugin);
 	}
 
+	@NotNull
+	private static JPanel createSpinnerPane(@NotNull final JBIntSpinner spinner, @NotNull final String resourceKey) {
+		final JLabel label = new JLabel(ResourcesLoader.getString(resourceKey + ".title"));
+		label.setToolTipText(ResourcesLoader.getString(resourceKey + ".description"));
+		label.setLabelFor(spinner);
+		final JPanel ret = new JPanel(new FlowLayout(FlowLayout.LEFT, UIUtil.DEFAULT_HGAP, 0));
+		ret.add(label);
+		ret.add(spinner);
+		return ret;
+	}
+
 	void setProjectSettingsEnabled(final boolean enabled) {
 		plugin.setEnabled(enabled);
 	}
@@ -73,9 +118,17 @@ final class GeneralTab extends JPanel {
 	boolean isModifiedWorkspace(@NotNull final WorkspaceSettings settings) {
 		return compileBeforeAnalyze.isSelected() != settings.compileBeforeAnalyze ||
 				analyzeAfterCompile.isSelected() != settings.analyzeAfterCompile ||
+				pipelineCompileAndAnalyze.isSelected() != settings.pipelineCompileAndAnalyze ||
 				analyzeAfterAutoMake.isSelected() != settings.analyzeAfterAutoMake ||
 				runInBackground.isSelected() != settings.runInBackground ||
-				toolWindowToFront.isSelected() != settings.toolWindowToFront;
+				toolWindowToFront.isSelected() != settings.toolWindowToFront ||
+				incrementalAnalysis.isSelected() != settings.incrementalAnalysis ||
+				shareAnalysisContext.isSelected() != settings.shareAnalysisContext ||
+				analysisParallelism.getNumber() != settings.analysisParallelism ||
+				moduleShards.getNumber() != settings.moduleShards ||
+				analyzeInWorkerProcess.isSelected() != settings.analyzeInWorkerProcess ||
+				workerMaxHeapMb.getNumber() != settings.workerMaxHeapMb ||
+				persistResult.isSelected() != settings.persistResult;
 	}
 
 	void apply(@NotNull final AbstractSettings settings) throws ConfigurationException {
@@ -85,9 +138,17 @@ final class GeneralTab extends JPanel {
 	void applyWorkspace(@NotNull final WorkspaceSettings settings) throws ConfigurationException {
 		settings.compileBeforeAnalyze = compileBeforeAnalyze.isSelected();
 		settings.analyzeAfterCompile = analyzeAfterCompile.isSelected();
+		settings.pipelineCompileAndAnalyze = pipelineCompileAndAnalyze.isSelected();
 		settings.analyzeAfterAutoMake = analyzeAfterAutoMake.isSelected();
 		settings.runInBackground = runInBackground.isSelected();
 		settings.toolWindowToFront = toolWindowToFront.isSelected();
+		settings.incrementalAnalysis = incrementalAnalysis.isSelected();
+		settings.shareAnalysisContext = shareAnalysisContext.isSelected();
+		settings.analysisParallelism = analysisParallelism.getNumber();
+		settings.moduleShards = moduleShards.getNumber();
+		settings.analyzeInWorkerProcess = analyzeInWorkerProcess.isSelected();
+		settings.workerMaxHeapMb = workerMaxHeapMb.getNumber();
+		settings.persistResult = persistResult.isSelected();
 	}
 
 	void reset(@NotNull final AbstractSettings settings) {
@@ -97,9 +158,17 @@ final class GeneralTab extends JPanel {
 	void resetWorkspace(@NotNull final WorkspaceSettings settings) {
 		compileBeforeAnalyze.setSelected(settings.compileBeforeAnalyze);
 		analyzeAfterCompile.setSelected(settings.analyzeAfterCompile);
+		pipelineCompileAndAnalyze.setSelected(settings.pipelineCompileAndAnalyze);
 		analyzeAfterAutoMake.setSelected(settings.analyzeAfterAutoMake);
 		runInBackground.setSelected(settings.runInBackground);
 		toolWindowToFront.setSelected(settings.toolWindowToFront);
+		incrementalAnalysis.setSelected(settings.incrementalAnalysis);
+		shareAnalysisContext.setSelected(settings.shareAnalysisContext);
+		analysisParallelism.setNumber(Math.max(1, Math.min(MAX_ANALYSIS_PARALLELISM, settings.analysisParallelism)));
+		moduleShards.setNumber(Math.max(1, Math.min(MAX_MODULE_SHARDS, settings.moduleShards)));
+		analyzeInWorkerProcess.setSelected(settings.analyzeInWorkerProcess);
+		workerMaxHeapMb.setNumber(Math.max(MIN_WORKER_MAX_HEAP_MB, Math.min(MAX_WORKER_MAX_HEAP_MB, settings.workerMaxHeapMb)));
+		persistResult.setSelected(settings.persistResult);
 	}
 
 	@NotNull
@@ -117,9 +186,17 @@ final class GeneralTab extends JPanel {
 		return new String[]{
 				"general.compileBeforeAnalyze.title",
 				"general.analyzeAfterCompile.title",
+				"general.pipelineCompileAndAnalyze.title",
 				"general.analyzeAfterAutoMake.title",
 				"general.runInBackground.title",
 				"general.toolWindowToFront.title",
+				"general.incrementalAnalysis.title",
+				"general.shareAnalysisContext.title",
+				"general.analysisParallelism.title",
+				"general.moduleShards.title",
+				"general.analyzeInWorkerProcess.title",
+				"general.workerMaxHeapMb.title",
+				"general.persistResult.title",
 				// PluginTablePane
 				"plugins.title",
 				"plugins.addFromDisk"
@@ -49,6 +49,7 @@ import org.jetbrains.plugins.spotbugs.core.AbstractSettings;
 import org.jetbrains.plugins.spotbugs.core.PluginSettings;
 import org.jetbrains.plugins.spotbugs.plugins.AbstractPluginLoader;
 import org.jetbrains.plugins.spotbugs.plugins.PluginInfo;
+import org.jetbrains.plugins.spotbugs.plugins.PluginMetadata;
 import org.jetbrains.plugins.spotbugs.resources.ResourcesLoader;
 
 import javax.swing.*;
@@ -194,14 +195,13 @@ final class PluginTablePane extends JPanel {
 			StringBuilder errors = new StringBuilder();
 			for (final VirtualFile virtualFile : files) {
 				final File file = VfsUtilCore.virtualToIoFile(virtualFile);
-				Plugin plugin = null;
 				try {
-					plugin = FindBugsCustomPluginUtil.loadTemporary(file);
+					final PluginMetadata metadata = PluginMetadata.load(file);
 					final PluginSettings pluginSettings = new PluginSettings();
-					pluginSettings.id = plugin.getPluginId();
+					pluginSettings.id = metadata.pluginId;
 					pluginSettings.bundled = false;
 					pluginSettings.enabled = true; // enable ; do not use plugin.isEnabledByDefault();
-					pluginSettings.url = FindBugsCustomPluginUtil.getAsString(plugin);
+					pluginSettings.url = FindBugsCustomPluginUtil.getAsString(file);
 					for (final PluginSettings other : settings) {
 						if (other.id.equals(pluginSettings.id)) {
 							pluginSettings.enabled = false;
@@ -212,10 +212,6 @@ final class PluginTablePane extends JPanel {
 				} catch (final Exception e) {
 					LOGGER.warn(String.valueOf(file), e);
 					errors.append("\n    - ").append(e.getMessage());
-				} finally {
-					if (plugin != null) {
-						FindBugsCustomPluginUtil.unload(plugin);
-					}
 				}
 			}
 
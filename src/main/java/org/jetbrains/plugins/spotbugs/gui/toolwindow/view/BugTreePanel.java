@@ -66,6 +66,7 @@ import javax.swing.tree.TreePath;
 import java.awt.BorderLayout;
 import java.awt.Dimension;
 import java.awt.Font;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
@@ -110,16 +111,25 @@ public class BugTreePanel extends JPanel {
 		add(treeScrollPane, BorderLayout.CENTER);
 	}
 
-	void addNode(@NotNull final Bug bug) {
-		/*if(isHiddenBugGroup(bugInstance)) {
-			return;
-		}*/
-
+	void addNodes(@NotNull final List<Bug> bugs) {
 		if (_treeModel.getGroupBy() != _groupBy) {
 			_treeModel.setGroupBy(_groupBy);
 		}
 
-		_treeModel.addNode(bug);
+		_treeModel.addNodes(bugs);
+	}
+
+	/**
+	 * Removes all bugs of the tree which are not part of {@code result} (anymore).
+	 */
+	void removeStaleNodes(@NotNull final FindBugsResult result) {
+		final List<Bug> stale = new ArrayList<>();
+		for (final Bug bug : _treeModel.getBugs()) {
+			if (!result.contains(bug)) {
+				stale.add(bug);
+			}
+		}
+		_treeModel.removeNodes(stale);
 	}
 
 	void updateRootNode(@Nullable final Integer classCount) {
@@ -314,22 +324,19 @@ public class BugTreePanel extends JPanel {
 
 	private void regroupTree() {
 		EventDispatchThreadHelper.checkEDT();
+		final List<Bug> bugs;
 		if (result != null) {
-			boolean cleared = false;
+			bugs = new ArrayList<>();
 			for (final Map.Entry<edu.umd.cs.findbugs.Project, SortedBugCollection> entry : result.getResults().entrySet()) {
 				Module module = null;
 				if (entry.getKey() instanceof FindBugsProject) {
 					module = ((FindBugsProject) entry.getKey()).getModule();
 				}
 				final Collection<BugInstance> instanceCollection = entry.getValue().getCollection();
-				if (instanceCollection != null && !instanceCollection.isEmpty()) {
-					if (!cleared) {
-						cleared = true;
-						_treeModel.clear();
-					}
+				if (instanceCollection != null) {
 					for (final BugInstance bugInstance : instanceCollection) {
 						if (bugInstance != null) {
-							addNode(new Bug(
+							bugs.add(new Bug(
 									module,
 									entry.getValue(),
 									bugInstance
@@ -338,14 +345,15 @@ public class BugTreePanel extends JPanel {
 					}
 				}
 			}
+			if (bugs.isEmpty()) {
+				return;
+			}
 		} else {
 			// may be a analysis is running, we need to regroup existing nodes
-			final Collection<Bug> existing = _treeModel.getBugs();
-			_treeModel.clear();
-			for (final Bug bug : existing) {
-				addNode(bug);
-			}
+			bugs = new ArrayList<>(_treeModel.getBugs());
 		}
+		_treeModel.setGroupBy(_groupBy);
+		_treeModel.regroup(bugs);
 	}
 
 	void adaptSize(final int width, final int height) {
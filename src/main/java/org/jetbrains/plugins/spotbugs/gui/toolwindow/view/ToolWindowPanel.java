@@ -38,6 +38,7 @@ import org.jetbrains.annotations.*;
 import org.jetbrains.plugins.spotbugs.common.*;
 import org.jetbrains.plugins.spotbugs.common.util.FindBugsUtil;
 import org.jetbrains.plugins.spotbugs.core.FindBugsResult;
+import org.jetbrains.plugins.spotbugs.core.ResultSnapshot;
 import org.jetbrains.plugins.spotbugs.gui.common.*;
 import org.jetbrains.plugins.spotbugs.messages.*;
 
@@ -78,6 +79,11 @@ public final class ToolWindowPanel extends JPanel implements AnalysisStateListen
 	private transient PreviewPanel _previewPanel;
 	private FindBugsResult result;
 
+	/**
+	 * {@code true} while a partial analysis runs whose result is merged into {@link #result}.
+	 */
+	private boolean merge;
+
 	public ToolWindowPanel(@NotNull final Project project) {
 		_project = project;
 		installListeners();
@@ -87,9 +93,9 @@ public final class ToolWindowPanel extends JPanel implements AnalysisStateListen
 			ToolWindowPanel.this.clear();
 			DaemonCodeAnalyzer.getInstance(_project).restart();
 		});
-		MessageBusManager.subscribe(project, this, NewBugListener.TOPIC, (bug, analyzedClassCount) -> {
-			_bugTreePanel.addNode(bug);
-			_bugTreePanel.updateRootNode(analyzedClassCount);
+		MessageBusManager.subscribe(project, this, NewBugListener.TOPIC, (bugs, analyzedClassCount) -> {
+			_bugTreePanel.addNodes(bugs);
+			_bugTreePanel.updateRootNode(analyzedClassCount >= 0 ? analyzedClassCount : null);
 		});
 	}
 
@@ -219,11 +225,17 @@ public final class ToolWindowPanel extends JPanel implements AnalysisStateListen
 	}
 
 	@Override
-	public void analysisStarted() {
+	public void analysisStarted(final boolean merge) {
 		EditorFactory.getInstance().refreshAllEditors();
 		DaemonCodeAnalyzer.getInstance(_project).restart();
 		updateLayout(false);
-		clear();
+		this.merge = merge && result != null;
+		if (this.merge) {
+			// keep the previous bugs; the tree is reconciled when the partial analysis is finished
+			_bugTreePanel.setResult(null);
+		} else {
+			clear();
+		}
 	}
 
 	@Override
@@ -232,11 +244,25 @@ public final class ToolWindowPanel extends JPanel implements AnalysisStateListen
 
 	@Override
 	public void analysisAborted() {
-		_bugTreePanel.setResult(null);
+		if (merge) {
+			// keep the previous result, but drop the partial new bugs reported by the aborted analysis
+			merge = false;
+			_bugTreePanel.removeStaleNodes(result);
+			_bugTreePanel.setResult(result);
+			_bugTreePanel.updateRootNode(result.getAnalyzedClassCount());
+		} else {
+			_bugTreePanel.setResult(null);
+		}
 	}
 
 	@Override
-	public void analysisFinished(@NotNull final FindBugsResult result, @Nullable final Throwable error) {
+	public void analysisFinished(@NotNull FindBugsResult result, @Nullable final Throwable error) {
+		if (merge) {
+			merge = false;
+			//noinspection AssignmentToMethodParameter
+			result = this.result.merge(result);
+			_bugTreePanel.removeStaleNodes(result);
+		}
 		_bugTreePanel.setResult(result);
 		final Integer analyzedClassCount = result.getAnalyzedClassCount();
 		_bugTreePanel.updateRootNode(analyzedClassCount);
@@ -251,6 +277,7 @@ public final class ToolWindowPanel extends JPanel implements AnalysisStateListen
 				.append(numAnalysedClasses > 1 ? " classes" : " class");
 
 		this.result = result;
+		ResultSnapshot.saveLater(_project, result);
 
 		final NotificationType notificationType;
 		if (numAnalysedClasses == 0) {
@@ -285,7 +312,7 @@ public final class ToolWindowPanel extends JPanel implements AnalysisStateListen
 			LOGGER.error(error);
 			// use balloon because error should never disabled
 			BalloonTipFactory.showToolWindowErrorNotifier(_project, message.toString(), new BalloonErrorListenerImpl(ToolWindowPanel.this, result, ideMessagePanel));
-		} else {
+		} else if (!result.isRestored()) {
 			message.append("<a href='").append(A_HREF_DISABLE_ANCHOR).append("'>Disable notification").append("</a>");
 			NOTIFICATION_GROUP_ANALYSIS_FINISHED.createNotification(
 							VersionManager.getName() + ": Analysis Finished", message.toString(), notificationType)
@@ -25,13 +25,10 @@ import edu.umd.cs.findbugs.BugRankCategory;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import icons.PluginIcons;
 import org.jetbrains.annotations.NotNull;
-import org.jetbrains.annotations.Nullable;
 import org.jetbrains.plugins.spotbugs.core.Bug;
 import org.jetbrains.plugins.spotbugs.gui.tree.BugInstanceComparator;
 import org.jetbrains.plugins.spotbugs.gui.tree.GroupBy;
 import org.jetbrains.plugins.spotbugs.gui.tree.NodeVisitor;
-import org.jetbrains.plugins.spotbugs.gui.tree.RecurseNodeVisitor;
-import org.jetbrains.plugins.spotbugs.gui.tree.RecurseNodeVisitor.RecurseVisitCriteria;
 import org.jetbrains.plugins.spotbugs.gui.tree.view.MaskIcon;
 
 import javax.swing.Icon;
@@ -45,9 +42,10 @@ import java.util.Locale;
 
 public final class BugInstanceGroupNode extends AbstractTreeNode<VisitableTreeNode> implements VisitableTreeNode {
 
+	private static final Comparator<TreeNode> CHILD_COMPARATOR = new ChildComparator();
+
 	private final List<VisitableTreeNode> _children;
 	private final Bug bug;
-	private final RecurseNodeVisitor<BugInstanceGroupNode> _recurseNodeVisitor = new RecurseNodeVisitor<>(this);
 	private final Project _project;
 
 	/**
@@ -83,25 +81,49 @@ public final class BugInstanceGroupNode extends AbstractTreeNode<VisitableTreeNo
 
 	@Override
 	public void addChild(final VisitableTreeNode node) {
-		_children.add(node);
 		if (node instanceof BugInstanceNode && node.isLeaf()) {
-			_children.sort(new ChildComparator());
+			_children.add(findInsertionIndex(node), node);
 			incrementMemberCount();
 			TreeNode treeNode = getParent();
 			while (treeNode instanceof BugInstanceGroupNode) {
 				((BugInstanceGroupNode) treeNode).incrementMemberCount();
 				treeNode = treeNode.getParent();
 			}
+		} else {
+			_children.add(node);
+		}
+	}
+
+	/**
+	 * Removes a leaf added by {@link #addChild(VisitableTreeNode)} and updates the member count of this group
+	 * and all parent groups.
+	 */
+	void removeLeaf(@NotNull final BugInstanceNode node) {
+		if (_children.remove(node)) {
+			TreeNode treeNode = this;
+			while (treeNode instanceof BugInstanceGroupNode) {
+				((BugInstanceGroupNode) treeNode).decrementMemberCount();
+				treeNode = treeNode.getParent();
+			}
 		}
 	}
 
-	@Nullable
-	public BugInstanceGroupNode findChildNode(final Bug bug, final int depth, final String groupName) {
-		if (Bug.equalsBugType(this.bug, bug) && depth == _depthFromRoot && groupName.equals(_groupName)) {
-			return this;
+	/**
+	 * Binary search for the index behind the last child which is equal to {@code node},
+	 * so that the children stay sorted (and stable) without resorting on each insert.
+	 */
+	private int findInsertionIndex(@NotNull final VisitableTreeNode node) {
+		int low = 0;
+		int high = _children.size();
+		while (low < high) {
+			final int mid = (low + high) >>> 1;
+			if (CHILD_COMPARATOR.compare(_children.get(mid), node) <= 0) {
+				low = mid + 1;
+			} else {
+				high = mid;
+			}
 		}
-		final RecurseVisitCriteria criteria = new RecurseVisitCriteria(bug, depth, groupName);
-		return _recurseNodeVisitor.findChildNode(criteria);
+		return low;
 	}
 
 	@Override
@@ -184,6 +206,10 @@ public final class BugInstanceGroupNode extends AbstractTreeNode<VisitableTreeNo
 		++_memberCount;
 	}
 
+	private void decrementMemberCount() {
+		--_memberCount;
+	}
+
 	public Bug getBug() {
 		return bug;
 	}
@@ -231,7 +257,6 @@ public final class BugInstanceGroupNode extends AbstractTreeNode<VisitableTreeNo
 		return "BugInstanceGroupNode" +
 					 "{_childs=" + _children +
 					 ", bug=" + bug +
-					 ", _recurseNodeVisitor=" + _recurseNodeVisitor +
 					 '}';
 	}
 
@@ -97,6 +97,13 @@ public class BugInstanceNode extends AbstractTreeNode<VisitableTreeNode> impleme
 		return _file;
 	}
 
+	/**
+	 * Used by {@link PsiFileResolver} to share one resolved file with all bugs of the same class.
+	 */
+	void setPsiFile(@Nullable final PsiFile file) {
+		_file = file;
+	}
+
 	@NotNull
 	public Bug getBug() {
 		return bug;
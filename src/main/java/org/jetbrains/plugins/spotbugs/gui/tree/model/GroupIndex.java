@@ -0,0 +1,160 @@
+/*
+ * Copyright 2020 SpotBugs plugin contributors
+ *
+ * This file is part of IntelliJ SpotBugs plugin.
+ *
+ * IntelliJ SpotBugs plugin is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ *
+ * IntelliJ SpotBugs plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with IntelliJ SpotBugs plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jetbrains.plugins.spotbugs.gui.tree.model;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.plugins.spotbugs.core.Bug;
+import org.jetbrains.plugins.spotbugs.gui.tree.GroupBy;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Hash based lookup of the group nodes of a {@link GroupTreeModel}.
+ * <p>
+ * Every group level maps the group name of its children to the child group node, so locating (or creating) the
+ * group path of a bug costs one hash lookup per {@link GroupBy} level regardless of the number of groups.
+ * The group names of a bug are computed once per {@link GroupBy} and are kept across regrouping.
+ */
+final class GroupIndex {
+
+	private static final GroupBy[] GROUP_BY_VALUES = GroupBy.values();
+
+	private final Map<String, BugInstanceGroupNode> _topLevelGroups;
+	private final Map<BugInstanceGroupNode, Map<String, BugInstanceGroupNode>> _subGroups;
+	private final Map<Bug, BugInstanceNode> _leafs;
+	private final Map<Bug, String[]> _groupNames;
+
+
+	GroupIndex() {
+		_topLevelGroups = new HashMap<>();
+		_subGroups = new IdentityHashMap<>();
+		_leafs = new LinkedHashMap<>();
+		_groupNames = new HashMap<>();
+	}
+
+
+	/**
+	 * @return the group name of {@code bug} for {@code groupBy}; computed on first access only
+	 */
+	@NotNull
+	String getGroupName(@NotNull final Bug bug, @NotNull final GroupBy groupBy) {
+		final String[] names = _groupNames.computeIfAbsent(bug, k -> new String[GROUP_BY_VALUES.length]);
+		String name = names[groupBy.ordinal()];
+		if (name == null) {
+			name = GroupBy.getGroupName(groupBy, bug);
+			names[groupBy.ordinal()] = name;
+		}
+		return name;
+	}
+
+
+	/**
+	 * @param parent    the parent group or {@code null} for a top level group
+	 * @param groupName the group name of the wanted child group
+	 */
+	@Nullable
+	BugInstanceGroupNode getGroup(@Nullable final BugInstanceGroupNode parent, @NotNull final String groupName) {
+		if (parent == null) {
+			return _topLevelGroups.get(groupName);
+		}
+		final Map<String, BugInstanceGroupNode> children = _subGroups.get(parent);
+		return children != null ? children.get(groupName) : null;
+	}
+
+
+	void putGroup(@Nullable final BugInstanceGroupNode parent, @NotNull final String groupName, @NotNull final BugInstanceGroupNode group) {
+		if (parent == null) {
+			_topLevelGroups.put(groupName, group);
+		} else {
+			_subGroups.computeIfAbsent(parent, k -> new HashMap<>()).put(groupName, group);
+		}
+	}
+
+
+	/**
+	 * The model adds at most one leaf per bug, see {@link #getLeaf(Bug)}.
+	 */
+	void putLeaf(@NotNull final BugInstanceNode leaf) {
+		_leafs.put(leaf.getBug(), leaf);
+	}
+
+
+	@Nullable
+	BugInstanceNode getLeaf(@NotNull final Bug bug) {
+		return _leafs.get(bug);
+	}
+
+
+	/**
+	 * @return the removed leaf of {@code bug} or {@code null} if {@code bug} is not indexed
+	 */
+	@Nullable
+	BugInstanceNode removeLeaf(@NotNull final Bug bug) {
+		_groupNames.remove(bug);
+		return _leafs.remove(bug);
+	}
+
+
+	/**
+	 * @param parent the parent group or {@code null} for a top level group
+	 * @param group  the (empty) group to forget
+	 */
+	void removeGroup(@Nullable final BugInstanceGroupNode parent, @NotNull final BugInstanceGroupNode group) {
+		if (parent == null) {
+			_topLevelGroups.remove(group.getGroupName(), group);
+		} else {
+			final Map<String, BugInstanceGroupNode> children = _subGroups.get(parent);
+			if (children != null) {
+				children.remove(group.getGroupName(), group);
+			}
+		}
+		_subGroups.remove(group);
+	}
+
+
+	/**
+	 * @return all indexed bugs in insertion order
+	 */
+	@NotNull
+	Collection<Bug> getBugs() {
+		return _leafs.keySet();
+	}
+
+
+	/**
+	 * Forget all nodes but keep the cached group names (used when the same bugs are regrouped).
+	 */
+	void clearNodes() {
+		_topLevelGroups.clear();
+		_subGroups.clear();
+		_leafs.clear();
+	}
+
+
+	void clear() {
+		clearNodes();
+		_groupNames.clear();
+	}
+}
@@ -19,38 +19,47 @@
  */
 package org.jetbrains.plugins.spotbugs.gui.tree.model;
 
-import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.project.Project;
 import com.intellij.psi.PsiFile;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.plugins.spotbugs.common.EventDispatchThreadHelper;
 import org.jetbrains.plugins.spotbugs.common.ExtendedProblemDescriptor;
-import org.jetbrains.plugins.spotbugs.common.util.BugInstanceUtil;
 import org.jetbrains.plugins.spotbugs.core.Bug;
 import org.jetbrains.plugins.spotbugs.core.ProblemCacheService;
-import org.jetbrains.plugins.spotbugs.gui.tree.BugInstanceComparator;
 import org.jetbrains.plugins.spotbugs.gui.tree.GroupBy;
 
 import javax.annotation.Nullable;
+import javax.swing.tree.TreeNode;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
-import java.util.Comparator;
-import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
+import java.util.Set;
 
-public class GroupTreeModel extends AbstractTreeModel<VisitableTreeNode, RootNode> implements Grouper.GrouperCallback<Bug> {
+public class GroupTreeModel extends AbstractTreeModel<VisitableTreeNode, RootNode> {
 
 	private static final Logger LOGGER = Logger.getInstance(GroupTreeModel.class.getName());
 
 	private GroupBy[] _groupBy;
-	private final transient Map<String, Map<Integer, List<BugInstanceGroupNode>>> _groups;
-	private transient Grouper<Bug> _grouper;
+	private final transient GroupIndex _groupIndex;
 	private int _bugCount;
-	private final transient Map<PsiFile, List<ExtendedProblemDescriptor>> _problems;
+	private final transient ProblemCacheService _problems;
+	private final transient PsiFileResolver _psiFileResolver;
+
+	/**
+	 * The problem registered in {@link ProblemCacheService} for a leaf; required to remove it again.
+	 */
+	private final transient Map<BugInstanceNode, ExtendedProblemDescriptor> _problemByLeaf;
+
+	/**
+	 * Groups whose children changed during the current {@link #addNodes(Collection)} batch; {@code null} outside of a batch.
+	 */
+	@Nullable
+	private transient Set<VisitableTreeNode> _changedGroups;
 
 	@NotNull
 	private final transient Project _project;
@@ -60,59 +69,47 @@ public class GroupTreeModel extends AbstractTreeModel<VisitableTreeNode, RootNod
 		_root = root;
 		_project = project;
 		_groupBy = groupBy.clone();
-		_groups = new HashMap<>();
-		_problems = project.getService(ProblemCacheService.class).getProblems();
+		_groupIndex = new GroupIndex();
+		_problemByLeaf = new IdentityHashMap<>();
+		_problems = project.getService(ProblemCacheService.class);
+		_psiFileResolver = new PsiFileResolver(project, this::addProblems);
 	}
 
 	Project getProject() {
 		return _project;
 	}
 
-	private void addGroupIfAbsent(final String groupNameKey, final int depth, final BugInstanceGroupNode groupNode) {
-		if (!_groups.containsKey(groupNameKey)) {
-			final Map<Integer, List<BugInstanceGroupNode>> map = new HashMap<>();
-			_groups.put(groupNameKey, map);
-			final List<BugInstanceGroupNode> groupNodes = addGroupIfAbsentImpl(groupNameKey, depth, groupNode);
-			map.put(depth, groupNodes);
-		} else {
-			addGroupIfAbsentImpl(groupNameKey, depth, groupNode);
-		}
-	}
-
-	@NotNull
-	private List<BugInstanceGroupNode> addGroupIfAbsentImpl(final String groupNameKey, final int depth, final BugInstanceGroupNode groupNode) {
-		final Map<Integer, List<BugInstanceGroupNode>> map = _groups.get(groupNameKey);
-
-		final List<BugInstanceGroupNode> list = map.computeIfAbsent(depth, k -> new ArrayList<>());
-		list.add(groupNode);
-		return list;
-	}
-
 	@SuppressWarnings({"ReturnOfCollectionOrArrayField"})
 	public Map<PsiFile, List<ExtendedProblemDescriptor>> getProblems() {
-		return _problems;
+		return _problems.getProblems();
 	}
 
-	@SuppressWarnings({"MethodMayBeStatic", "AnonymousInnerClass"})
 	private void addProblem(final BugInstanceNode leaf) {
-    ApplicationManager.getApplication().executeOnPooledThread(() -> {
-      final PsiFile psiFile = leaf.getPsiFile();
-      _addProblem(psiFile, leaf);
+		_psiFileResolver.enqueue(leaf);
+	}
 
-      ApplicationManager.getApplication().invokeLater(() -> nodeStructureChanged(leaf.getParent()));
-    });
+	/**
+	 * Invoked by EDT with a batch of leafs whose {@link PsiFile} was resolved by {@link PsiFileResolver}.
+	 */
+	private void addProblems(@NotNull final List<BugInstanceNode> leafs) {
+		final Set<VisitableTreeNode> changedGroups = new LinkedHashSet<>();
+		for (final BugInstanceNode leaf : leafs) {
+			if (_groupIndex.getLeaf(leaf.getBug()) != leaf) {
+				continue; // removed in the meantime
+			}
+			_addProblem(leaf.getPsiFile(), leaf);
+			changedGroups.add(leaf.getParent());
+		}
+		for (final VisitableTreeNode group : changedGroups) {
+			nodeStructureChanged(group);
+		}
 	}
 
 	private void _addProblem(@Nullable final PsiFile value, final BugInstanceNode leaf) {
 		if (value != null) {
-			final ExtendedProblemDescriptor element = new ExtendedProblemDescriptor(value, leaf.getBug());
-			if (_problems.containsKey(value)) {
-				_problems.get(value).add(element);
-			} else {
-				final List<ExtendedProblemDescriptor> list = new ArrayList<>();
-				list.add(element);
-				_problems.put(value, list);
-			}
+			final ExtendedProblemDescriptor problem = new ExtendedProblemDescriptor(value, leaf.getBug());
+			_problemByLeaf.put(leaf, problem);
+			_problems.addProblem(value, problem);
 		}
 	}
 
@@ -122,117 +119,138 @@ public class GroupTreeModel extends AbstractTreeModel<VisitableTreeNode, RootNod
 	}
 
 	@SuppressWarnings({"LockAcquiredButNotSafelyReleased"})
-	public void addNode(@NotNull final Bug bug) {
+	private void addNode(@NotNull final Bug bug) {
 		/*if(isHiddenBugGroup(bugInstance)) {
 			return;
 		}*/
+		if (_groupIndex.getLeaf(bug) != null) {
+			return; // an equal bug is shown already, a second leaf could never be found or removed
+		}
 		_bugCount++;
 		group(bug);
 	}
 
-	private void group(@NotNull final Bug bug) {
-		if (_grouper == null) {
-			_grouper = new Grouper<>(this);
+	/**
+	 * Adds a chunk of bugs and fires one structure event per touched group (or a single one for the root if new
+	 * top level groups were created) instead of one event per inserted node.
+	 */
+	public void addNodes(@NotNull final Collection<Bug> bugs) {
+		EventDispatchThreadHelper.checkEDT();
+		if (bugs.isEmpty()) {
+			return;
+		}
+		final Set<VisitableTreeNode> changedGroups = new LinkedHashSet<>();
+		_changedGroups = changedGroups;
+		try {
+			for (final Bug bug : bugs) {
+				addNode(bug);
+			}
+		} finally {
+			_changedGroups = null;
+		}
+		for (final VisitableTreeNode group : changedGroups) {
+			if (!hasChangedAncestor(group, changedGroups)) {
+				nodeStructureChanged(group);
+			}
 		}
-		final List<Comparator<Bug>> groupComparators = BugInstanceComparator.getGroupComparators(_groupBy);
-		_grouper.group(bug, groupComparators);
 	}
 
-	@Override
-	public void startGroup(final Bug member, final int depth) {
-		EventDispatchThreadHelper.assertInEDTorADT();
-
-		final GroupBy groupBy = _groupBy[depth];
-		final String groupName = GroupBy.getGroupName(groupBy, member);
-		final BugInstanceGroupNode groupNode = new BugInstanceGroupNode(groupBy, groupName, _root, member, depth, _project);
-
-		addGroupIfAbsent(Arrays.toString(BugInstanceUtil.getGroupPath(member, depth, _groupBy)), depth, groupNode);
-
-		_root.addChild(groupNode);
-		nodeStructureChanged(_root);
-
-		startSubGroup(depth + 1, member, member);
+	/**
+	 * Removes the given bugs (if present) and prunes groups which become empty.
+	 * Fires one structure event per touched group like {@link #addNodes(Collection)}.
+	 */
+	public void removeNodes(@NotNull final Collection<Bug> bugs) {
+		EventDispatchThreadHelper.checkEDT();
+		final Set<VisitableTreeNode> changedGroups = new LinkedHashSet<>();
+		for (final Bug bug : bugs) {
+			final BugInstanceNode leaf = _groupIndex.removeLeaf(bug);
+			if (leaf == null) {
+				continue;
+			}
+			_bugCount--;
+			final ExtendedProblemDescriptor problem = _problemByLeaf.remove(leaf);
+			if (problem != null) {
+				_problems.removeProblem(problem.getPsiFile(), problem);
+			}
+			BugInstanceGroupNode group = (BugInstanceGroupNode) leaf.getParent();
+			group.removeLeaf(leaf);
+			VisitableTreeNode changed = group;
+			while (group != null && group.getChildCount() == 0) {
+				final VisitableTreeNode parent = group.getParent();
+				final BugInstanceGroupNode parentGroup = parent instanceof BugInstanceGroupNode ? (BugInstanceGroupNode) parent : null;
+				_groupIndex.removeGroup(parentGroup, group);
+				if (parentGroup == null) {
+					_root.removeChild(group);
+				} else {
+					parentGroup.removeChild(group);
+				}
+				changedGroups.remove(group);
+				changed = parent;
+				group = parentGroup;
+			}
+			changedGroups.add(changed);
+		}
+		for (final VisitableTreeNode group : changedGroups) {
+			if (!hasChangedAncestor(group, changedGroups)) {
+				nodeStructureChanged(group);
+			}
+		}
 	}
 
-	@Override
-	public void startSubGroup(final int depth, final Bug member, final Bug parent) {
-		EventDispatchThreadHelper.assertInEDTorADT();
-
-		String groupName = GroupBy.getGroupName(_groupBy[depth - 1], member);
-		final BugInstanceGroupNode parentGroup = _root.findChildNode(parent, depth - 1, groupName);
-
-		//final BugInstanceGroupNode parentGroup = ((RootNode) _root).getChildByBugInstance(parent, depth - 1);
-		//final BugInstanceGroupNode parentGroup = ((RootNode) _root).getChildByGroupName(GroupBy.getGroupName(_groupBy[depth - 1], parent), depth - 1);
-		//final BugInstanceGroupNode parentGroup = _groups.get(depth-1 + Arrays.toString(getGroupPath(member)));
-
-		if (parentGroup != null) {
-			final GroupBy groupBy = _groupBy[depth];
-			groupName = GroupBy.getGroupName(groupBy, member);
-			final BugInstanceGroupNode childGroup = new BugInstanceGroupNode(groupBy, groupName, parentGroup, member, depth, _project);
-
-			addGroupIfAbsent(Arrays.toString(BugInstanceUtil.getGroupPath(parent, depth, _groupBy)), depth, childGroup);
-			//addGroupIfAbsent(GroupBy.getGroupName(_groupBy[0], parent), depth, childGroup);
-
-			parentGroup.addChild(childGroup);
-			nodeStructureChanged(parentGroup);
-
-			if (depth < _groupBy.length - 1) {
-				startSubGroup(depth + 1, member, member);
-			} else {
-				addToGroup(depth, member, member);
+	private static boolean hasChangedAncestor(@NotNull final VisitableTreeNode node, @NotNull final Set<VisitableTreeNode> changedGroups) {
+		TreeNode parent = node.getParent();
+		while (parent != null) {
+			//noinspection SuspiciousMethodCalls
+			if (changedGroups.contains(parent)) {
+				return true;
 			}
-		} else {
-			String message =
-					"parentGroup can not be null: groupName = " + groupName + "; depth = " + depth + "; parent = " + parent;
-			LOGGER.error(new NullPointerException(message));
+			parent = parent.getParent();
 		}
-
-
+		return false;
 	}
 
-	@Override
-	public void addToGroup(final int depth, final Bug member, final Bug parent) {
-		EventDispatchThreadHelper.checkEDT();
-
-		final String groupName = GroupBy.getGroupName(_groupBy[depth], member);
-		final BugInstanceGroupNode parentGroup = _root.findChildNode(parent, depth, groupName);
-
-		if (parentGroup != null) {
-			final BugInstanceNode childNode = new BugInstanceNode(member, parentGroup, _project);
-			parentGroup.addChild(childNode);
-			addProblem(childNode);
+	private void groupStructureChanged(@NotNull final VisitableTreeNode group) {
+		if (_changedGroups != null) {
+			_changedGroups.add(group);
 		} else {
-			//noinspection ThrowableInstanceNeverThrown
-			LOGGER.error("parentSubGroup can not be null. ", new NullPointerException());
+			nodeStructureChanged(group);
 		}
 	}
 
-	@Override
-	public Comparator<Bug> currentGroupComparatorChain(final int depth) {
-		return BugInstanceComparator.getComparatorChain(depth, getGroupBy());
-	}
-
-	@Override
-	public List<Bug> availableGroups(final int depth, @NotNull final Bug bug) {
-    final List<Bug> result = new ArrayList<>();
-
-		//final GroupBy groupBy = _groupBy[0];
-		//final String groupName = GroupBy.getGroupName(groupBy, bug);
-		final String groupName = Arrays.toString(BugInstanceUtil.getGroupPath(bug, depth, _groupBy));
-
-		if (_groups.containsKey(groupName)) {
-			final Map<Integer, List<BugInstanceGroupNode>> map = _groups.get(groupName);
-
-			if (map.containsKey(depth)) {
-				final List<BugInstanceGroupNode> groupNodes = map.get(depth);
+	private void group(@NotNull final Bug bug) {
+		EventDispatchThreadHelper.checkEDT();
 
-				for (final BugInstanceGroupNode node : groupNodes) {
-					result.add(node.getBug());
+		VisitableTreeNode parent = _root;
+		BugInstanceGroupNode group = null;
+		for (int depth = 0; depth < _groupBy.length; depth++) {
+			final GroupBy groupBy = _groupBy[depth];
+			final String groupName = _groupIndex.getGroupName(bug, groupBy);
+			BugInstanceGroupNode child = _groupIndex.getGroup(group, groupName);
+			if (child == null) {
+				child = new BugInstanceGroupNode(groupBy, groupName, parent, bug, depth, _project);
+				_groupIndex.putGroup(group, groupName, child);
+				if (group == null) {
+					_root.addChild(child);
+				} else {
+					group.addChild(child);
 				}
+				groupStructureChanged(parent);
 			}
+			parent = child;
+			group = child;
 		}
 
-		return result;
+		if (group != null) {
+			final BugInstanceNode childNode = new BugInstanceNode(bug, group, _project);
+			group.addChild(childNode);
+			_groupIndex.putLeaf(childNode);
+			if (_changedGroups != null) {
+				_changedGroups.add(group);
+			}
+			addProblem(childNode);
+		} else {
+			LOGGER.error("No group by order defined: " + Arrays.toString(_groupBy));
+		}
 	}
 
 	public void setGroupBy(final GroupBy[] groupBy) {
@@ -248,7 +266,9 @@ public class GroupTreeModel extends AbstractTreeModel<VisitableTreeNode, RootNod
 
 		//_sortedCollection.clear();
 		_bugCount = 0;
-		_groups.clear();
+		_groupIndex.clear();
+		_problemByLeaf.clear();
+		_psiFileResolver.clear();
 		_problems.clear();
 		_root.removeAllChilds();
 		nodeStructureChanged(_root);
@@ -256,34 +276,31 @@ public class GroupTreeModel extends AbstractTreeModel<VisitableTreeNode, RootNod
 
 	}
 
+	/**
+	 * Rebuilds the tree for the current {@link #getGroupBy() group order} from the given bugs.
+	 * Unlike {@link #clear()} followed by {@link #addNodes(Collection)} this keeps the already computed group names.
+	 */
+	public void regroup(@NotNull final Collection<Bug> bugs) {
+		EventDispatchThreadHelper.checkEDT();
+
+		_bugCount = 0;
+		_groupIndex.clearNodes();
+		_problemByLeaf.clear();
+		_psiFileResolver.cancelPending();
+		_problems.clear();
+		_root.removeAllChilds();
+		addNodes(bugs);
+		reload();
+	}
+
 	@Nullable
 	public BugInstanceNode findNodeByBugInstance(final Bug bug) {
-		final String[] fullGroupPath = BugInstanceUtil.getFullGroupPath(bug, _groupBy);
-		final String[] groupNameKey = BugInstanceUtil.getGroupPath(bug, fullGroupPath.length - 1, _groupBy);
-
-		final Map<Integer, List<BugInstanceGroupNode>> map = _groups.get(Arrays.toString(groupNameKey));
-		if (map != null) {
-			for (final Entry<Integer, List<BugInstanceGroupNode>> entry : map.entrySet()) {
-
-				final List<BugInstanceGroupNode> groupNodes = entry.getValue();
-				for (final BugInstanceGroupNode groupNode : groupNodes) {
-
-					final List<VisitableTreeNode> bugInstanceNodes = groupNode.getChildsList();
-					for (final VisitableTreeNode node : bugInstanceNodes) {
-						final Bug otherBug = ((BugInstanceNode) node).getBug();
-						if (otherBug.equals(bug)) {
-							return (BugInstanceNode) node;
-						}
-					}
-				}
-			}
-		}
-		return null;
+		return _groupIndex.getLeaf(bug);
 	}
 
 	@NotNull
 	public Collection<Bug> getBugs() {
-		return _root.getAllChildBugs();
+		return new ArrayList<>(_groupIndex.getBugs());
 	}
 
 	/**
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2020 SpotBugs plugin contributors
+ *
+ * This file is part of IntelliJ SpotBugs plugin.
+ *
+ * IntelliJ SpotBugs plugin is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ *
+ * IntelliJ SpotBugs plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with IntelliJ SpotBugs plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jetbrains.plugins.spotbugs.gui.tree.model;
+
+import com.intellij.openapi.module.Module;
+import com.intellij.openapi.progress.ProcessCanceledException;
+import com.intellij.openapi.project.DumbService;
+import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.Pair;
+import com.intellij.psi.PsiClass;
+import com.intellij.psi.PsiFile;
+import com.intellij.util.concurrency.AppExecutorUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.plugins.spotbugs.common.EventDispatchThreadHelper;
+import org.jetbrains.plugins.spotbugs.common.util.IdeaUtilImpl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+
+/**
+ * Resolves the {@link PsiFile} of {@link BugInstanceNode}s on one background thread.
+ * <p>
+ * Leafs are grouped by module and source path, so each distinct class is looked up only once and the resulting
+ * file is shared by all of its bugs. Resolved leafs are reported back to the EDT in batches.
+ */
+final class PsiFileResolver {
+
+	private static final int MAX_BATCH_SIZE = 500;
+	private static final long MAX_BATCH_DELAY_MS = 200;
+
+	@NotNull
+	private final Project _project;
+
+	@NotNull
+	private final Consumer<List<BugInstanceNode>> _onResolved;
+
+	private final ExecutorService _executor;
+	private final Object _lock = new Object();
+
+	/**
+	 * Guarded by {@link #_lock}.
+	 */
+	private Map<Pair<Module, String>, List<BugInstanceNode>> _pending;
+	private boolean _scheduled;
+	private int _generation;
+	private boolean _forgetResolved;
+
+	/**
+	 * Only accessed by the resolver thread (reset from there too, see {@link #resolve()}).
+	 */
+	private final Map<Pair<Module, String>, PsiFile> _resolved;
+
+
+	/**
+	 * @param onResolved invoked by EDT with a batch of leafs whose file was resolved (never empty)
+	 */
+	PsiFileResolver(@NotNull final Project project, @NotNull final Consumer<List<BugInstanceNode>> onResolved) {
+		_project = project;
+		_onResolved = onResolved;
+		_executor = AppExecutorUtil.createBoundedApplicationPoolExecutor("SpotBugs PsiFile Resolver", 1);
+		_pending = new LinkedHashMap<>();
+		_resolved = new HashMap<>();
+	}
+
+
+	void enqueue(@NotNull final BugInstanceNode leaf) {
+		final Pair<Module, String> key = Pair.create(leaf.getBug().getModule(), leaf.getSourcePath());
+		synchronized (_lock) {
+			_pending.computeIfAbsent(key, k -> new ArrayList<>()).add(leaf);
+			if (!_scheduled) {
+				_scheduled = true;
+				_executor.execute(this::resolve);
+			}
+		}
+	}
+
+
+	/**
+	 * Drops all pending leafs; results of running lookups are discarded.
+	 * The already resolved files are kept for the next leafs (f. e. the same bugs regrouped).
+	 */
+	void cancelPending() {
+		synchronized (_lock) {
+			_pending = new LinkedHashMap<>();
+			_generation++;
+		}
+	}
+
+
+	/**
+	 * Like {@link #cancelPending()} but also forgets the already resolved files.
+	 */
+	void clear() {
+		synchronized (_lock) {
+			cancelPending();
+			_forgetResolved = true;
+		}
+	}
+
+
+	private void resolve() {
+		while (true) {
+			final Map<Pair<Module, String>, List<BugInstanceNode>> pending;
+			final int generation;
+			final boolean forgetResolved;
+			synchronized (_lock) {
+				if (_pending.isEmpty()) {
+					_scheduled = false;
+					return;
+				}
+				pending = _pending;
+				_pending = new LinkedHashMap<>();
+				generation = _generation;
+				forgetResolved = _forgetResolved;
+				_forgetResolved = false;
+			}
+			if (forgetResolved) {
+				_resolved.clear();
+			}
+
+			List<BugInstanceNode> batch = new ArrayList<>();
+			long batchStart = System.currentTimeMillis();
+			for (final Map.Entry<Pair<Module, String>, List<BugInstanceNode>> entry : pending.entrySet()) {
+				if (_project.isDisposed() || isStale(generation)) {
+					break;
+				}
+				final PsiFile file;
+				try {
+					file = findPsiFile(entry.getKey());
+				} catch (final ProcessCanceledException e) {
+					break; // project closed while waiting for the index
+				}
+				for (final BugInstanceNode leaf : entry.getValue()) {
+					leaf.setPsiFile(file);
+				}
+				if (file != null) {
+					batch.addAll(entry.getValue());
+				}
+				if (batch.size() >= MAX_BATCH_SIZE || (!batch.isEmpty() && System.currentTimeMillis() - batchStart >= MAX_BATCH_DELAY_MS)) {
+					publish(batch, generation);
+					batch = new ArrayList<>();
+					batchStart = System.currentTimeMillis();
+				}
+			}
+			publish(batch, generation);
+		}
+	}
+
+
+	/**
+	 * Waits for the end of indexing (f. e. bugs restored while the project is opened). Misses are not remembered,
+	 * the class may be found later (f. e. after the index is complete or the source was added).
+	 */
+	@Nullable
+	private PsiFile findPsiFile(@NotNull final Pair<Module, String> key) {
+		PsiFile file = _resolved.get(key);
+		if (file == null || !file.isValid()) {
+			file = DumbService.getInstance(_project).runReadActionInSmartMode(() -> {
+				final PsiClass psiClass = IdeaUtilImpl.findJavaPsiClass(_project, key.getFirst(), key.getSecond());
+				return psiClass != null ? psiClass.getContainingFile() : null;
+			});
+			if (file != null) {
+				_resolved.put(key, file);
+			} else {
+				_resolved.remove(key);
+			}
+		}
+		return file;
+	}
+
+
+	private boolean isStale(final int generation) {
+		synchronized (_lock) {
+			return generation != _generation;
+		}
+	}
+
+
+	private void publish(@NotNull final List<BugInstanceNode> batch, final int generation) {
+		if (batch.isEmpty()) {
+			return;
+		}
+		EventDispatchThreadHelper.invokeLater(() -> {
+			if (!_project.isDisposed() && !isStale(generation)) {
+				_onResolved.accept(batch);
+			}
+		});
+	}
+}
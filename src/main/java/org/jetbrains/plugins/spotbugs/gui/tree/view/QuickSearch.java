@@ -19,6 +19,7 @@
  */
 package org.jetbrains.plugins.spotbugs.gui.tree.view;
 
+import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.wm.IdeFocusManager;
 import com.intellij.ui.JBColor;
@@ -27,6 +28,7 @@ import com.intellij.ui.scale.JBUIScale;
 import icons.PluginIcons;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.plugins.spotbugs.common.EventDispatchThreadHelper;
 import org.jetbrains.plugins.spotbugs.gui.common.ToolBarButton;
 import org.jetbrains.plugins.spotbugs.common.util.GuiUtil;
 import org.jetbrains.plugins.spotbugs.gui.common.AbstractBar;
@@ -74,11 +76,11 @@ import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseMotionAdapter;
+import java.util.Arrays;
 import java.util.List;
 import java.util.ListIterator;
 import java.util.Stack;
-import java.util.regex.Pattern;
-import java.util.regex.PatternSyntaxException;
+import java.util.function.IntConsumer;
 
 
 /**
@@ -93,6 +95,7 @@ import java.util.regex.PatternSyntaxException;
 abstract class QuickSearch<E> {
 
 	private static final Logger LOGGER = Logger.getInstance(QuickSearch.class.getName());
+	private static final int BACKGROUND_SEARCH_THRESHOLD = 5000;
 
 	private int _searchDelay = 500;
 	private boolean _searchActivated;
@@ -110,6 +113,12 @@ abstract class QuickSearch<E> {
 	private Color _backgroundColor = new JBColor(new Color(255, 255, 200), JBColor.LIGHT_GRAY);
 	private final Stack<String> _recentSearches;
 
+	private String[] _elementTexts;
+	private String[] _lowerCaseElementTexts;
+	private QuickSearchMatcher _matcher;
+	private int[] _matches;
+	private int _searchGeneration;
+
 
 	QuickSearch() {
 		_recentSearches = new Stack<String>();
@@ -417,6 +426,88 @@ abstract class QuickSearch<E> {
 	}
 
 
+	/**
+	 * Must be called whenever the elements (or their string representation) change.
+	 */
+	protected void invalidateSearchCache() {
+		//noinspection AssignmentToNull
+		_elementTexts = null;
+		//noinspection AssignmentToNull
+		_lowerCaseElementTexts = null;
+		//noinspection AssignmentToNull
+		_matcher = null;
+		//noinspection AssignmentToNull
+		_matches = null;
+		_searchGeneration++;
+	}
+
+
+	private void ensureElementTexts() {
+		if (_elementTexts == null) {
+			final int count = getElementCount();
+			final String[] texts = new String[count];
+			final String[] lowerCaseTexts = new String[count];
+			for (int i = 0; i < count; i++) {
+				final E element = getElementAt(i);
+				texts[i] = element != null ? convertElementToString(element) : null;
+				lowerCaseTexts[i] = QuickSearchMatcher.toLowerCase(texts[i]);
+			}
+			_elementTexts = texts;
+			_lowerCaseElementTexts = lowerCaseTexts;
+		}
+	}
+
+
+	/**
+	 * @return the indices of all elements matching {@code text}; narrows the previous matches if possible
+	 */
+	@NotNull
+	private int[] getMatches(@NotNull final String text) {
+		if (_matcher != null && _matches != null && _matcher.getSearchText().equals(text)) {
+			return _matches;
+		}
+		ensureElementTexts();
+		final QuickSearchMatcher matcher = new QuickSearchMatcher(text);
+		_matches = matcher.findMatches(_elementTexts, _lowerCaseElementTexts, matcher.narrows(_matcher) ? _matches : null);
+		_matcher = matcher;
+		return _matches;
+	}
+
+
+	/**
+	 * Like {@link #find(String)} but scans large element lists on a pooled thread.
+	 * {@code onFound} is invoked by EDT, unless the search was superseded by a newer one or the elements changed.
+	 */
+	private void findAsync(@NotNull final String text, @NotNull final IntConsumer onFound) {
+		if (getElementCount() == 0) {
+			onFound.accept(-1);
+			return;
+		}
+		ensureElementTexts();
+		final QuickSearchMatcher matcher = new QuickSearchMatcher(text);
+		final int[] candidates = matcher.narrows(_matcher) ? _matches : null;
+		final int scanSize = candidates != null ? candidates.length : _elementTexts.length;
+		if (scanSize < BACKGROUND_SEARCH_THRESHOLD) {
+			onFound.accept(find(text));
+			return;
+		}
+
+		final int generation = ++_searchGeneration;
+		final String[] texts = _elementTexts;
+		final String[] lowerCaseTexts = _lowerCaseElementTexts;
+		ApplicationManager.getApplication().executeOnPooledThread(() -> {
+			final int[] matches = matcher.findMatches(texts, lowerCaseTexts, candidates);
+			EventDispatchThreadHelper.invokeLater(() -> {
+				if (generation == _searchGeneration && _popup != null) {
+					_matcher = matcher;
+					_matches = matches;
+					onFound.accept(find(text));
+				}
+			});
+		});
+	}
+
+
 	private int find(final String text) {
 		final int count = getElementCount();
 		if (count == 0) {
@@ -425,31 +516,20 @@ abstract class QuickSearch<E> {
 
 		// find from cursor
 		int cursor = getCursor();
-		if (cursor == -1 && count > 0) {
+		if (cursor == -1) {
 			cursor = 0;
 			setCursor(cursor);
 		}
 
-		for (int i = cursor; i < count; i++) {
-			final E element = getElementAt(i);
-			if (compare(element, text)) {
-				addToRecentSearches(text);
-				return i;
-			}
-		}
-
-		// if not found, search from begin to cursor
-		for (int i = 0; i < cursor; i++) {
-			final E element = getElementAt(i);
-			if (compare(element, text)) {
-				//setCursor(i);
-				addToRecentSearches(text);
-				return i;
-			}
+		final int[] matches = getMatches(text);
+		if (matches.length == 0) {
+			return -1;
 		}
-
-		return -1;
-
+		addToRecentSearches(text);
+		final int index = Arrays.binarySearch(matches, cursor);
+		final int insertion = index >= 0 ? index : -index - 1;
+		// if not found behind the cursor, search from begin to cursor
+		return insertion < matches.length ? matches[insertion] : matches[0];
 	}
 
 
@@ -459,14 +539,10 @@ abstract class QuickSearch<E> {
 			return !text.isEmpty() ? -1 : 0;
 		}
 
-		for (int i = getCursor() + 1; i < count; i++) {
-			final E element = getElementAt(i);
-			if (compare(element, text)) {
-				return i;
-			}
-		}
-
-		return -1;
+		final int[] matches = getMatches(text);
+		final int index = Arrays.binarySearch(matches, getCursor() + 1);
+		final int insertion = index >= 0 ? index : -index - 1;
+		return insertion < matches.length ? matches[insertion] : -1;
 	}
 
 
@@ -476,53 +552,10 @@ abstract class QuickSearch<E> {
 			return !text.isEmpty() ? -1 : 0;
 		}
 
-		for (int i = getCursor() - 1; i >= 0; i--) {
-			final E element = getElementAt(i);
-			if (compare(element, text)) {
-				return i;
-			}
-		}
-
-		return -1;
-	}
-
-
-	protected boolean compare(final E element, final String searchText) {
-		if (searchText == null || searchText.trim().isEmpty()) {
-			return true;
-		}
-
-		final String text = convertElementToString(element);
-		if (text == null) {
-			return false;
-		}
-
-		try {
-			//_pattern = Pattern.compile(isFromStart() ? "^" + s : s, isCaseSensitive() ? 0 : Pattern.CASE_INSENSITIVE);
-			Pattern pattern = Pattern.compile('^' + searchText + '^', 0);
-			boolean found = pattern.matcher(text).find();
-			if (found) {
-				return found;
-			}
-
-			pattern = Pattern.compile('^' + searchText, 0);
-			found = pattern.matcher(text).find();
-			if (found) {
-				return found;
-			}
-
-			pattern = Pattern.compile('^' + searchText, Pattern.CASE_INSENSITIVE);
-			found = pattern.matcher(text).find();
-			if (found) {
-				return found;
-			}
-
-			pattern = Pattern.compile(searchText, Pattern.CASE_INSENSITIVE);
-			found = pattern.matcher(text).find();
-			return found;
-		} catch (final PatternSyntaxException ignore) {
-			return false;
-		}
+		final int[] matches = getMatches(text);
+		final int index = Arrays.binarySearch(matches, getCursor() - 1);
+		final int previous = index >= 0 ? index : -index - 2;
+		return previous >= 0 ? matches[previous] : -1;
 	}
 
 
@@ -624,27 +657,31 @@ abstract class QuickSearch<E> {
 				void doFind() {
 					final String text = _searchField.getText().trim();
 					if (!text.isEmpty()) {
-						final int found = find(text);
-						if (found == -1) {
-							_noMatchForeground = getNoMatchForeground();
-							_searchField.setForeground(_noMatchForeground);
-							_toolBar.setVisible(false);
-							remove(_toolBar);
-							updatePopupBounds();
-						} else {
-							_searchField.setForeground(_foregroundColor);
-							_toolBar.setVisible(true);
-							add(_toolBar, BorderLayout.LINE_END);
-							QuickSearch.this.setCursor(found);
-							setSelectedElement(found);
-							updatePopupBounds();
-						}
+						findAsync(text, this::found);
 					} else {
 						hidePopup();
 					}
 				}
 
 
+				void found(final int found) {
+					if (found == -1) {
+						_noMatchForeground = getNoMatchForeground();
+						_searchField.setForeground(_noMatchForeground);
+						_toolBar.setVisible(false);
+						remove(_toolBar);
+						updatePopupBounds();
+					} else {
+						_searchField.setForeground(_foregroundColor);
+						_toolBar.setVisible(true);
+						add(_toolBar, BorderLayout.LINE_END);
+						QuickSearch.this.setCursor(found);
+						setSelectedElement(found);
+						updatePopupBounds();
+					}
+				}
+
+
 				void startTimer() {
 					updatePopupBounds();
 					if (getSearchDelay() > 0) {
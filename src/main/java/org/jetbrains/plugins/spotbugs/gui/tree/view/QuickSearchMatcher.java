@@ -0,0 +1,132 @@
+/*
+ * Copyright 2020 SpotBugs plugin contributors
+ *
+ * This file is part of IntelliJ SpotBugs plugin.
+ *
+ * IntelliJ SpotBugs plugin is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ *
+ * IntelliJ SpotBugs plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with IntelliJ SpotBugs plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jetbrains.plugins.spotbugs.gui.tree.view;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+
+/**
+ * Search text of {@link QuickSearch} compiled once per keystroke. Plain text is matched as a case insensitive
+ * substring against pre-lowercased element strings, text containing regex meta characters is compiled to a
+ * case insensitive {@link Pattern} (an invalid pattern matches nothing).
+ * <p>
+ * Instances are immutable and {@link #findMatches} only works on the passed arrays, so it may run off the EDT.
+ */
+final class QuickSearchMatcher {
+
+	private static final String REGEX_META_CHARACTERS = "\\^$.|?*+()[]{}";
+
+	@NotNull
+	private final String _searchText;
+
+	@Nullable
+	private final String _lowerCaseText;
+
+	@Nullable
+	private final Pattern _pattern;
+
+
+	QuickSearchMatcher(@NotNull final String searchText) {
+		_searchText = searchText;
+		if (isLiteral(searchText)) {
+			_lowerCaseText = toLowerCase(searchText);
+			_pattern = null;
+		} else {
+			_lowerCaseText = null;
+			Pattern pattern;
+			try {
+				pattern = Pattern.compile(searchText, Pattern.CASE_INSENSITIVE);
+			} catch (final PatternSyntaxException ignore) {
+				pattern = null;
+			}
+			_pattern = pattern;
+		}
+	}
+
+
+	@NotNull
+	String getSearchText() {
+		return _searchText;
+	}
+
+
+	/**
+	 * @param previous the matcher of the last search
+	 * @return {@code true} if every element matched by this matcher was also matched by {@code previous},
+	 * so that only the previous matches have to be checked again (e.g. the user typed one more character)
+	 */
+	boolean narrows(@Nullable final QuickSearchMatcher previous) {
+		return previous != null && _lowerCaseText != null && previous._lowerCaseText != null && _lowerCaseText.contains(previous._lowerCaseText);
+	}
+
+
+	boolean matches(@Nullable final String text, @Nullable final String lowerCaseText) {
+		if (text == null) {
+			return false;
+		}
+		if (_lowerCaseText != null) {
+			return lowerCaseText != null && lowerCaseText.contains(_lowerCaseText);
+		}
+		return _pattern != null && _pattern.matcher(text).find();
+	}
+
+
+	/**
+	 * @param texts          the element strings by element index
+	 * @param lowerCaseTexts the {@link #toLowerCase(String) lowercased} element strings by element index
+	 * @param candidates     sorted element indices to check, or {@code null} to check all elements
+	 * @return the sorted indices of all matching elements
+	 */
+	@NotNull
+	int[] findMatches(@NotNull final String[] texts, @NotNull final String[] lowerCaseTexts, @Nullable final int[] candidates) {
+		final int count = candidates != null ? candidates.length : texts.length;
+		final int[] ret = new int[count];
+		int size = 0;
+		for (int i = 0; i < count; i++) {
+			final int index = candidates != null ? candidates[i] : i;
+			if (matches(texts[index], lowerCaseTexts[index])) {
+				ret[size++] = index;
+			}
+		}
+		return Arrays.copyOf(ret, size);
+	}
+
+
+	@Nullable
+	static String toLowerCase(@Nullable final String text) {
+		return text != null ? text.toLowerCase(Locale.ENGLISH) : null;
+	}
+
+
+	private static boolean isLiteral(@NotNull final String searchText) {
+		for (int i = 0; i < searchText.length(); i++) {
+			if (REGEX_META_CHARACTERS.indexOf(searchText.charAt(i)) >= 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
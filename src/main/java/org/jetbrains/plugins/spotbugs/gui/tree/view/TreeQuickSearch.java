@@ -144,6 +144,7 @@ final class TreeQuickSearch extends QuickSearch<AbstractTreeNode<VisitableTreeNo
 
 
 	private void clearElementsCache() {
+		invalidateSearchCache();
 		if (_elementsCache != null) {
 			_elementsCache.clear();
 			//noinspection AssignmentToNull
@@ -33,7 +33,10 @@ public interface AnalysisStartedListener {
 
 	/**
 	 * Invoked by EDT.
+	 *
+	 * @param merge {@code true} if the result of this analysis should be merged into the current result
+	 *              (partial analysis) instead of replacing it
 	 */
-	void analysisStarted();
+	void analysisStarted(boolean merge);
 
 }
\ No newline at end of file
@@ -29,6 +29,7 @@ import org.jetbrains.plugins.spotbugs.core.FindBugsResult;
 import org.jetbrains.plugins.spotbugs.core.FindBugsState;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicReference;
 
@@ -77,22 +78,24 @@ public final class MessageBusManager {
 		publish(project, ClearListener.TOPIC).clear();
 	}
 
-	public static void publishNewBug(@NotNull final Project project, @NotNull final Bug bug, final int analyzedClassCount) {
+	public static void publishNewBugs(@NotNull final Project project, @NotNull final List<Bug> bugs, final int analyzedClassCount) {
 		EventDispatchThreadHelper.checkEDT();
-		publish(project, NewBugListener.TOPIC).newBug(bug, analyzedClassCount);
+		if (!bugs.isEmpty()) {
+			publish(project, NewBugListener.TOPIC).newBugs(bugs, analyzedClassCount);
+		}
 	}
 
-	public static void publishAnalysisStarted(@NotNull final Project project) {
+	public static void publishAnalysisStarted(@NotNull final Project project, final boolean merge) {
 		EventDispatchThreadHelper.checkEDT();
 		FindBugsState.set(project, FindBugsState.Started);
-		publish(project, AnalysisStartedListener.TOPIC).analysisStarted();
+		publish(project, AnalysisStartedListener.TOPIC).analysisStarted(merge);
 	}
 
-	public static void publishAnalysisStartedToEDT(@NotNull final Project project) {
+	public static void publishAnalysisStartedToEDT(@NotNull final Project project, final boolean merge) {
 		EventDispatchThreadHelper.checkNotEDT();
 		EventDispatchThreadHelper.invokeLater(() -> {
 			FindBugsState.set(project, FindBugsState.Started);
-			publish(project, AnalysisStartedListener.TOPIC).analysisStarted();
+			publish(project, AnalysisStartedListener.TOPIC).analysisStarted(merge);
 		});
 	}
 
@@ -23,11 +23,17 @@ import com.intellij.util.messages.Topic;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.plugins.spotbugs.core.Bug;
 
+import java.util.List;
+
 public interface NewBugListener {
 	Topic<NewBugListener> TOPIC = Topic.create("SpotBugs New Bug", NewBugListener.class);
 
 	/**
-	 * Invoked by EDT.
+	 * Invoked by EDT with a chunk of new bugs (never empty).
+	 *
+	 * @param bugs               the new bugs in report order
+	 * @param analyzedClassCount number of analyzed classes at the time the last bug of the chunk was reported,
+	 *                           or -1 if not known before the end (f. e. while importing)
 	 */
-	void newBug(@NotNull Bug bug, int analyzedClassCount);
+	void newBugs(@NotNull List<Bug> bugs, int analyzedClassCount);
 }
@@ -71,7 +71,7 @@ public abstract class AbstractPluginLoader {
 		}
 
 
-		// 2. load bundled plugins and unload
+		// 2. read bundled plugins (metadata only)
 		final IdeaPluginDescriptor ideaPluginDescriptor = FindBugsPluginUtil.getIdeaPluginDescriptor();
 		Plugins.deploy(ideaPluginDescriptor);
 		final File[] bundledPlugins = Plugins.getDirectory(ideaPluginDescriptor).listFiles();
@@ -88,21 +88,20 @@ public abstract class AbstractPluginLoader {
 					continue;
 				}
 				try {
-					Plugin plugin = FindBugsCustomPluginUtil.loadTemporary(pluginFile);
-					PluginSettings pluginSettings = PluginSettings.findBundledById(settings, plugin.getPluginId());
+					final PluginMetadata metadata = PluginMetadata.load(pluginFile);
+					PluginSettings pluginSettings = PluginSettings.findBundledById(settings, metadata.pluginId);
 					if (pluginSettings == null) {
 						pluginSettings = new PluginSettings();
-						pluginSettings.id = plugin.getPluginId();
+						pluginSettings.id = metadata.pluginId;
 						pluginSettings.bundled = true;
 						pluginSettings.enabled = false;
-						seenBundledPlugin(PluginInfo.create(pluginSettings, plugin));
+						seenBundledPlugin(PluginInfo.create(pluginSettings, metadata));
 					} else {
-						seenConfiguredPlugin(PluginInfo.create(pluginSettings, plugin));
+						seenConfiguredPlugin(PluginInfo.create(pluginSettings, metadata));
 					}
 					if (pluginSettings.enabled) {
-						enabledBundledPluginUrls.add(FindBugsCustomPluginUtil.getAsString(plugin));
+						enabledBundledPluginUrls.add(FindBugsCustomPluginUtil.getAsString(pluginFile));
 					}
-					FindBugsCustomPluginUtil.unload(plugin);
 				} catch (final Exception e) {
 					LOGGER.warn("Could not load plugin: " + pluginFile, e);
 				}
@@ -110,7 +109,7 @@ public abstract class AbstractPluginLoader {
 		}
 
 
-		// 3. load user plugins and unload
+		// 3. read user plugins (metadata only)
 		final Set<String> enabledUserPluginUrls = new HashSet<String>();
 		for (final PluginSettings pluginSettings : settings) {
 			if (pluginSettings.bundled) {
@@ -137,12 +136,11 @@ public abstract class AbstractPluginLoader {
 					handleError(error);
 					continue;
 				}
-				final Plugin plugin = FindBugsCustomPluginUtil.loadTemporary(pluginUrl);
-				seenConfiguredPlugin(PluginInfo.create(pluginSettings, plugin));
+				final PluginMetadata metadata = PluginMetadata.load(pluginFile);
+				seenConfiguredPlugin(PluginInfo.create(pluginSettings, metadata));
 				if (pluginSettings.enabled) {
 					enabledUserPluginUrls.add(pluginUrl);
 				}
-				FindBugsCustomPluginUtil.unload(plugin);
 			} catch (final Exception e) {
 				final String error = ResourcesLoader.getString("plugins.load.error.text.path", pluginUrl);
 				seenConfiguredPlugin(PluginInfo.create(pluginSettings, error));
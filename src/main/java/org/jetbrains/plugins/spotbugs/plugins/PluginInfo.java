@@ -19,7 +19,6 @@
  */
 package org.jetbrains.plugins.spotbugs.plugins;
 
-import edu.umd.cs.findbugs.Plugin;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 import org.jetbrains.plugins.spotbugs.core.PluginSettings;
@@ -57,12 +56,12 @@ public final class PluginInfo {
 	}
 
 	@NotNull
-	static PluginInfo create(@NotNull final PluginSettings settings, @NotNull final Plugin plugin) {
+	static PluginInfo create(@NotNull final PluginSettings settings, @NotNull final PluginMetadata metadata) {
 		return new PluginInfo(
 				settings,
-				plugin.getShortDescription(),
-				plugin.getDetailedDescription(),
-				plugin.getWebsite(),
+				metadata.shortDescription,
+				metadata.detailedDescription,
+				metadata.website,
 				null
 		);
 	}
@@ -21,22 +21,36 @@ package org.jetbrains.plugins.spotbugs.plugins;
 
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.util.text.StringUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.plugins.spotbugs.common.util.FindBugsCustomPluginUtil;
 import org.jetbrains.plugins.spotbugs.core.AbstractSettings;
+import org.jetbrains.plugins.spotbugs.core.PluginSettings;
 
+import java.io.File;
 import java.lang.ref.WeakReference;
+import java.net.MalformedURLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
 
+/**
+ * Loads the plugins of the effective settings. The loaded plugin set is identified by a fingerprint of the
+ * plugin settings and the size and modification time of the user plugin jars, so that modules (or projects) with
+ * the same effective plugin set reuse the loaded plugins without any jar I/O.
+ */
 public final class PluginLoader {
 	private static WeakReference<Project> projectRef; // @GuardedBy PluginLoader.class
-	private static WeakReference<Module> moduleRef; // @GuardedBy PluginLoader.class
+	private static String loadedFingerprint; // @GuardedBy PluginLoader.class
 
 	private PluginLoader() {
 	}
 
 	public synchronized static void invalidate() {
 		projectRef = null;
-		moduleRef = null;
+		loadedFingerprint = null;
 	}
 
 	public synchronized static boolean load(
@@ -46,21 +60,43 @@ public final class PluginLoader {
 			final boolean addEditSettingsLinkToErrorMessage
 	) {
 
-		Project latestProject = projectRef == null ? null : projectRef.get();
-		Module latestModule = moduleRef == null ? null : moduleRef.get();
-		if (latestProject != project || latestModule != module) {
+		final String fingerprint = createFingerprint(settings.plugins);
+		if (!fingerprint.equals(loadedFingerprint)) {
 			final PluginLoaderImpl pluginLoader = new PluginLoaderImpl(addEditSettingsLinkToErrorMessage);
-			pluginLoader.load(settings.plugins);
-      projectRef = new WeakReference<>(project);
-			moduleRef = null;
-			if (module != null) {
-        moduleRef = new WeakReference<>(module);
-			}
-			return pluginLoader.showErrorNotificationIfNecessary(project);
+			pluginLoader.load(settings.plugins); // invalidates
+			projectRef = new WeakReference<>(project);
+			final boolean success = pluginLoader.showErrorNotificationIfNecessary(project);
+			// a failed load is retried (and reported again) by the next analysis
+			loadedFingerprint = success ? fingerprint : null;
+			return success;
 		}
+		projectRef = new WeakReference<>(project);
 		return true;
 	}
 
+	/**
+	 * Detector settings are not part of the fingerprint, they are applied per analysis and do not need a reload.
+	 */
+	@NotNull
+	private static String createFingerprint(@NotNull final Set<PluginSettings> plugins) {
+		final List<String> entries = new ArrayList<>(plugins.size());
+		for (final PluginSettings plugin : plugins) {
+			final StringBuilder entry = new StringBuilder();
+			entry.append(plugin.id).append('|').append(plugin.bundled).append('|').append(plugin.enabled).append('|').append(plugin.url);
+			if (!plugin.bundled && plugin.url != null) {
+				try {
+					final File file = FindBugsCustomPluginUtil.getAsFile(plugin.url);
+					entry.append('|').append(file.length()).append('|').append(file.lastModified());
+				} catch (final MalformedURLException ignored) {
+					// reported by the plugin loader
+				}
+			}
+			entries.add(entry.toString());
+		}
+		Collections.sort(entries);
+		return StringUtil.join(entries, "\n");
+	}
+
 	public synchronized static boolean isLoaded(@NotNull final Project project) {
 		return projectRef != null && projectRef.get() == project;
 	}
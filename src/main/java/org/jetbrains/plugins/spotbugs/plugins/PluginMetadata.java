@@ -0,0 +1,238 @@
+/*
+ * Copyright 2020 SpotBugs plugin contributors
+ *
+ * This file is part of IntelliJ SpotBugs plugin.
+ *
+ * IntelliJ SpotBugs plugin is free software: you can redistribute it 
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of 
+ * the License, or (at your option) any later version.
+ *
+ * IntelliJ SpotBugs plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied 
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with IntelliJ SpotBugs plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jetbrains.plugins.spotbugs.plugins;
+
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.JDOMUtil;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import edu.umd.cs.findbugs.Plugin;
+import edu.umd.cs.findbugs.PluginException;
+import org.jdom.Element;
+import org.jdom.JDOMException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.plugins.spotbugs.common.util.FindBugsCustomPluginUtil;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Id and descriptions of a plugin jar, read from {@code findbugs.xml} and {@code messages.xml} inside the jar
+ * without loading the plugin classes. The metadata is cached on disk by the SHA-256 hash of the jar,
+ * and in memory by path, size and modification time. Jars without plugin id in {@code findbugs.xml}
+ * (SpotBugs generates one in this case) are loaded temporarily like before.
+ */
+public final class PluginMetadata {
+
+	private static final Logger LOGGER = Logger.getInstance(PluginMetadata.class);
+
+	private static final int FORMAT_VERSION = 1;
+	private static final String FINDBUGS_XML = "findbugs.xml";
+	private static final String MESSAGES_XML = "messages.xml";
+
+	private static final Map<String, PluginMetadata> CACHE = new HashMap<>(); // @GuardedBy PluginMetadata.class
+
+	@NotNull
+	public final String pluginId;
+
+	@Nullable
+	public final String shortDescription;
+
+	@Nullable
+	public final String detailedDescription;
+
+	@Nullable
+	public final String website;
+
+	private PluginMetadata(
+			@NotNull final String pluginId,
+			@Nullable final String shortDescription,
+			@Nullable final String detailedDescription,
+			@Nullable final String website
+	) {
+		this.pluginId = pluginId;
+		this.shortDescription = shortDescription;
+		this.detailedDescription = detailedDescription;
+		this.website = website;
+	}
+
+	/**
+	 * Note that the returned metadata does not prove that the plugin can be loaded, load errors are reported
+	 * when the enabled plugins are loaded permanently.
+	 */
+	@NotNull
+	public static PluginMetadata load(@NotNull final File jar) throws MalformedURLException, PluginException {
+		final String key = jar.getAbsolutePath() + '|' + jar.length() + '|' + jar.lastModified();
+		synchronized (PluginMetadata.class) {
+			final PluginMetadata ret = CACHE.get(key);
+			if (ret != null) {
+				return ret;
+			}
+		}
+		PluginMetadata ret = null;
+		try {
+			ret = loadImpl(jar);
+		} catch (final IOException | JDOMException | RuntimeException e) {
+			LOGGER.debug("Can not read plugin metadata of " + jar, e);
+		}
+		if (ret == null) {
+			ret = loadTemporary(jar);
+		}
+		synchronized (PluginMetadata.class) {
+			CACHE.put(key, ret);
+		}
+		return ret;
+	}
+
+	@Nullable
+	private static PluginMetadata loadImpl(@NotNull final File jar) throws IOException, JDOMException {
+		final String hash = hash(jar);
+		final File cacheFile = new File(PathManager.getSystemPath(), "spotbugs" + File.separator + "plugins" + File.separator + hash);
+		if (cacheFile.isFile()) {
+			try {
+				final PluginMetadata ret = readCache(cacheFile);
+				if (ret != null) {
+					return ret;
+				}
+			} catch (final IOException e) {
+				LOGGER.debug("Can not read plugin metadata cache " + cacheFile, e);
+			}
+		}
+		final PluginMetadata ret = read(jar);
+		if (ret != null) {
+			try {
+				FileUtil.createParentDirs(cacheFile);
+				writeCache(cacheFile, ret);
+			} catch (final IOException e) {
+				LOGGER.warn("Can not write plugin metadata cache " + cacheFile, e);
+			}
+		}
+		return ret;
+	}
+
+	@Nullable
+	private static PluginMetadata read(@NotNull final File jar) throws IOException, JDOMException {
+		try (final ZipFile zip = new ZipFile(jar)) {
+			final ZipEntry findbugsXml = zip.getEntry(FINDBUGS_XML);
+			if (findbugsXml == null) {
+				return null;
+			}
+			final Element plugin;
+			try (final InputStream in = zip.getInputStream(findbugsXml)) {
+				plugin = JDOMUtil.load(in);
+			}
+			final String pluginId = plugin.getAttributeValue("pluginid");
+			if (StringUtil.isEmptyOrSpaces(pluginId)) {
+				return null;
+			}
+			String shortDescription = null;
+			String detailedDescription = null;
+			final ZipEntry messagesXml = zip.getEntry(MESSAGES_XML);
+			if (messagesXml != null) {
+				final Element messages;
+				try (final InputStream in = zip.getInputStream(messagesXml)) {
+					messages = JDOMUtil.load(in);
+				}
+				final Element pluginMessages = messages.getChild("Plugin");
+				if (pluginMessages != null) {
+					shortDescription = pluginMessages.getChildTextTrim("ShortDescription");
+					detailedDescription = pluginMessages.getChildTextTrim("Details");
+				}
+			}
+			return new PluginMetadata(pluginId.trim(), shortDescription, detailedDescription, plugin.getAttributeValue("website"));
+		}
+	}
+
+	@NotNull
+	private static PluginMetadata loadTemporary(@NotNull final File jar) throws MalformedURLException, PluginException {
+		final Plugin plugin = FindBugsCustomPluginUtil.loadTemporary(jar);
+		try {
+			return new PluginMetadata(plugin.getPluginId(), plugin.getShortDescription(), plugin.getDetailedDescription(), plugin.getWebsite());
+		} finally {
+			FindBugsCustomPluginUtil.unload(plugin);
+		}
+	}
+
+	@NotNull
+	private static String hash(@NotNull final File jar) throws IOException {
+		try {
+			final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			try (final InputStream in = new BufferedInputStream(new FileInputStream(jar))) {
+				final byte[] buffer = new byte[8192];
+				int read;
+				while ((read = in.read(buffer)) != -1) {
+					digest.update(buffer, 0, read);
+				}
+			}
+			return StringUtil.toHexString(digest.digest());
+		} catch (final NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	@Nullable
+	private static PluginMetadata readCache(@NotNull final File cacheFile) throws IOException {
+		try (final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)))) {
+			if (in.readInt() != FORMAT_VERSION) {
+				return null;
+			}
+			final String pluginId = in.readUTF();
+			return new PluginMetadata(pluginId, readNullableString(in), readNullableString(in), readNullableString(in));
+		}
+	}
+
+	private static void writeCache(@NotNull final File cacheFile, @NotNull final PluginMetadata metadata) throws IOException {
+		try (final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(cacheFile)))) {
+			out.writeInt(FORMAT_VERSION);
+			out.writeUTF(metadata.pluginId);
+			writeNullableString(out, metadata.shortDescription);
+			writeNullableString(out, metadata.detailedDescription);
+			writeNullableString(out, metadata.website);
+		}
+	}
+
+	@Nullable
+	private static String readNullableString(@NotNull final DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	private static void writeNullableString(@NotNull final DataOutputStream out, @Nullable final String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+}
@@ -0,0 +1,539 @@
+/*
+ * Copyright 2020 SpotBugs plugin contributors
+ *
+ * This file is part of IntelliJ SpotBugs plugin.
+ *
+ * IntelliJ SpotBugs plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * IntelliJ SpotBugs plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with IntelliJ SpotBugs plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jetbrains.plugins.spotbugs.worker;
+
+import edu.umd.cs.findbugs.AbstractBugReporter;
+import edu.umd.cs.findbugs.AnalysisError;
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.BugReporter;
+import edu.umd.cs.findbugs.DelegatingBugReporter;
+import edu.umd.cs.findbugs.DetectorFactoryCollection;
+import edu.umd.cs.findbugs.FilterBugReporter;
+import edu.umd.cs.findbugs.FindBugs2;
+import edu.umd.cs.findbugs.FindBugsProgress;
+import edu.umd.cs.findbugs.Plugin;
+import edu.umd.cs.findbugs.Project;
+import edu.umd.cs.findbugs.ProjectStats;
+import edu.umd.cs.findbugs.SortedBugCollection;
+import edu.umd.cs.findbugs.classfile.ClassDescriptor;
+import edu.umd.cs.findbugs.config.UserPreferences;
+import edu.umd.cs.findbugs.filter.Filter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Entry point of the worker JVM which runs the SpotBugs engine outside of the IDE heap, see
+ * {@code org.jetbrains.plugins.spotbugs.core.AnalysisWorkerService}.
+ * <p>
+ * The worker reads the requests from {@code System.in} and streams the progress and the bugs to {@code System.out}
+ * (see {@link WorkerProtocol}). Anything else written to {@code System.out} is redirected to {@code System.err}.
+ * The worker analyzes one project at a time and stays alive between the analyses until its input is closed,
+ * so the loaded plugins and the JIT compiled engine are reused.
+ * <p>
+ * This class runs without the IntelliJ platform, it must only use the SpotBugs and the JDK classes.
+ */
+public final class AnalysisWorker {
+
+	private static final int BUG_BATCH_SIZE = 100;
+	private static final long BUG_BATCH_INTERVAL_MS = 250;
+	private static final int MAX_ERROR_LENGTH = 16 * 1024;
+
+	@NotNull
+	private final DataOutputStream _out;
+
+	@NotNull
+	private final ExecutorService _executor;
+
+	@NotNull
+	private final Set<String> _loadedPlugins;
+
+	/**
+	 * Parsed include and exclude filter files by path, reused while the file is unchanged (analysis thread only).
+	 */
+	@NotNull
+	private final Map<String, CachedFilter> _filters;
+
+	/**
+	 * Instance hashes of the baseline bug files by path, sent by the IDE whenever a file changed.
+	 */
+	@NotNull
+	private final Map<String, Set<String>> _baselines;
+
+	private volatile boolean _canceled;
+
+	@Nullable
+	private volatile Thread _analysisThread;
+
+
+	private AnalysisWorker(@NotNull final DataOutputStream out) {
+		_out = out;
+		_executor = Executors.newSingleThreadExecutor();
+		_loadedPlugins = new HashSet<>();
+		_filters = new HashMap<>();
+		_baselines = new ConcurrentHashMap<>();
+	}
+
+
+	public static void main(final String[] args) throws IOException {
+		final PrintStream out = System.out;
+		System.setOut(System.err);
+		new AnalysisWorker(new DataOutputStream(new BufferedOutputStream(out))).run(new DataInputStream(new BufferedInputStream(System.in)));
+		System.exit(0);
+	}
+
+
+	private void run(@NotNull final DataInputStream in) throws IOException {
+		try {
+			while (true) {
+				final byte command;
+				try {
+					command = in.readByte();
+				} catch (final EOFException ignore) {
+					return; // the IDE closed the worker
+				}
+				switch (command) {
+					case WorkerProtocol.ANALYZE:
+						final int pluginCount = in.readInt();
+						final List<String> plugins = new ArrayList<>(pluginCount);
+						for (int i = 0; i < pluginCount; i++) {
+							plugins.add(in.readUTF());
+						}
+						final File projectFile = new File(in.readUTF());
+						final File preferencesFile = new File(in.readUTF());
+						final List<String> excludeFilters = readPaths(in);
+						final List<String> includeFilters = readPaths(in);
+						final List<String> baselines = readPaths(in);
+						_canceled = false;
+						_executor.execute(() -> analyze(plugins, projectFile, preferencesFile, excludeFilters, includeFilters, baselines));
+						break;
+					case WorkerProtocol.BASELINE:
+						final String baseline = in.readUTF();
+						final int hashCount = in.readInt();
+						final Set<String> hashes = new HashSet<>(hashCount);
+						for (int i = 0; i < hashCount; i++) {
+							hashes.add(in.readUTF());
+						}
+						_baselines.put(baseline, hashes);
+						break;
+					case WorkerProtocol.CANCEL:
+						_canceled = true;
+						final Thread analysisThread = _analysisThread;
+						if (analysisThread != null) {
+							analysisThread.interrupt(); // causes break in FindBugs main loop
+						}
+						break;
+					default:
+						throw new IOException("Unknown command " + command);
+				}
+			}
+		} finally {
+			_executor.shutdownNow();
+		}
+	}
+
+
+	@NotNull
+	private static List<String> readPaths(@NotNull final DataInputStream in) throws IOException {
+		final int count = in.readInt();
+		final List<String> ret = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			ret.add(in.readUTF());
+		}
+		return ret;
+	}
+
+
+	private void analyze(
+			@NotNull final List<String> plugins,
+			@NotNull final File projectFile,
+			@NotNull final File preferencesFile,
+			@NotNull final List<String> excludeFilters,
+			@NotNull final List<String> includeFilters,
+			@NotNull final List<String> baselines
+	) {
+		_analysisThread = Thread.currentThread();
+		try {
+			final BatchReporter reporter;
+			if (_canceled) {
+				reporter = null;
+			} else {
+				loadPlugins(plugins);
+				final Project project = Project.readXML(projectFile);
+				final UserPreferences userPrefs = UserPreferences.createDefaultUserPreferences();
+				try (InputStream in = new FileInputStream(preferencesFile)) {
+					userPrefs.read(in);
+				}
+
+				reporter = new BatchReporter(new SortedBugCollection(project));
+				reporter.setPriorityThreshold(userPrefs.getUserDetectorThreshold());
+				reporter.setRankThreshold(userPrefs.getFilterSettings().getMinRank());
+
+				final FindBugs2 engine = new FindBugs2();
+				engine.setNoClassOk(true);
+				engine.setMergeSimilarWarnings(false);
+				engine.setBugReporter(configureFilters(reporter, excludeFilters, includeFilters, baselines));
+				engine.setProject(project);
+				engine.setProgressCallback(reporter);
+				engine.setDetectorFactoryCollection(DetectorFactoryCollection.instance());
+				// without filter files, they are applied from the cache above
+				engine.setUserPreferences(userPrefs);
+				try {
+					engine.execute();
+				} catch (final InterruptedException ignore) {
+					// canceled, the bugs reported so far are sent anyway
+				} finally {
+					engine.dispose();
+				}
+				reporter.flush();
+			}
+			Thread.interrupted();
+			sendDone(reporter != null ? reporter.getProjectStats() : null);
+		} catch (final Throwable e) {
+			sendFailed(e);
+		} finally {
+			_analysisThread = null;
+			Thread.interrupted();
+		}
+	}
+
+
+	/**
+	 * Like {@code org.jetbrains.plugins.spotbugs.core.FilterFileCache#configure} in the IDE: the filter files are
+	 * parsed once per worker and file version, the baseline hashes are parsed by the IDE and sent once.
+	 */
+	@NotNull
+	private BugReporter configureFilters(
+			@NotNull final BugReporter reporter,
+			@NotNull final List<String> excludeFilters,
+			@NotNull final List<String> includeFilters,
+			@NotNull final List<String> baselines
+	) throws IOException {
+		BugReporter ret = reporter;
+		for (final String path : excludeFilters) {
+			ret = new FilterBugReporter(ret, getFilter(path), false);
+		}
+		for (final String path : includeFilters) {
+			ret = new FilterBugReporter(ret, getFilter(path), true);
+		}
+		for (final String path : baselines) {
+			final Set<String> hashes = _baselines.get(path);
+			if (hashes == null) {
+				throw new IOException("Baseline bugs not sent: " + path);
+			}
+			ret = new BaselineBugReporter(ret, hashes);
+		}
+		return ret;
+	}
+
+
+	@NotNull
+	private Filter getFilter(@NotNull final String path) throws IOException {
+		final File file = new File(path);
+		final CachedFilter cached = _filters.get(path);
+		if (cached != null && cached.isValid(file)) {
+			return cached.filter;
+		}
+		final CachedFilter ret = new CachedFilter(file, new Filter(path));
+		_filters.put(path, ret);
+		return ret.filter;
+	}
+
+
+	private void loadPlugins(@NotNull final List<String> plugins) throws Exception {
+		for (final String plugin : plugins) {
+			if (_loadedPlugins.add(plugin)) {
+				final Plugin loaded = Plugin.loadCustomPlugin(new URL(plugin), null);
+				if (loaded != null) {
+					loaded.setGloballyEnabled(true);
+				}
+			}
+		}
+	}
+
+
+	private void sendProgress(final byte message) throws IOException {
+		synchronized (_out) {
+			_out.writeByte(message);
+			_out.flush();
+		}
+	}
+
+
+	private void sendProgress(final byte message, final int value) throws IOException {
+		synchronized (_out) {
+			_out.writeByte(message);
+			_out.writeInt(value);
+			_out.flush();
+		}
+	}
+
+
+	private void sendPassCount(@NotNull final int[] classesPerPass) throws IOException {
+		synchronized (_out) {
+			_out.writeByte(WorkerProtocol.PREDICT_PASS_COUNT);
+			_out.writeInt(classesPerPass.length);
+			for (final int count : classesPerPass) {
+				_out.writeInt(count);
+			}
+			_out.flush();
+		}
+	}
+
+
+	private void sendBugs(@NotNull final SortedBugCollection bugCollection, @NotNull final List<BugInstance> bugs) throws IOException {
+		WorkerProtocol.writeBugs(_out, bugCollection, bugs);
+	}
+
+
+	private void sendDone(@Nullable final ProjectStats stats) throws IOException {
+		WorkerProtocol.writeDone(_out, stats);
+	}
+
+
+	private void sendFailed(@NotNull final Throwable error) {
+		final StringWriter stackTrace = new StringWriter();
+		error.printStackTrace(new PrintWriter(stackTrace));
+		String message = stackTrace.toString();
+		if (message.length() > MAX_ERROR_LENGTH) {
+			message = message.substring(0, MAX_ERROR_LENGTH);
+		}
+		try {
+			WorkerProtocol.writeFailed(_out, message);
+		} catch (final IOException e) {
+			// the IDE is gone
+			System.exit(1);
+		}
+	}
+
+
+	private static final class CachedFilter {
+		private final long length;
+		private final long lastModified;
+		@NotNull
+		private final Filter filter;
+
+		private CachedFilter(@NotNull final File file, @NotNull final Filter filter) {
+			this.length = file.length();
+			this.lastModified = file.lastModified();
+			this.filter = filter;
+		}
+
+		private boolean isValid(@NotNull final File file) {
+			return length == file.length() && lastModified == file.lastModified();
+		}
+	}
+
+
+	/**
+	 * Like {@link edu.umd.cs.findbugs.ExcludingHashesBugReporter} but with the instance hashes sent by the IDE.
+	 */
+	private static final class BaselineBugReporter extends DelegatingBugReporter {
+		@NotNull
+		private final Set<String> excludedHashes;
+
+		private BaselineBugReporter(@NotNull final BugReporter delegate, @NotNull final Set<String> excludedHashes) {
+			super(delegate);
+			this.excludedHashes = excludedHashes;
+		}
+
+		@Override
+		public void reportBug(@NotNull final BugInstance bugInstance) {
+			if (!excludedHashes.contains(bugInstance.getInstanceHash())) {
+				getDelegate().reportBug(bugInstance);
+			}
+		}
+	}
+
+
+	/**
+	 * Collects the bugs and sends them in batches, so that the IDE shows them while the analysis is running.
+	 */
+	private final class BatchReporter extends AbstractBugReporter implements FindBugsProgress {
+
+		@NotNull
+		private final SortedBugCollection _bugCollection;
+
+		@NotNull
+		private final List<BugInstance> _pending;
+
+		private long _lastFlush;
+
+
+		BatchReporter(@NotNull final SortedBugCollection bugCollection) {
+			_bugCollection = bugCollection;
+			_pending = new ArrayList<>();
+			_lastFlush = System.currentTimeMillis();
+		}
+
+
+		@Override
+		protected void doReportBug(@NotNull final BugInstance bug) {
+			_pending.add(bug);
+			if (_pending.size() >= BUG_BATCH_SIZE) {
+				flushUnchecked();
+			}
+		}
+
+
+		void flush() throws IOException {
+			if (!_pending.isEmpty()) {
+				sendBugs(_bugCollection, _pending);
+				_pending.clear();
+			}
+			_lastFlush = System.currentTimeMillis();
+		}
+
+
+		private void flushUnchecked() {
+			try {
+				flush();
+			} catch (final IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+
+		private void send(final byte message) {
+			try {
+				sendProgress(message);
+			} catch (final IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+
+		private void send(final byte message, final int value) {
+			try {
+				sendProgress(message, value);
+			} catch (final IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+
+		@Override
+		public ProjectStats getProjectStats() {
+			return _bugCollection.getProjectStats();
+		}
+
+
+		@Override
+		public SortedBugCollection getBugCollection() {
+			return _bugCollection;
+		}
+
+
+		@Override
+		public void observeClass(@NotNull final ClassDescriptor classDescriptor) {
+		}
+
+
+		@Override
+		public void reportQueuedErrors() {
+		}
+
+
+		@Override
+		public void reportAnalysisError(final AnalysisError error) {
+		}
+
+
+		@Override
+		public void reportMissingClass(final String missingClass) {
+		}
+
+
+		@Override
+		public void finish() {
+			flushUnchecked();
+		}
+
+
+		@Override
+		public void reportNumberOfArchives(final int numArchives) {
+			send(WorkerProtocol.REPORT_NUMBER_OF_ARCHIVES, numArchives);
+		}
+
+
+		@Override
+		public void startArchive(final String name) {
+		}
+
+
+		@Override
+		public void finishArchive() {
+			send(WorkerProtocol.FINISH_ARCHIVE);
+		}
+
+
+		@Override
+		public void predictPassCount(final int[] classesPerPass) {
+			try {
+				sendPassCount(classesPerPass);
+			} catch (final IOException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+
+
+		@Override
+		public void startAnalysis(final int numClasses) {
+			send(WorkerProtocol.START_ANALYSIS, numClasses);
+		}
+
+
+		@Override
+		public void finishClass() {
+			send(WorkerProtocol.FINISH_CLASS);
+			if (!_pending.isEmpty() && System.currentTimeMillis() - _lastFlush >= BUG_BATCH_INTERVAL_MS) {
+				flushUnchecked();
+			}
+		}
+
+
+		@Override
+		public void finishPerClassAnalysis() {
+			send(WorkerProtocol.FINISH_PER_CLASS_ANALYSIS);
+		}
+	}
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2020 SpotBugs plugin contributors
+ *
+ * This file is part of IntelliJ SpotBugs plugin.
+ *
+ * IntelliJ SpotBugs plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * IntelliJ SpotBugs plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with IntelliJ SpotBugs plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.jetbrains.plugins.spotbugs.worker;
+
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.FindBugsProgress;
+import edu.umd.cs.findbugs.ProjectStats;
+import edu.umd.cs.findbugs.SortedBugCollection;
+import edu.umd.cs.findbugs.Version;
+import edu.umd.cs.findbugs.xml.OutputStreamXMLOutput;
+import edu.umd.cs.findbugs.xml.XMLAttributeList;
+import edu.umd.cs.findbugs.xml.XMLOutput;
+import org.dom4j.DocumentException;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * Messages exchanged between the IDE and the {@link AnalysisWorker} over the standard streams of the worker process.
+ * Every message starts with one of the bytes below and is written with {@link java.io.DataOutputStream}.
+ * <p>
+ * IDE to worker:
+ * <ul>
+ * <li>{@link #BASELINE}: path of a baseline bug file, number of instance hashes and the hashes; only sent if the
+ * worker does not know the current hashes of the file yet</li>
+ * <li>{@link #ANALYZE}: number of custom plugin URLs, the plugin URLs, path of the project XML file, path of the
+ * user preferences file, number and paths of the exclude filter files, number and paths of the include filter files
+ * and number and paths of the baseline bug files</li>
+ * <li>{@link #CANCEL}: cancels the running analysis, the worker answers with {@link #DONE}</li>
+ * </ul>
+ * Worker to IDE:
+ * <ul>
+ * <li>the {@link edu.umd.cs.findbugs.FindBugsProgress} callbacks, with an int argument where needed</li>
+ * <li>{@link #BUGS}: length and bytes of a {@code BugCollection} XML document which only contains bug instances</li>
+ * <li>{@link #DONE}: length and bytes of a {@code BugCollection} XML document which only contains the summary</li>
+ * <li>{@link #FAILED}: description of the error, the analysis is over</li>
+ * </ul>
+ */
+public final class WorkerProtocol {
+
+	public static final byte ANALYZE = 1;
+	public static final byte CANCEL = 2;
+	public static final byte BASELINE = 3;
+
+	public static final byte REPORT_NUMBER_OF_ARCHIVES = 10;
+	public static final byte FINISH_ARCHIVE = 11;
+	public static final byte START_ANALYSIS = 12;
+	public static final byte PREDICT_PASS_COUNT = 13;
+	public static final byte FINISH_CLASS = 14;
+	public static final byte FINISH_PER_CLASS_ANALYSIS = 15;
+	public static final byte BUGS = 20;
+	public static final byte DONE = 21;
+	public static final byte FAILED = 22;
+
+	private WorkerProtocol() {
+	}
+
+
+	/**
+	 * Receives the messages of the worker, see {@link #readMessage(DataInputStream, Receiver)}.
+	 */
+	public interface Receiver extends FindBugsProgress {
+
+		void reportBugs(@NotNull Collection<BugInstance> bugs);
+
+		void done(@NotNull ProjectStats stats);
+
+		void failed(@NotNull String error);
+	}
+
+
+	public static void writeBugs(
+			@NotNull final DataOutputStream out,
+			@NotNull final SortedBugCollection bugCollection,
+			@NotNull final Collection<BugInstance> bugs
+	) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final XMLOutput xmlOutput = beginBugCollection(bytes);
+		for (final BugInstance bug : bugs) {
+			bug.writeXML(xmlOutput, bugCollection, false);
+		}
+		endBugCollection(xmlOutput);
+		writeDocument(out, BUGS, bytes);
+	}
+
+
+	public static void writeDone(@NotNull final DataOutputStream out, @Nullable final ProjectStats stats) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final XMLOutput xmlOutput = beginBugCollection(bytes);
+		if (stats != null) {
+			stats.writeXML(xmlOutput, false);
+		}
+		endBugCollection(xmlOutput);
+		writeDocument(out, DONE, bytes);
+	}
+
+
+	public static void writeFailed(@NotNull final DataOutputStream out, @NotNull final String error) throws IOException {
+		synchronized (out) {
+			out.writeByte(FAILED);
+			out.writeUTF(error);
+			out.flush();
+		}
+	}
+
+
+	/**
+	 * Reads the next message of the worker and forwards it to {@code receiver}.
+	 *
+	 * @return true if the message ended the analysis ({@link #DONE} or {@link #FAILED})
+	 * @throws EOFException if the stream ended, also in the middle of a message
+	 */
+	public static boolean readMessage(@NotNull final DataInputStream in, @NotNull final Receiver receiver) throws IOException {
+		final byte message = in.readByte();
+		switch (message) {
+			case REPORT_NUMBER_OF_ARCHIVES:
+				receiver.reportNumberOfArchives(in.readInt());
+				return false;
+			case FINISH_ARCHIVE:
+				receiver.finishArchive();
+				return false;
+			case START_ANALYSIS:
+				receiver.startAnalysis(in.readInt());
+				return false;
+			case PREDICT_PASS_COUNT:
+				final int[] classesPerPass = new int[in.readInt()];
+				for (int i = 0; i < classesPerPass.length; i++) {
+					classesPerPass[i] = in.readInt();
+				}
+				receiver.predictPassCount(classesPerPass);
+				return false;
+			case FINISH_CLASS:
+				receiver.finishClass();
+				return false;
+			case FINISH_PER_CLASS_ANALYSIS:
+				receiver.finishPerClassAnalysis();
+				return false;
+			case BUGS:
+				receiver.reportBugs(readBugCollection(in).getCollection());
+				return false;
+			case DONE:
+				receiver.done(readBugCollection(in).getProjectStats());
+				return true;
+			case FAILED:
+				receiver.failed(in.readUTF());
+				return true;
+			default:
+				throw new IOException("Unknown SpotBugs worker message " + message);
+		}
+	}
+
+
+	@NotNull
+	private static SortedBugCollection readBugCollection(@NotNull final DataInputStream in) throws IOException {
+		final byte[] bytes = new byte[in.readInt()];
+		in.readFully(bytes);
+		final SortedBugCollection ret = new SortedBugCollection();
+		try {
+			ret.readXML(new ByteArrayInputStream(bytes));
+		} catch (final DocumentException e) {
+			throw new IOException("Can not read bugs of SpotBugs worker", e);
+		}
+		return ret;
+	}
+
+
+	private static void writeDocument(
+			@NotNull final DataOutputStream out,
+			final byte message,
+			@NotNull final ByteArrayOutputStream bytes
+	) throws IOException {
+		synchronized (out) {
+			out.writeByte(message);
+			out.writeInt(bytes.size());
+			bytes.writeTo(out);
+			out.flush();
+		}
+	}
+
+
+	@NotNull
+	private static XMLOutput beginBugCollection(@NotNull final ByteArrayOutputStream bytes) throws IOException {
+		final XMLOutput ret = new OutputStreamXMLOutput(bytes);
+		ret.beginDocument();
+		ret.openTag("BugCollection", new XMLAttributeList()
+				.addAttribute("version", Version.VERSION_STRING)
+				.addAttribute("timestamp", String.valueOf(System.currentTimeMillis())));
+		return ret;
+	}
+
+
+	private static void endBugCollection(@NotNull final XMLOutput xmlOutput) throws IOException {
+		xmlOutput.closeTag("BugCollection");
+		xmlOutput.finish();
+	}
+}
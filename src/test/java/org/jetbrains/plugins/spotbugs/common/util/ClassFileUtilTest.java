@@ -0,0 +1,78 @@
+/*
+ * Copyright 2020 SpotBugs plugin contributors
+ *
+ * This file is part of IntelliJ SpotBugs plugin.
+ *
+ * IntelliJ SpotBugs plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * IntelliJ SpotBugs plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with IntelliJ SpotBugs plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jetbrains.plugins.spotbugs.common.util;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ClassFileUtilTest {
+
+    private static final String INTERNAL_NAME = ClassFileUtilTest.class.getName().replace('.', '/');
+
+    @Test
+    public void testReadClassName() throws IOException {
+        assertEquals(ClassFileUtilTest.class.getName(), ClassFileUtil.read(readClassFile("ClassFileUtilTest")).getClassName());
+    }
+
+    @Test
+    public void testReadNestedClassNames() throws IOException {
+        final Runnable anonymous = new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+        anonymous.run();
+
+        final Set<String> nested = ClassFileUtil.readNestedClassNames(readClassFile("ClassFileUtilTest"));
+        assertTrue(nested.contains(INTERNAL_NAME + "$Inner"));
+        assertTrue(nested.contains(INTERNAL_NAME + "$1"));
+        assertFalse(nested.contains(Map.Entry.class.getName().replace('.', '/'))); // referenced only
+    }
+
+    @Test
+    public void testReadNestedClassNamesOfNestedClass() throws IOException {
+        final Set<String> nested = ClassFileUtil.readNestedClassNames(readClassFile("ClassFileUtilTest$Inner"));
+        assertEquals(1, nested.size());
+        assertTrue(nested.contains(INTERNAL_NAME + "$Inner$Deeper"));
+    }
+
+    private static byte[] readClassFile(final String simpleName) throws IOException {
+        try (InputStream in = ClassFileUtilTest.class.getResourceAsStream(simpleName + ".class")) {
+            return in.readAllBytes();
+        }
+    }
+
+    @SuppressWarnings("unused")
+    private static final class Inner {
+        private Map.Entry<String, String> entry;
+
+        private static final class Deeper {
+        }
+    }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright 2020 SpotBugs plugin contributors
+ *
+ * This file is part of IntelliJ SpotBugs plugin.
+ *
+ * IntelliJ SpotBugs plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * IntelliJ SpotBugs plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with IntelliJ SpotBugs plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jetbrains.plugins.spotbugs.core;
+
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.Priorities;
+import edu.umd.cs.findbugs.Project;
+import edu.umd.cs.findbugs.SortedBugCollection;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+
+public class AnalysisCacheTest {
+
+    private static final String KEY = "key";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private File cacheDirectory;
+    private File out;
+
+    @Before
+    public void setUp() throws IOException {
+        cacheDirectory = folder.newFolder("cache");
+        out = folder.newFolder("out");
+        for (final Class<?> type : new Class<?>[]{Base.class, Middle.class, Leaf.class, Unrelated.class}) {
+            writeClassFile(type, new byte[0]);
+        }
+    }
+
+    @Test
+    public void testReplayUnchangedClasses() {
+        final Project first = createProject();
+        assertEquals(0, AnalysisCache.load(cacheDirectory, KEY).prepare(first).size());
+        assertEquals(4, first.getFileCount());
+        analyze(AnalysisCache.load(cacheDirectory, KEY), createProject());
+
+        final Project second = createProject();
+        final List<BugInstance> cached = AnalysisCache.load(cacheDirectory, KEY).prepare(second);
+        assertEquals(2, cached.size());
+        assertEquals(0, second.getFileCount());
+    }
+
+    @Test
+    public void testAnalyzeDependentsOfChangedClassTransitively() throws IOException {
+        analyze(AnalysisCache.load(cacheDirectory, KEY), createProject());
+        writeClassFile(Base.class, new byte[]{0}); // same class, other content
+
+        final Project project = createProject();
+        final List<BugInstance> cached = AnalysisCache.load(cacheDirectory, KEY).prepare(project);
+        assertEquals(1, cached.size());
+        assertEquals(Unrelated.class.getName(), cached.get(0).getPrimaryClass().getClassName());
+        assertEquals(3, project.getFileCount());
+        assertFalse(project.getFileList().contains(getClassFile(Unrelated.class).getPath()));
+    }
+
+    @Test
+    public void testOtherKeyDiscardsCache() {
+        analyze(AnalysisCache.load(cacheDirectory, KEY), createProject());
+
+        final Project project = createProject();
+        assertEquals(0, AnalysisCache.load(cacheDirectory, "other").prepare(project).size());
+        assertEquals(4, project.getFileCount());
+    }
+
+    @Test
+    public void testConfigurationKeyContainsAuxClasspath() throws IOException {
+        final File dependency = folder.newFolder("dependency");
+        final File dependencyClass = new File(dependency, "Dependency.class");
+        Files.write(dependencyClass.toPath(), new byte[]{1});
+        final File library = folder.newFile("library.jar");
+
+        final Project project = createProject();
+        project.addAuxClasspathEntry(out.getPath());
+        project.addAuxClasspathEntry(dependency.getPath());
+        project.addAuxClasspathEntry(library.getPath());
+        final ProjectSettings settings = new ProjectSettings();
+        final Set<String> outputPaths = Collections.singleton(out.getPath());
+
+        final String key = AnalysisCache.createConfigurationKey(settings, project, outputPaths, new HashMap<>());
+        writeClassFile(Base.class, new byte[]{0}); // tracked by the cache entries
+        assertEquals(key, AnalysisCache.createConfigurationKey(settings, project, outputPaths, new HashMap<>()));
+
+        Files.write(dependencyClass.toPath(), new byte[]{1, 2});
+        final String changedDependency = AnalysisCache.createConfigurationKey(settings, project, outputPaths, new HashMap<>());
+        assertNotEquals(key, changedDependency);
+
+        Files.write(library.toPath(), new byte[]{1}, StandardOpenOption.APPEND);
+        assertNotEquals(changedDependency, AnalysisCache.createConfigurationKey(settings, project, outputPaths, new HashMap<>()));
+    }
+
+    private static void analyze(final AnalysisCache cache, final Project project) {
+        cache.prepare(project);
+        final SortedBugCollection bugs = new SortedBugCollection(project);
+        bugs.add(new BugInstance("NP_ALWAYS_NULL", Priorities.NORMAL_PRIORITY).addClass(Leaf.class.getName()), false);
+        bugs.add(new BugInstance("NP_ALWAYS_NULL", Priorities.NORMAL_PRIORITY).addClass(Unrelated.class.getName()), false);
+        cache.save(bugs);
+    }
+
+    private Project createProject() {
+        final Project ret = new Project();
+        for (final Class<?> type : new Class<?>[]{Base.class, Middle.class, Leaf.class, Unrelated.class}) {
+            ret.addFile(getClassFile(type).getPath());
+        }
+        return ret;
+    }
+
+    private File getClassFile(final Class<?> type) {
+        return new File(out, type.getSimpleName() + ".class");
+    }
+
+    private void writeClassFile(final Class<?> type, final byte[] suffix) throws IOException {
+        final String name = type.getName().substring(type.getName().lastIndexOf('.') + 1) + ".class";
+        try (InputStream in = AnalysisCacheTest.class.getResourceAsStream(name)) {
+            final byte[] bytes = in.readAllBytes();
+            final File file = getClassFile(type);
+            Files.write(file.toPath(), bytes);
+            Files.write(file.toPath(), suffix, StandardOpenOption.APPEND);
+        }
+    }
+
+    private static class Base {
+    }
+
+    private static class Middle extends Base {
+    }
+
+    private static final class Leaf extends Middle {
+    }
+
+    private static final class Unrelated {
+    }
+}
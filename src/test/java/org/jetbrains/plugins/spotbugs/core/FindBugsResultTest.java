@@ -0,0 +1,122 @@
+/*
+ * Copyright 2020 SpotBugs plugin contributors
+ *
+ * This file is part of IntelliJ SpotBugs plugin.
+ *
+ * IntelliJ SpotBugs plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * IntelliJ SpotBugs plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with IntelliJ SpotBugs plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jetbrains.plugins.spotbugs.core;
+
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.Priorities;
+import edu.umd.cs.findbugs.Project;
+import edu.umd.cs.findbugs.SortedBugCollection;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class FindBugsResultTest {
+
+    private final Project project = new Project();
+    private final Project newerProject = new Project();
+
+    @Test
+    public void testReanalyzedClassIsReplaced() {
+        final SortedBugCollection older = createBugCollection(project, "a.A", "b.B");
+        final BugInstance olderBug = addBug(older, "NP_ALWAYS_NULL", "a.A");
+        final SortedBugCollection newer = createBugCollection(newerProject, "a.A");
+        final BugInstance newerBug = addBug(newer, "NP_NULL_ON_SOME_PATH", "a.A");
+
+        final FindBugsResult merged = merge(older, newer);
+
+        assertFalse(older.getCollection().contains(olderBug));
+        assertSame(newer, merged.getResults().get(newerProject));
+        assertTrue(newer.getCollection().contains(newerBug));
+        assertEquals(Integer.valueOf(2), merged.getAnalyzedClassCount());
+    }
+
+    @Test
+    public void testUntouchedClassIsKept() {
+        final SortedBugCollection older = createBugCollection(project, "a.A", "b.B");
+        final BugInstance untouched = addBug(older, "NP_ALWAYS_NULL", "b.B");
+        final SortedBugCollection newer = createBugCollection(newerProject, "a.A");
+
+        final FindBugsResult merged = merge(older, newer);
+
+        assertSame(older, merged.getResults().get(project));
+        assertTrue(merged.contains(new Bug(null, older, untouched)));
+    }
+
+    @Test
+    public void testFixedClassIsRemoved() {
+        final SortedBugCollection older = createBugCollection(project, "a.A", "b.B");
+        final BugInstance fixed = addBug(older, "NP_ALWAYS_NULL", "a.A");
+        addBug(older, "NP_ALWAYS_NULL", "b.B");
+        // reanalyzed without bugs, so it is only part of the stats
+        final SortedBugCollection newer = createBugCollection(newerProject, "a.A");
+
+        final FindBugsResult merged = merge(older, newer);
+
+        assertFalse(merged.contains(new Bug(null, older, fixed)));
+        assertEquals(1, older.getCollection().size());
+        assertTrue(newer.getCollection().isEmpty());
+    }
+
+    @Test
+    public void testSupersededBugCollectionIsDropped() {
+        final SortedBugCollection older = createBugCollection(project, "a.A");
+        addBug(older, "NP_ALWAYS_NULL", "a.A");
+        final SortedBugCollection newer = createBugCollection(newerProject, "a.A", "b.B");
+
+        final FindBugsResult merged = merge(older, newer);
+
+        assertEquals(1, merged.getResults().size());
+        assertFalse(merged.getProjects().contains(project));
+        assertTrue(merged.isBugCollectionEmpty());
+        assertEquals(Integer.valueOf(2), merged.getAnalyzedClassCount());
+    }
+
+    private FindBugsResult merge(final SortedBugCollection older, final SortedBugCollection newer) {
+        final FindBugsResult olderResult = new FindBugsResult();
+        olderResult.put(project, older);
+        final FindBugsResult newerResult = new FindBugsResult();
+        newerResult.put(newerProject, newer);
+        return olderResult.merge(newerResult);
+    }
+
+    private static SortedBugCollection createBugCollection(final Project project, final String... analyzedClassNames) {
+        final SortedBugCollection ret = new SortedBugCollection(project);
+        final Set<String> classNames = new HashSet<>();
+        for (final String className : analyzedClassNames) {
+            if (classNames.add(className)) {
+                ret.getProjectStats().addClass(className, null, false, 10);
+            }
+        }
+        return ret;
+    }
+
+    private static BugInstance addBug(final SortedBugCollection bugCollection, final String type, final String className) {
+        final BugInstance ret = new BugInstance(type, Priorities.NORMAL_PRIORITY).addClass(className);
+        bugCollection.add(ret, false);
+        return ret;
+    }
+}
@@ -99,7 +99,7 @@ public class FindBugsStarterTest extends JavaCodeInsightFixtureTestCase {
 
             @Override
             protected boolean configure(@NotNull final ProgressIndicator indicator, @NotNull final FindBugsProjects projects, final boolean justCompiled) {
-                return projects.addFiles(selectedFiles, !justCompiled, hasTests(selectedFiles));
+                return addFilesInChunks(indicator, projects, selectedFiles, !justCompiled, hasTests(selectedFiles));
             }
         }.start();
 
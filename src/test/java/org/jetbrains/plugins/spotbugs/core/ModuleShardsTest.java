@@ -0,0 +1,89 @@
+/*
+ * Copyright 2020 SpotBugs plugin contributors
+ *
+ * This file is part of IntelliJ SpotBugs plugin.
+ *
+ * IntelliJ SpotBugs plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * IntelliJ SpotBugs plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with IntelliJ SpotBugs plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jetbrains.plugins.spotbugs.core;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+public class ModuleShardsTest {
+
+    @Test
+    public void testShardCount() {
+        assertEquals(1, ModuleShards.getShardCount(0, 4));
+        assertEquals(1, ModuleShards.getShardCount(ModuleShards.MIN_CLASSES_PER_SHARD * 2 - 1, 4));
+        assertEquals(2, ModuleShards.getShardCount(ModuleShards.MIN_CLASSES_PER_SHARD * 2, 4));
+        assertEquals(4, ModuleShards.getShardCount(ModuleShards.MIN_CLASSES_PER_SHARD * 100, 4));
+        assertEquals(1, ModuleShards.getShardCount(ModuleShards.MIN_CLASSES_PER_SHARD * 100, 1));
+    }
+
+    @Test
+    public void testPartitionSizes() {
+        final List<String> files = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            files.add("out/a/C" + i + ".class");
+        }
+        Collections.shuffle(files);
+
+        final List<List<String>> shards = ModuleShards.partition(files, 3);
+
+        assertEquals(3, shards.size());
+        assertEquals(3, shards.get(0).size());
+        assertEquals(3, shards.get(1).size());
+        assertEquals(4, shards.get(2).size());
+        // sorted, so a shard contains whole packages where possible
+        assertEquals("out/a/C0.class", shards.get(0).get(0));
+        assertEquals("out/a/C9.class", shards.get(2).get(3));
+    }
+
+    @Test
+    public void testNestedClassesStayWithTopLevelClass() {
+        final List<String> files = Arrays.asList(
+                "out/a/A.class",
+                "out/a/B$1.class",
+                "out/a/B$Inner$Deep.class",
+                "out/a/B$Inner.class",
+                "out/a/B.class",
+                "out/a/C.class"
+        );
+
+        final List<List<String>> shards = ModuleShards.partition(files, 3);
+
+        assertEquals(2, shards.size());
+        assertEquals(Arrays.asList("out/a/A.class", "out/a/B$1.class", "out/a/B$Inner$Deep.class", "out/a/B$Inner.class", "out/a/B.class"), shards.get(0));
+        assertEquals(Collections.singletonList("out/a/C.class"), shards.get(1));
+    }
+
+    @Test
+    public void testMoreShardsThanFiles() {
+        final List<List<String>> shards = ModuleShards.partition(Arrays.asList("out/A.class", "out/B.class"), 4);
+
+        assertEquals(2, shards.size());
+        for (final List<String> shard : shards) {
+            assertEquals(1, shard.size());
+        }
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2020 SpotBugs plugin contributors
+ *
+ * This file is part of IntelliJ SpotBugs plugin.
+ *
+ * IntelliJ SpotBugs plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * IntelliJ SpotBugs plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with IntelliJ SpotBugs plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jetbrains.plugins.spotbugs.core;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class SharedAnalysisContextTest {
+
+    @Test
+    public void testClassName() {
+        final List<String> auxClasspath = Arrays.asList("/work/out", "/work/out/production/app");
+        assertEquals("a.b.C", SharedAnalysisContext.getClassName(auxClasspath, "/work/out/production/app/a/b/C.class"));
+        assertEquals("a.b.C$Inner", SharedAnalysisContext.getClassName(auxClasspath, "/work/out/production/app/a/b/C$Inner.class"));
+        assertNull(SharedAnalysisContext.getClassName(auxClasspath, "/work/out/production/app/a/b/C.txt"));
+        assertNull(SharedAnalysisContext.getClassName(auxClasspath, "/other/a/b/C.class"));
+    }
+
+    @Test
+    public void testClassNameWithBackslashes() {
+        // canonical aux classpath entries with '/', class files listed with the separator of Windows
+        final List<String> auxClasspath = Collections.singletonList("C:/work/out/production/app");
+        assertEquals("a.b.C", SharedAnalysisContext.getClassName(auxClasspath, "C:\\work\\out\\production\\app\\a\\b\\C.class"));
+
+        final List<String> windowsAuxClasspath = Collections.singletonList("C:\\work\\out\\production\\app\\");
+        assertEquals("a.b.C", SharedAnalysisContext.getClassName(windowsAuxClasspath, "C:\\work\\out\\production\\app\\a\\b\\C.class"));
+        assertEquals("a.b.C", SharedAnalysisContext.getClassName(windowsAuxClasspath, "C:/work/out/production/app/a/b/C.class"));
+        assertNull(SharedAnalysisContext.getClassName(windowsAuxClasspath, "C:\\work\\out\\production\\application\\a\\b\\C.class"));
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2020 SpotBugs plugin contributors
+ *
+ * This file is part of IntelliJ SpotBugs plugin.
+ *
+ * IntelliJ SpotBugs plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * IntelliJ SpotBugs plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with IntelliJ SpotBugs plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jetbrains.plugins.spotbugs.gui.tree.model;
+
+import com.intellij.testFramework.fixtures.BasePlatformTestCase;
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.Priorities;
+import edu.umd.cs.findbugs.SortedBugCollection;
+import org.jetbrains.plugins.spotbugs.core.Bug;
+import org.jetbrains.plugins.spotbugs.gui.tree.GroupBy;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Covers the {@link GroupIndex} through the model which keeps it in sync with the tree.
+ */
+public class GroupTreeModelTest extends BasePlatformTestCase {
+
+    private final SortedBugCollection bugCollection = new SortedBugCollection();
+    private RootNode root;
+    private GroupTreeModel model;
+    private Bug a1;
+    private Bug a2;
+    private Bug b1;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        root = new RootNode("root");
+        model = new GroupTreeModel(root, new GroupBy[]{GroupBy.Package, GroupBy.Class}, getProject());
+        a1 = createBug("NP_ALWAYS_NULL", "a.A");
+        a2 = createBug("NP_NULL_ON_SOME_PATH", "a.A");
+        b1 = createBug("NP_ALWAYS_NULL", "b.B");
+        model.addNodes(Arrays.asList(a1, a2, b1));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try {
+            model.clear();
+        } finally {
+            super.tearDown();
+        }
+    }
+
+    public void testGroupsSharePath() {
+        assertEquals(3, model.getBugCount());
+        assertEquals(2, root.getChildCount());
+        final BugInstanceGroupNode packageA = group(root, "a");
+        assertEquals(1, packageA.getChildCount());
+        assertEquals(2, group(packageA, "a.A").getChildCount());
+        assertSame(model.findNodeByBugInstance(a2).getParent(), model.findNodeByBugInstance(a1).getParent());
+    }
+
+    public void testRemoveKeepsNonEmptyGroups() {
+        model.removeNodes(Collections.singletonList(a1));
+
+        assertEquals(2, model.getBugCount());
+        assertNull(model.findNodeByBugInstance(a1));
+        assertEquals(1, group(group(root, "a"), "a.A").getChildCount());
+    }
+
+    public void testRemovePrunesEmptyGroups() {
+        model.removeNodes(Collections.singletonList(b1));
+
+        assertEquals(1, root.getChildCount());
+        assertNull(findGroup(root, "b"));
+
+        // the pruned groups must be forgotten by the index too, otherwise the bug is attached to a detached group
+        model.addNodes(Collections.singletonList(b1));
+        assertEquals(2, root.getChildCount());
+        assertSame(group(group(root, "b"), "b.B"), model.findNodeByBugInstance(b1).getParent());
+    }
+
+    public void testAddEqualBugOnce() {
+        model.addNodes(Collections.singletonList(new Bug(null, bugCollection, a1.getInstance())));
+
+        assertEquals(3, model.getBugCount());
+        assertEquals(2, group(group(root, "a"), "a.A").getChildCount());
+
+        // no ghost leaf stays behind
+        model.removeNodes(Collections.singletonList(a1));
+        assertEquals(1, group(group(root, "a"), "a.A").getChildCount());
+    }
+
+    public void testRegroup() {
+        model.setGroupBy(new GroupBy[]{GroupBy.Class});
+        model.regroup(model.getBugs());
+
+        assertEquals(3, model.getBugCount());
+        assertEquals(2, root.getChildCount());
+        assertEquals(2, group(root, "a.A").getChildCount());
+        assertSame(group(root, "b.B"), model.findNodeByBugInstance(b1).getParent());
+    }
+
+    private Bug createBug(final String type, final String className) {
+        final BugInstance instance = new BugInstance(type, Priorities.NORMAL_PRIORITY).addClass(className);
+        bugCollection.add(instance, false);
+        return new Bug(null, bugCollection, instance);
+    }
+
+    private static BugInstanceGroupNode group(final VisitableTreeNode parent, final String groupName) {
+        final BugInstanceGroupNode ret = findGroup(parent, groupName);
+        assertNotNull(groupName, ret);
+        return ret;
+    }
+
+    private static BugInstanceGroupNode findGroup(final VisitableTreeNode parent, final String groupName) {
+        for (int i = 0; i < parent.getChildCount(); i++) {
+            final Object child = parent.getChildAt(i);
+            if (child instanceof BugInstanceGroupNode && groupName.equals(((BugInstanceGroupNode) child).getGroupName())) {
+                return (BugInstanceGroupNode) child;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2020 SpotBugs plugin contributors
+ *
+ * This file is part of IntelliJ SpotBugs plugin.
+ *
+ * IntelliJ SpotBugs plugin is free software: you can redistribute it
+ * and/or modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation, either version 3 of
+ * the License, or (at your option) any later version.
+ *
+ * IntelliJ SpotBugs plugin is distributed in the hope that it will
+ * be useful, but WITHOUT ANY WARRANTY; without even the implied
+ * warranty of MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.
+ * See the GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with IntelliJ SpotBugs plugin.
+ * If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.jetbrains.plugins.spotbugs.worker;
+
+import edu.umd.cs.findbugs.BugInstance;
+import edu.umd.cs.findbugs.PackageStats;
+import edu.umd.cs.findbugs.Priorities;
+import edu.umd.cs.findbugs.ProjectStats;
+import edu.umd.cs.findbugs.SortedBugCollection;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class WorkerProtocolTest {
+
+    private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(bytes);
+    private final RecordingReceiver receiver = new RecordingReceiver();
+
+    @Test
+    public void testBugs() throws IOException {
+        final SortedBugCollection bugCollection = new SortedBugCollection();
+        final BugInstance first = new BugInstance("NP_ALWAYS_NULL", Priorities.HIGH_PRIORITY).addClass("a.A");
+        final BugInstance second = new BugInstance("NP_NULL_ON_SOME_PATH", Priorities.NORMAL_PRIORITY).addClass("b.B");
+        WorkerProtocol.writeBugs(out, bugCollection, Arrays.asList(first, second));
+
+        final DataInputStream in = input();
+        assertFalse(WorkerProtocol.readMessage(in, receiver));
+        assertEquals(-1, in.read());
+
+        assertEquals(2, receiver.bugs.size());
+        final BugInstance firstRead = find(receiver.bugs, "a.A");
+        assertEquals("NP_ALWAYS_NULL", firstRead.getType());
+        assertEquals(Priorities.HIGH_PRIORITY, firstRead.getPriority());
+        assertEquals("NP_NULL_ON_SOME_PATH", find(receiver.bugs, "b.B").getType());
+    }
+
+    @Test
+    public void testProgressAndStats() throws IOException {
+        out.writeByte(WorkerProtocol.START_ANALYSIS);
+        out.writeInt(2);
+        out.writeByte(WorkerProtocol.FINISH_CLASS);
+        final ProjectStats stats = new ProjectStats();
+        stats.addClass("a.A", "A.java", false, 10);
+        stats.addClass("a.B", "B.java", true, 5);
+        WorkerProtocol.writeDone(out, stats);
+
+        final DataInputStream in = input();
+        assertFalse(WorkerProtocol.readMessage(in, receiver));
+        assertFalse(WorkerProtocol.readMessage(in, receiver));
+        assertTrue(WorkerProtocol.readMessage(in, receiver));
+
+        assertEquals(2, receiver.numClasses);
+        assertEquals(1, receiver.finishedClasses);
+        final List<String> classNames = new ArrayList<>();
+        for (final PackageStats packageStats : receiver.stats.getPackageStats()) {
+            for (final PackageStats.ClassStats classStats : packageStats.getClassStats()) {
+                classNames.add(classStats.getName());
+            }
+        }
+        classNames.sort(null);
+        assertEquals(Arrays.asList("a.A", "a.B"), classNames);
+        assertNull(receiver.error);
+    }
+
+    @Test
+    public void testFailed() throws IOException {
+        WorkerProtocol.writeFailed(out, "java.lang.OutOfMemoryError");
+
+        assertTrue(WorkerProtocol.readMessage(input(), receiver));
+        assertEquals("java.lang.OutOfMemoryError", receiver.error);
+        assertNull(receiver.stats);
+    }
+
+    @Test
+    public void testTruncatedStreamIsEof() throws IOException {
+        WorkerProtocol.writeBugs(out, new SortedBugCollection(), Arrays.asList(
+                new BugInstance("NP_ALWAYS_NULL", Priorities.NORMAL_PRIORITY).addClass("a.A")));
+        final byte[] message = bytes.toByteArray();
+
+        // the worker terminated in the middle of a message
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(Arrays.copyOf(message, message.length / 2)));
+        try {
+            WorkerProtocol.readMessage(in, receiver);
+            fail("EOFException expected");
+        } catch (final EOFException expected) {
+            assertTrue(receiver.bugs.isEmpty());
+        }
+
+        // the worker terminated between two messages
+        try {
+            WorkerProtocol.readMessage(new DataInputStream(new ByteArrayInputStream(new byte[0])), receiver);
+            fail("EOFException expected");
+        } catch (final EOFException expected) {
+            assertTrue(receiver.bugs.isEmpty());
+        }
+    }
+
+    private DataInputStream input() throws IOException {
+        out.flush();
+        return new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    private static BugInstance find(final Collection<BugInstance> bugs, final String className) {
+        for (final BugInstance bug : bugs) {
+            if (className.equals(bug.getPrimaryClass().getClassName())) {
+                return bug;
+            }
+        }
+        throw new AssertionError("No bug in " + className);
+    }
+
+    private static final class RecordingReceiver implements WorkerProtocol.Receiver {
+
+        private final List<BugInstance> bugs = new ArrayList<>();
+        private ProjectStats stats;
+        private String error;
+        private int numClasses;
+        private int finishedClasses;
+
+        @Override
+        public void reportBugs(final Collection<BugInstance> bugs) {
+            this.bugs.addAll(bugs);
+        }
+
+        @Override
+        public void done(final ProjectStats stats) {
+            this.stats = stats;
+        }
+
+        @Override
+        public void failed(final String error) {
+            this.error = error;
+        }
+
+        @Override
+        public void reportNumberOfArchives(final int numArchives) {
+        }
+
+        @Override
+        public void startArchive(final String name) {
+        }
+
+        @Override
+        public void finishArchive() {
+        }
+
+        @Override
+        public void predictPassCount(final int[] classesPerPass) {
+        }
+
+        @Override
+        public void startAnalysis(final int numClasses) {
+            this.numClasses = numClasses;
+        }
+
+        @Override
+        public void finishClass() {
+            finishedClasses++;
+        }
+
+        @Override
+        public void finishPerClassAnalysis() {
+        }
+    }
+}